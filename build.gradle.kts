@@ -11,6 +11,21 @@ repositories {
     mavenCentral()
 }
 
+// Микробенчмарки JMH: src/jmh/java, запуск - ./gradlew jmh.
+// Заглушки Redis и Open-Meteo из тестов используются в бенчмарке полного пути запроса
+sourceSets {
+    create("jmh") {
+        compileClasspath += sourceSets.main.get().output + sourceSets.test.get().output
+        runtimeClasspath += sourceSets.main.get().output + sourceSets.test.get().output
+    }
+}
+val jmhImplementation by configurations.getting {
+    extendsFrom(configurations.implementation.get())
+}
+val jmhRuntimeOnly by configurations.getting {
+    extendsFrom(configurations.runtimeOnly.get())
+}
+
 dependencies {
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
     testImplementation("org.junit.jupiter:junit-jupiter")
@@ -22,8 +37,58 @@ dependencies {
     implementation ("redis.clients:jedis:5.0.2")
     implementation ("org.jfree:jfreechart:1.5.4")
     implementation ("com.squareup.okhttp3:okhttp:4.12.0")
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
 }
 
 tasks.test {
-    useJUnitPlatform()
+    useJUnitPlatform {
+        excludeTags("load")
+    }
+}
+
+// Нагрузочные тесты с локальными заглушками внешних API и Redis
+tasks.register<Test>("loadTest") {
+    group = "verification"
+    description = "Runs load tests tagged \"load\"."
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform {
+        includeTags("load")
+    }
+    testLogging {
+        showStandardStreams = true
+    }
+    shouldRunAfter(tasks.test)
+}
+
+// Нагрузочный прогон /weather на локальных заглушках Open-Meteo и Redis с настраиваемой смесью запросов.
+// Настройки прогона и сервиса передаются свойствами Gradle: ./gradlew loadHarness -Pload.requests=20000 -Pload.mix=hot:90,cold:10
+val loadHarnessPrefixes = listOf("load.", "server.", "cache.", "refresh.", "breaker.", "cluster.", "http.")
+tasks.register<JavaExec>("loadHarness") {
+    group = "verification"
+    description = "Drives /weather on local Open-Meteo and Redis stand-ins and reports throughput and latency percentiles."
+    classpath = sourceSets.test.get().runtimeClasspath
+    mainClass.set("services.WeatherLoadHarness")
+    // Журнал каждого запроса на уровне INFO заметно снижает измеряемую пропускную способность
+    systemProperty("org.slf4j.simpleLogger.defaultLogLevel", project.findProperty("load.log-level")?.toString() ?: "warn")
+    project.properties
+        .filter { (key, value) -> value != null && loadHarnessPrefixes.any { key.startsWith(it) } }
+        .forEach { (key, value) -> systemProperty(key, value.toString()) }
+}
+
+// Результаты сохраняются в JSON с версией приложения в имени файла, чтобы сравнивать их между релизами
+val jmhResults = layout.buildDirectory.file("reports/jmh/jmh-$version.json")
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Runs JMH benchmarks. Filter by name: -PjmhInclude=HtmlTemplateBenchmark"
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    args(project.findProperty("jmhInclude")?.toString() ?: ".*")
+    args("-rf", "json", "-rff", jmhResults.get().asFile.absolutePath)
+    outputs.file(jmhResults)
+    outputs.upToDateWhen { false }
+    doFirst {
+        jmhResults.get().asFile.parentFile.mkdirs()
+    }
 }
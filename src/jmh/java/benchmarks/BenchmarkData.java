@@ -0,0 +1,69 @@
+package benchmarks;
+
+import data.Coordinates;
+import data.HourlyForecast;
+import data.WeatherData;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Тестовые данные для бенчмарков
+ */
+public final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Строит SVG, сопоставимый по размеру с графиком температуры на сутки (около 40 КБ)
+     */
+    public static String sampleSvg() {
+        StringBuilder svg = new StringBuilder("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"950\" height=\"500\">");
+        for (int i = 0; i < 400; i++) {
+            svg.append("<path d=\"M").append(i).append(',').append(i % 50)
+                    .append(" L").append(i + 1).append(',').append((i + 7) % 50)
+                    .append("\" style=\"stroke: rgb(8,113,0); stroke-width: 2.0;\"/>");
+        }
+        return svg.append("</svg>").toString();
+    }
+
+    /**
+     * Строит прогноз температуры на сутки (24 почасовых значения) в том же виде, что приходит от Open-Meteo
+     */
+    public static WeatherData sampleWeather() {
+        double[] temperature = new double[24];
+        for (int hour = 0; hour < 24; hour++) {
+            temperature[hour] = Math.round((15 + 5 * Math.sin(hour * Math.PI / 12)) * 10) / 10.0;
+        }
+        return new WeatherData("Moscow", new Coordinates("55.75222", "37.61556"), HourlyForecast.hourly(1_700_006_400L, temperature));
+    }
+
+    /**
+     * Строит ответ прогноза Open-Meteo на указанное количество суток в том виде, в котором его возвращает API:
+     * служебные поля, единицы измерения, массив времени и массивы значений трех почасовых переменных
+     */
+    public static String sampleForecastJson(int days) {
+        String[] variables = {"temperature_2m", "relative_humidity_2m", "wind_speed_10m"};
+        LocalDateTime start = LocalDate.of(2024, 5, 1).atStartOfDay();
+        int hours = days * 24;
+        StringBuilder json = new StringBuilder(hours * 64);
+        json.append("{\"latitude\":55.75,\"longitude\":37.625,\"generationtime_ms\":0.0540,\"utc_offset_seconds\":0,")
+                .append("\"timezone\":\"GMT\",\"timezone_abbreviation\":\"GMT\",\"elevation\":144.0,")
+                .append("\"hourly_units\":{\"time\":\"iso8601\",\"temperature_2m\":\"°C\",\"relative_humidity_2m\":\"%\",\"wind_speed_10m\":\"km/h\"},")
+                .append("\"hourly\":{\"time\":[");
+        for (int i = 0; i < hours; i++) {
+            json.append(i == 0 ? "\"" : ",\"").append(start.plusHours(i)).append('"');
+        }
+        json.append(']');
+        for (int v = 0; v < variables.length; v++) {
+            json.append(",\"").append(variables[v]).append("\":[");
+            for (int i = 0; i < hours; i++) {
+                double value = Math.round((15 + v * 20 + 5 * Math.sin(i * Math.PI / 12)) * 10) / 10.0;
+                json.append(i == 0 ? "" : ",").append(value);
+            }
+            json.append(']');
+        }
+        return json.append("}}").toString();
+    }
+}
@@ -0,0 +1,63 @@
+package benchmarks;
+
+import data.HourlyForecast;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import services.JFreeChartRenderer;
+import services.SvgChartRenderer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение построения графика: JFreeChart через SVGGraphics2D (прежний способ)
+ * против прямой записи SVG в переиспользуемый буфер.
+ * Размер SVG выводится при подготовке бенчмарка
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChartRendererBenchmark {
+    @Param({"1", "16"})
+    public int days;
+
+    private final JFreeChartRenderer jfreeChart = new JFreeChartRenderer();
+    private final SvgChartRenderer svg = new SvgChartRenderer();
+    private final StringBuilder buffer = new StringBuilder(16 * 1024);
+    private HourlyForecast forecast;
+
+    @Setup
+    public void setUp() {
+        double[] temperature = new double[days * 24];
+        for (int hour = 0; hour < temperature.length; hour++) {
+            temperature[hour] = Math.round((15 + 5 * Math.sin(hour * Math.PI / 12)) * 10) / 10.0;
+        }
+        forecast = HourlyForecast.hourly(1_700_006_400L, temperature);
+        System.out.printf("%nSVG size: jfreechart %d chars, svg %d chars%n", jfreeChart(), handRolledSvg());
+    }
+
+    @Benchmark
+    public int jfreeChart() {
+        buffer.setLength(0);
+        jfreeChart.render(forecast, "Temperature", "C", buffer);
+        return buffer.length();
+    }
+
+    @Benchmark
+    public int handRolledSvg() {
+        buffer.setLength(0);
+        svg.render(forecast, "Temperature", "C", buffer);
+        return buffer.length();
+    }
+}
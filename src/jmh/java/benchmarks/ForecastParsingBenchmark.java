@@ -0,0 +1,73 @@
+package benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import data.Coordinates;
+import data.HourlyForecast;
+import data.WeatherData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import services.OpenMeteoParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение разбора ответа прогноза Open-Meteo: дерево Gson из строки ответа (прежний способ)
+ * против потокового OpenMeteoParser, читающего из потока байтов. Ответы на 1 и 16 суток
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForecastParsingBenchmark {
+    private final Gson gson = new Gson();
+    private final Coordinates coordinates = new Coordinates("55.75222", "37.61556");
+
+    @Param({"1", "16"})
+    private int days;
+    private byte[] response;
+
+    @Setup
+    public void setUp() {
+        response = BenchmarkData.sampleForecastJson(days).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public WeatherData gsonTree() {
+        JsonObject json = gson.fromJson(new String(response, StandardCharsets.UTF_8), JsonObject.class);
+        JsonObject hourly = json.getAsJsonObject("hourly");
+        JsonArray timeArray = hourly.getAsJsonArray("time");
+        JsonArray tempArray = hourly.getAsJsonArray("temperature_2m");
+        double[] values = new double[tempArray.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = tempArray.get(i).getAsDouble();
+        }
+        long start = LocalDateTime.parse(timeArray.get(0).getAsString()).toEpochSecond(ZoneOffset.UTC);
+        return new WeatherData("Moscow", coordinates, HourlyForecast.hourly(start, values));
+    }
+
+    @Benchmark
+    public WeatherData streaming() throws IOException {
+        return OpenMeteoParser.parseForecast("Moscow", coordinates, List.of(WeatherData.TEMPERATURE),
+                new InputStreamReader(new ByteArrayInputStream(response), StandardCharsets.UTF_8));
+    }
+}
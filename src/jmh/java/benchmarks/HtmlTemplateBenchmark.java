@@ -0,0 +1,58 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import services.HtmlTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение заполнения HTML-страницы: чтение шаблона с диска и три String.replace (прежний способ)
+ * против заранее разобранного HtmlTemplate
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HtmlTemplateBenchmark {
+    private HtmlTemplate template;
+    private String chart;
+
+    @Setup
+    public void setUp() {
+        template = HtmlTemplate.fromClasspath("/weather_page.html");
+        chart = BenchmarkData.sampleSvg();
+    }
+
+    @Benchmark
+    public String readFileAndReplace() throws IOException {
+        String htmlTemplate = Files.readString(Paths.get("src/main/resources/weather_page.html"), StandardCharsets.UTF_8);
+        return htmlTemplate
+                .replace("{{city}}", "Moscow")
+                .replace("{{temperature}}", "15.5")
+                .replace("{{chart}}", chart);
+    }
+
+    @Benchmark
+    public String precompiledTemplate() {
+        return template.render(Map.of(
+                "city", "Moscow",
+                "temperature", "15.5",
+                "chart", chart));
+    }
+}
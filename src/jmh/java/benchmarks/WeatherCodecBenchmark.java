@@ -0,0 +1,63 @@
+package benchmarks;
+
+import com.google.gson.Gson;
+import data.WeatherData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import services.WeatherCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение хранения прогноза в Redis: JSON через Gson (прежний способ) против двоичного WeatherCodec.
+ * Размер значений выводится при подготовке бенчмарка
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WeatherCodecBenchmark {
+    private final Gson gson = new Gson();
+    private WeatherData weatherData;
+    private byte[] json;
+    private byte[] binary;
+
+    @Setup
+    public void setUp() {
+        weatherData = BenchmarkData.sampleWeather();
+        json = gson.toJson(weatherData).getBytes(StandardCharsets.UTF_8);
+        binary = WeatherCodec.encode(weatherData);
+        System.out.printf("%nValue size: json %d bytes, binary %d bytes%n", json.length, binary.length);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() {
+        return gson.toJson(weatherData).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return WeatherCodec.encode(weatherData);
+    }
+
+    @Benchmark
+    public WeatherData decodeJson() {
+        return gson.fromJson(new String(json, StandardCharsets.UTF_8), WeatherData.class);
+    }
+
+    @Benchmark
+    public WeatherData decodeBinary() {
+        return WeatherCodec.decode(binary);
+    }
+}
@@ -0,0 +1,82 @@
+package services;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import stubs.FakeRedisServer;
+import stubs.OpenMeteoStub;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Полный путь запроса /weather (получение прогноза и построение страницы) на заглушках Redis и Open-Meteo в процессе.
+ * Параметр source задает, откуда берется прогноз:
+ * local - кэш в памяти процесса, redis - Redis, upstream - запрос к API прогноза.
+ * Для redis и upstream кэш в памяти ограничен одной записью, а города чередуются, поэтому каждый вызов - промах
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WeatherPathBenchmark {
+    private static final String[] CITIES = {"Moscow", "Paris", "Berlin", "London"};
+
+    @Param({"local", "redis", "upstream"})
+    public String source;
+
+    private FakeRedisServer redisServer;
+    private OpenMeteoStub openMeteo;
+    private RedisService redisService;
+    private WeatherService weatherService;
+    private WeatherViewer viewer;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        System.setProperty("refresh.enabled", "false");
+        System.setProperty("cache.local.max-size", source.equals("local") ? "1000" : "1");
+        redisServer = new FakeRedisServer();
+        openMeteo = new OpenMeteoStub();
+        redisService = new RedisService(RedisSettings.of(redisServer.host(), redisServer.port()));
+        weatherService = new WeatherService(new GeolocationService(openMeteo.geocodingUrl()), redisService, openMeteo.forecastUrl());
+        viewer = new WeatherViewer(weatherService);
+        for (String city : CITIES) {
+            viewer.renderPage(city, weatherService.getWeather(city));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void dropRedis() {
+        if (source.equals("upstream")) {
+            redisServer.flushAll();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        weatherService.close();
+        redisService.close();
+        redisServer.close();
+        openMeteo.close();
+        System.clearProperty("refresh.enabled");
+        System.clearProperty("cache.local.max-size");
+    }
+
+    @Benchmark
+    public RenderedPage getWeather() {
+        String city = CITIES[next++ % CITIES.length];
+        return viewer.renderPage(city, weatherService.getWeather(city));
+    }
+}
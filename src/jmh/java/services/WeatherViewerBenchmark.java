@@ -0,0 +1,48 @@
+package services;
+
+import benchmarks.BenchmarkData;
+import data.WeatherData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Этапы построения страницы прогноза без кэшей: SVG-график температуры
+ * и поиск температуры на текущий час.
+ * Находится в пакете services, так как методы WeatherViewer доступны только внутри пакета
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WeatherViewerBenchmark {
+    private WeatherViewer viewer;
+    private WeatherData weatherData;
+
+    @Setup
+    public void setUp() {
+        viewer = new WeatherViewer(null);
+        weatherData = BenchmarkData.sampleWeather();
+    }
+
+    @Benchmark
+    public String generateTemperatureChartSVG() {
+        return viewer.generateTemperatureChartSVG(weatherData);
+    }
+
+    @Benchmark
+    public String getCurrentTemperature() {
+        return WeatherViewer.getCurrentTemperature(weatherData.temperature());
+    }
+}
@@ -1,22 +1,43 @@
+import services.AppConfig;
 import services.GeolocationService;
+import services.RedisService;
+import services.ThreadMode;
+import services.WarmUp;
 import services.WeatherService;
 import services.WeatherViewer;
 
+import java.io.IOException;
+import java.nio.file.Path;
+
 import static spark.Spark.*;
 
 
 public class MainClass {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
 
         //Указываем порт, на котором будет работать сервис
-        port(9090);
+        port(AppConfig.getInt("server.port", 9090));
+
+        //Выбираем потоки для обработки запросов: пул обычных потоков или виртуальные потоки
+        ThreadMode.fromConfig().configureServer(AppConfig.getInt("server.threads.max", 200));
 
         //Инициализируем сервисы
-        GeolocationService geolocation = new GeolocationService();
-        WeatherService weatherService = new WeatherService(geolocation);
+        RedisService redis = new RedisService();
+        GeolocationService geolocation = new GeolocationService(redis);
+        WeatherService weatherService = new WeatherService(geolocation, redis);
         WeatherViewer weatherViewer = new WeatherViewer(weatherService);
 
+        //Заполняем кэш координат известными городами, если задан файл
+        String geocodingSeedFile = AppConfig.getString("geocoding.seed-file", null);
+        if (geocodingSeedFile != null) {
+            geolocation.preload(Path.of(geocodingSeedFile));
+        }
+
+        //Прогреваем кэши популярными городами параллельно с запуском сервиса; до окончания прогрева /ready отвечает 503
+        WarmUp warmUp = WarmUp.fromConfig(weatherService, weatherViewer);
+        warmUp.start();
+
         //Запускаем сервис
-        weatherViewer.setupRoutes();
+        weatherViewer.setupRoutes(warmUp::isDone);
     }
-}
\ No newline at end of file
+}
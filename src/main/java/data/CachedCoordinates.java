@@ -0,0 +1,18 @@
+package data;
+
+/**
+ * Результат геокодинга, сохраненный в кэше.
+ * Кэшируются и отрицательные результаты: если город не найден, coordinates равно null
+ * @param coordinates координаты города или null, если город не найден
+ */
+public record CachedCoordinates(Coordinates coordinates) {
+
+    public static final CachedCoordinates NOT_FOUND = new CachedCoordinates(null);
+
+    /**
+     * @return True, если город был найден
+     */
+    public boolean found() {
+        return coordinates != null;
+    }
+}
@@ -0,0 +1,9 @@
+package data;
+
+/**
+ * Данные о погоде, прочитанные из кэша, вместе со сроком их жизни
+ * @param weatherData данные о температуре WeatherData.class
+ * @param expiresAtMillis момент окончания срока жизни записи в кэше (epoch millis)
+ */
+public record CachedWeather(WeatherData weatherData, long expiresAtMillis) {
+}
@@ -1,6 +1,7 @@
 package data;
 
-import java.util.Objects;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 
 /**
  * Класс координат, хранит долготу и широту города
@@ -9,4 +10,17 @@ import java.util.Objects;
  */
 public record Coordinates(String latitude, String longitude) {
 
+    /**
+     * Возвращает ключ местоположения: широта и долгота, округленные до сотых градуса (около километра).
+     * Разные названия одного города (например, "Moscow" и "Москва") дают одинаковый ключ,
+     * поэтому прогноз кэшируется по ключу местоположения, а не по названию
+     * @return ключ вида "55.75,37.62"
+     */
+    public String key() {
+        return round(latitude) + ',' + round(longitude);
+    }
+
+    private static String round(String degrees) {
+        return new BigDecimal(degrees).setScale(2, RoundingMode.HALF_UP).toPlainString();
+    }
 }
@@ -0,0 +1,141 @@
+package data;
+
+import java.util.Arrays;
+
+/**
+ * Ряд значений прогноза с постоянным шагом по времени (например, температура по часам).
+ * Хранит момент первого значения, шаг и массив значений, поэтому значение на нужный момент
+ * находится арифметикой по индексу, без разбора строк времени
+ */
+public final class HourlyForecast {
+    public static final int HOUR_SECONDS = 3600;
+    public static final int DAY_SECONDS = 86_400;
+
+    private final long startEpochSecond;
+    private final int stepSeconds;
+    private final double[] values;
+
+    /**
+     * @param startEpochSecond момент первого значения (epoch seconds, UTC)
+     * @param stepSeconds шаг между значениями, секунды
+     * @param values значения; массив не копируется и не должен изменяться после передачи
+     */
+    public HourlyForecast(long startEpochSecond, int stepSeconds, double[] values) {
+        if (stepSeconds <= 0) {
+            throw new IllegalArgumentException("Forecast step must be positive, got " + stepSeconds);
+        }
+        this.startEpochSecond = startEpochSecond;
+        this.stepSeconds = stepSeconds;
+        this.values = values;
+    }
+
+    /**
+     * Создает почасовой ряд значений
+     * @param startEpochSecond момент первого значения (epoch seconds, UTC)
+     * @param values значения по часам
+     */
+    public static HourlyForecast hourly(long startEpochSecond, double... values) {
+        return new HourlyForecast(startEpochSecond, HOUR_SECONDS, values);
+    }
+
+    public long startEpochSecond() {
+        return startEpochSecond;
+    }
+
+    public int stepSeconds() {
+        return stepSeconds;
+    }
+
+    /**
+     * @return количество значений
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * @param index номер значения
+     * @return значение
+     */
+    public double value(int index) {
+        return values[index];
+    }
+
+    /**
+     * @return количество суток, которые покрывает ряд (неполные сутки считаются целыми)
+     */
+    public int days() {
+        return (int) ((values.length * (long) stepSeconds + DAY_SECONDS - 1) / DAY_SECONDS);
+    }
+
+    /**
+     * Возвращает начало ряда, покрывающее не больше указанного количества суток
+     * @param days количество суток
+     * @return этот же ряд, если он не длиннее, иначе укороченная копия
+     */
+    public HourlyForecast limitDays(int days) {
+        long count = days * (long) DAY_SECONDS / stepSeconds;
+        if (count >= values.length) {
+            return this;
+        }
+        return new HourlyForecast(startEpochSecond, stepSeconds, Arrays.copyOf(values, (int) count));
+    }
+
+    /**
+     * @param index номер значения
+     * @return момент значения (epoch seconds, UTC)
+     */
+    public long epochSecondAt(int index) {
+        return startEpochSecond + (long) index * stepSeconds;
+    }
+
+    /**
+     * Возвращает номер значения, ближайшего к указанному моменту.
+     * Моменты до начала и после конца ряда приводятся к первому и последнему значению
+     * @param epochSecond момент (epoch seconds, UTC)
+     * @return номер значения или -1, если ряд пуст
+     */
+    public int indexAt(long epochSecond) {
+        if (values.length == 0) {
+            return -1;
+        }
+        long index = Math.floorDiv(epochSecond - startEpochSecond + stepSeconds / 2, stepSeconds);
+        return (int) Math.max(0, Math.min(values.length - 1, index));
+    }
+
+    /**
+     * Возвращает время значения в формате "HH:mm" (UTC) для подписей на графике
+     * @param index номер значения
+     */
+    public String timeLabel(int index) {
+        int minuteOfDay = (int) (Math.floorMod(epochSecondAt(index), (long) DAY_SECONDS) / 60);
+        int hours = minuteOfDay / 60;
+        int minutes = minuteOfDay % 60;
+        return new String(new char[]{
+                (char) ('0' + hours / 10), (char) ('0' + hours % 10), ':',
+                (char) ('0' + minutes / 10), (char) ('0' + minutes % 10)});
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof HourlyForecast other)) {
+            return false;
+        }
+        return startEpochSecond == other.startEpochSecond
+                && stepSeconds == other.stepSeconds
+                && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Long.hashCode(startEpochSecond) + stepSeconds) + Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        return "HourlyForecast[start=" + startEpochSecond + ", step=" + stepSeconds + ", values=" + Arrays.toString(values) + "]";
+    }
+}
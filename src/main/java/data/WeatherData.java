@@ -1,13 +1,120 @@
 package data;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
 
 /**
- * Объектная модель данных о температуре
+ * Объектная модель данных о погоде
  * @param city город (String, например "Mexico")
  * @param coordinates координаты города (долгота и широта) Coordinates.class
- * @param temperature температура на сутки
+ * @param hourly почасовые ряды прогноза по названию переменной Open-Meteo (например, "temperature_2m")
  */
-public record WeatherData (String city, Coordinates coordinates, List<Temperature> temperature){
+public record WeatherData (String city, Coordinates coordinates, Map<String, HourlyForecast> hourly){
+    public static final String TEMPERATURE = "temperature_2m";
+
+    public WeatherData {
+        hourly = Collections.unmodifiableSortedMap(new TreeMap<>(hourly));
+    }
+
+    /**
+     * @param city город
+     * @param coordinates координаты города
+     * @param temperature почасовая температура
+     */
+    public WeatherData(String city, Coordinates coordinates, HourlyForecast temperature) {
+        this(city, coordinates, Map.of(TEMPERATURE, temperature));
+    }
+
+    /**
+     * @return почасовая температура или null, если температура не загружалась
+     */
+    public HourlyForecast temperature() {
+        return hourly.get(TEMPERATURE);
+    }
+
+    /**
+     * Проверяет, что в данных есть все переменные и каждая из них покрывает указанное количество суток
+     * @param variables названия переменных
+     * @param days количество суток
+     */
+    public boolean covers(Collection<String> variables, int days) {
+        for (String variable : variables) {
+            HourlyForecast forecast = hourly.get(variable);
+            if (forecast == null || forecast.days() < days) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Возвращает данные только по указанным переменным, обрезанные до указанного количества суток.
+     * Если данные уже совпадают с запрошенными, возвращается этот же объект
+     * @param variables названия переменных, которые есть в данных
+     * @param days количество суток
+     */
+    public WeatherData select(Collection<String> variables, int days) {
+        boolean same = variables.size() == hourly.size();
+        Map<String, HourlyForecast> selected = new TreeMap<>();
+        for (String variable : variables) {
+            HourlyForecast forecast = hourly.get(variable);
+            HourlyForecast limited = forecast.limitDays(days);
+            same &= limited == forecast;
+            selected.put(variable, limited);
+        }
+        return same ? this : new WeatherData(city, coordinates, selected);
+    }
+
+    /**
+     * Возвращает те же данные под другим названием города (например, под названием, с которым их запросили).
+     * Если название совпадает, возвращается этот же объект
+     * @param city название города
+     */
+    public WeatherData withCity(String city) {
+        return Objects.equals(this.city, city) ? this : new WeatherData(city, coordinates, hourly);
+    }
+
+    /**
+     * Объединяет данные: переменные из other заменяют одноименные переменные этих данных
+     * @param other данные того же города
+     */
+    public WeatherData merge(WeatherData other) {
+        Map<String, HourlyForecast> merged = new TreeMap<>(hourly);
+        merged.putAll(other.hourly);
+        return new WeatherData(city, other.coordinates, merged);
+    }
+
+    /**
+     * Вычисляет отпечаток прогноза (64-битный хэш FNV-1a по координатам и значениям всех переменных).
+     * Отпечаток меняется, когда меняются данные прогноза, поэтому его можно использовать как версию прогноза
+     * @return отпечаток в виде шестнадцатеричной строки
+     */
+    public String fingerprint() {
+        long hash = 0xcbf29ce484222325L;
+        if (coordinates != null) {
+            hash = mix(hash, coordinates.latitude().hashCode());
+            hash = mix(hash, coordinates.longitude().hashCode());
+        }
+        for (Map.Entry<String, HourlyForecast> variable : hourly.entrySet()) {
+            HourlyForecast forecast = variable.getValue();
+            hash = mix(hash, variable.getKey().hashCode());
+            hash = mix(hash, forecast.startEpochSecond());
+            hash = mix(hash, forecast.stepSeconds());
+            for (int i = 0; i < forecast.size(); i++) {
+                hash = mix(hash, Double.doubleToLongBits(forecast.value(i)));
+            }
+        }
+        return Long.toHexString(hash);
+    }
+
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
 }
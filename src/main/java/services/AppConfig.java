@@ -0,0 +1,105 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Чтение настроек приложения.
+ * Значение ищется сначала в системных свойствах (например, -Dredis.host=localhost),
+ * затем в переменных окружения (REDIS_HOST), иначе используется значение по умолчанию
+ */
+public final class AppConfig {
+
+    private AppConfig() {
+    }
+
+    /**
+     * Возвращает строковое значение настройки
+     * @param key имя настройки (например: "redis.host")
+     * @param defaultValue значение по умолчанию
+     * @return значение настройки или defaultValue, если настройка не задана
+     */
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null || value.isBlank()) {
+            value = System.getenv(toEnvName(key));
+        }
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    /**
+     * Возвращает целочисленное значение настройки
+     * @param key имя настройки (например: "redis.port")
+     * @param defaultValue значение по умолчанию
+     * @return значение настройки или defaultValue, если настройка не задана
+     * @throws IllegalArgumentException если значение не является числом
+     */
+    public static int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Setting \"%s\" must be an integer, got \"%s\"", key, value), e);
+        }
+    }
+
+    /**
+     * Возвращает значение настройки типа long
+     * @param key имя настройки
+     * @param defaultValue значение по умолчанию
+     * @return значение настройки или defaultValue, если настройка не задана
+     * @throws IllegalArgumentException если значение не является числом
+     */
+    public static long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Setting \"%s\" must be a number, got \"%s\"", key, value), e);
+        }
+    }
+
+    /**
+     * Возвращает логическое значение настройки ("true"/"false")
+     * @param key имя настройки
+     * @param defaultValue значение по умолчанию
+     * @return значение настройки или defaultValue, если настройка не задана
+     */
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    /**
+     * Возвращает значение настройки, заданное списком через запятую
+     * @param key имя настройки
+     * @param defaultValue значение по умолчанию
+     * @return непустые элементы списка без пробелов по краям или defaultValue, если настройка не задана
+     */
+    public static List<String> getList(String key, List<String> defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.isBlank()) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Преобразует имя настройки в имя переменной окружения: "redis.pool.max-total" -> "REDIS_POOL_MAX_TOTAL"
+     */
+    private static String toEnvName(String key) {
+        return key.toUpperCase().replace('.', '_').replace('-', '_');
+    }
+}
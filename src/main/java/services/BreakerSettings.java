@@ -0,0 +1,31 @@
+package services;
+
+/**
+ * Настройки защиты запросов к внешним API (circuit breaker и bulkhead) и выдачи сохраненного прогноза при их недоступности
+ * @param failureThreshold сколько ошибок подряд размыкают выключатель
+ * @param openMillis сколько миллисекунд выключатель остается разомкнутым перед пробным запросом
+ * @param maxConcurrentCalls максимальное количество одновременных запросов к одному API
+ * @param staleIfErrorMillis сколько миллисекунд после истечения срока жизни прогноз можно отдавать, если API недоступно
+ */
+public record BreakerSettings(int failureThreshold, long openMillis, int maxConcurrentCalls, long staleIfErrorMillis) {
+
+    public BreakerSettings {
+        if (failureThreshold < 1 || maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("Breaker failure threshold and bulkhead size must be positive");
+        }
+    }
+
+    /**
+     * Читает настройки из системных свойств и переменных окружения (см. AppConfig):
+     * breaker.failure-threshold, breaker.open.seconds, breaker.max-concurrent, breaker.stale-if-error.hours
+     * @return настройки защиты запросов
+     */
+    public static BreakerSettings fromConfig() {
+        return new BreakerSettings(
+                AppConfig.getInt("breaker.failure-threshold", 5),
+                AppConfig.getLong("breaker.open.seconds", 30) * 1000,
+                AppConfig.getInt("breaker.max-concurrent", 32),
+                AppConfig.getLong("breaker.stale-if-error.hours", 24) * 3600 * 1000
+        );
+    }
+}
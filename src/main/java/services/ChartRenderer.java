@@ -0,0 +1,44 @@
+package services;
+
+import data.HourlyForecast;
+
+import java.util.Locale;
+
+/**
+ * Построение SVG-графика почасового прогноза.
+ * Реализация выбирается настройкой chart.renderer: "svg" - прямая запись SVG без AWT (по умолчанию),
+ * "jfreechart" - прежний график JFreeChart
+ */
+public interface ChartRenderer {
+
+    /**
+     * Дописывает SVG-элемент графика в конец буфера
+     * @param forecast почасовые значения
+     * @param label название переменной для подписи оси значений (например, "Temperature")
+     * @param unit единица измерения (например, "C") или пустая строка
+     * @param out буфер, в который записывается SVG
+     */
+    void render(HourlyForecast forecast, String label, String unit, StringBuilder out);
+
+    /**
+     * Возвращает подпись оси значений
+     * @return подпись вида "Temperature (C)" или только название, если единицы измерения нет
+     */
+    static String axisTitle(String label, String unit) {
+        return unit.isEmpty() ? label : label + " (" + unit + ")";
+    }
+
+    /**
+     * Создает построитель графика по настройке chart.renderer
+     * @return построитель графика
+     * @throws IllegalArgumentException если указано неизвестное значение
+     */
+    static ChartRenderer fromConfig() {
+        String name = AppConfig.getString("chart.renderer", "svg").toLowerCase(Locale.ROOT);
+        return switch (name) {
+            case "svg" -> new SvgChartRenderer();
+            case "jfreechart" -> new JFreeChartRenderer();
+            default -> throw new IllegalArgumentException("Unknown chart renderer \"" + name + "\"");
+        };
+    }
+}
@@ -0,0 +1,167 @@
+package services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Защита запросов к одному внешнему API: автоматический выключатель (circuit breaker) и ограничение
+ * одновременных запросов (bulkhead).
+ * После failureThreshold ошибок подряд выключатель размыкается, и запросы сразу завершаются UpstreamException
+ * с кодом 503, не обращаясь к API. Через openMillis пропускается один пробный запрос: успех замыкает выключатель,
+ * ошибка снова размыкает его. Запросы сверх maxConcurrentCalls тоже сразу завершаются ошибкой,
+ * поэтому медленное API не накапливает очередь ожидающих запросов.
+ * Результат учитывается, только если состояние выключателя не менялось с начала запроса: медленный запрос,
+ * начатый до размыкания, не может замкнуть выключатель в обход пробного запроса
+ */
+public class CircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    /**
+     * Состояние выключателя, значение метрики upstream_circuit_state
+     */
+    public enum State {
+        CLOSED(0), HALF_OPEN(1), OPEN(2);
+
+        private final int metricValue;
+
+        State(int metricValue) {
+            this.metricValue = metricValue;
+        }
+    }
+
+    private final String name;
+    private final BreakerSettings settings;
+    private final Semaphore bulkhead;
+    private final Metrics.Counter rejectedOpen;
+    private final Metrics.Counter rejectedBulkhead;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+    // Номер периода состояния: увеличивается при каждой смене состояния
+    private long generation;
+
+    /**
+     * @param name название API (значение метки "api" в метриках, например "forecast")
+     * @param settings настройки выключателя и ограничения одновременных запросов
+     */
+    public CircuitBreaker(String name, BreakerSettings settings) {
+        this.name = name;
+        this.settings = settings;
+        this.bulkhead = new Semaphore(settings.maxConcurrentCalls());
+        Metrics metrics = Metrics.registry();
+        this.rejectedOpen = metrics.counter("upstream_rejected_total",
+                "Requests to Open-Meteo APIs rejected without a call", "api", name, "reason", "circuit_open");
+        this.rejectedBulkhead = metrics.counter("upstream_rejected_total",
+                "Requests to Open-Meteo APIs rejected without a call", "api", name, "reason", "bulkhead_full");
+        metrics.gauge("upstream_circuit_state", "Circuit breaker state: 0 - closed, 1 - half-open, 2 - open",
+                () -> state().metricValue, "api", name);
+    }
+
+    /**
+     * Выполняет запрос, если выключатель замкнут (или пришло время пробного запроса) и есть свободное место в bulkhead
+     * @param call функция, запускающая асинхронный запрос к API
+     * @return future с результатом запроса или future, завершенный UpstreamException (код 503), если запрос отклонен
+     */
+    public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> call) {
+        if (!bulkhead.tryAcquire()) {
+            rejectedBulkhead.increment();
+            return CompletableFuture.failedFuture(new UpstreamException(name + " API has too many concurrent requests", 503));
+        }
+        boolean probe;
+        long startGeneration;
+        synchronized (this) {
+            probe = state != State.CLOSED;
+            if (probe && !tryStartProbe()) {
+                bulkhead.release();
+                rejectedOpen.increment();
+                return CompletableFuture.failedFuture(new UpstreamException(name + " API is unavailable: circuit breaker is open", 503));
+            }
+            startGeneration = generation;
+        }
+        CompletableFuture<T> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        return result.whenComplete((value, exception) -> {
+            bulkhead.release();
+            if (exception == null || !isFailure(exception)) {
+                onSuccess(startGeneration);
+            } else {
+                onFailure(startGeneration);
+            }
+        });
+    }
+
+    /**
+     * @return текущее состояние выключателя (разомкнутый выключатель, у которого истек openMillis, считается полуоткрытым)
+     */
+    public synchronized State state() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= settings.openMillis()) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * Пропускает один пробный запрос после истечения openMillis, остальные запросы отклоняются до его завершения
+     */
+    private boolean tryStartProbe() {
+        if (state() != State.HALF_OPEN || probeInFlight) {
+            return false;
+        }
+        state = State.HALF_OPEN;
+        generation++;
+        probeInFlight = true;
+        return true;
+    }
+
+    /**
+     * @param startGeneration период состояния, в котором начат запрос; результаты запросов прежних периодов не учитываются
+     */
+    private synchronized void onSuccess(long startGeneration) {
+        if (startGeneration != generation) {
+            return;
+        }
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        if (state != State.CLOSED) {
+            state = State.CLOSED;
+            generation++;
+            logger.info("Circuit breaker of {} API is closed", name);
+        }
+    }
+
+    private synchronized void onFailure(long startGeneration) {
+        if (startGeneration != generation) {
+            return;
+        }
+        consecutiveFailures++;
+        probeInFlight = false;
+        if (state == State.HALF_OPEN || state == State.CLOSED && consecutiveFailures >= settings.failureThreshold()) {
+            state = State.OPEN;
+            generation++;
+            openedAt = System.currentTimeMillis();
+            logger.warn("Circuit breaker of {} API is open after {} consecutive failures", name, consecutiveFailures);
+        }
+    }
+
+    /**
+     * Ошибкой API считаются сетевые ошибки, таймауты, ответы 429 и 5xx и некорректные ответы.
+     * Ответы 4xx означают, что API работает, и выключатель не размыкают
+     */
+    private static boolean isFailure(Throwable exception) {
+        Throwable cause = exception instanceof CompletionException ? exception.getCause() : exception;
+        if (cause instanceof UpstreamException upstream) {
+            return upstream.getStatusCode() == 429 || upstream.getStatusCode() >= 500;
+        }
+        return true;
+    }
+}
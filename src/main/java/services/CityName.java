@@ -0,0 +1,64 @@
+package services;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Нормализация названий городов для ключей кэша.
+ * Запросы "Moscow", " moscow " и "MOSCOW" приводятся к одному названию "moscow",
+ * поэтому геокодинг выполняется один раз для всех вариантов написания
+ */
+public final class CityName {
+
+    private CityName() {
+    }
+
+    /**
+     * Приводит название города к каноническому виду: Unicode-нормализация NFKC
+     * (полноширинные и составные символы заменяются обычными), свертка регистра,
+     * удаление пробелов по краям и замена последовательностей пробельных символов одним пробелом
+     * @param city название города в том виде, в котором его передал клиент
+     * @return нормализованное название (пустая строка, если название состоит только из пробелов)
+     */
+    public static String normalize(String city) {
+        String composed = Normalizer.isNormalized(city, Normalizer.Form.NFKC)
+                ? city : Normalizer.normalize(city, Normalizer.Form.NFKC);
+        StringBuilder out = new StringBuilder(composed.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < composed.length(); ) {
+            int codePoint = composed.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.isWhitespace(codePoint) || Character.isSpaceChar(codePoint)) {
+                pendingSpace = out.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                out.append(' ');
+                pendingSpace = false;
+            }
+            out.appendCodePoint(codePoint);
+        }
+        // Свертка регистра: через верхний регистр, чтобы "ß" и "SS" давали одинаковый результат
+        return out.toString().toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Возвращает название города для показа: нормализованное название, в котором каждое слово
+     * (в том числе после дефиса) начинается с заглавной буквы. Все варианты написания дают одно название,
+     * поэтому страницы и ответы, в которых оно выводится, кэшируются один раз
+     * @param city название города в том виде, в котором его передал клиент
+     * @return название вида "New York" или "Санкт-Петербург"
+     */
+    public static String displayName(String city) {
+        String normalized = normalize(city);
+        StringBuilder out = new StringBuilder(normalized.length());
+        boolean wordStart = true;
+        for (int i = 0; i < normalized.length(); ) {
+            int codePoint = normalized.codePointAt(i);
+            i += Character.charCount(codePoint);
+            out.appendCodePoint(wordStart ? Character.toTitleCase(codePoint) : codePoint);
+            wordStart = codePoint == ' ' || codePoint == '-';
+        }
+        return out.toString();
+    }
+}
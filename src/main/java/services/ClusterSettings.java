@@ -0,0 +1,35 @@
+package services;
+
+/**
+ * Настройки согласования кэшей нескольких экземпляров сервиса, работающих с одним Redis
+ * @param enabled включено ли согласование: сообщения об обновлении прогнозов через pub/sub и блокировка загрузки
+ * @param lockLeaseMillis срок блокировки загрузки прогноза местоположения, миллисекунды; столько же другие экземпляры
+ *                        ждут результата загрузки, прежде чем загрузить прогноз сами
+ */
+public record ClusterSettings(boolean enabled, long lockLeaseMillis) {
+
+    public ClusterSettings {
+        if (enabled && lockLeaseMillis < 1) {
+            throw new IllegalArgumentException("Lock lease must be positive: " + lockLeaseMillis);
+        }
+    }
+
+    /**
+     * Настройки для единственного экземпляра сервиса: без сообщений и блокировок
+     */
+    public static ClusterSettings disabled() {
+        return new ClusterSettings(false, 0);
+    }
+
+    /**
+     * Читает настройки из системных свойств и переменных окружения (см. AppConfig):
+     * cluster.enabled, cluster.lock-lease.ms
+     * @return настройки согласования кэшей
+     */
+    public static ClusterSettings fromConfig() {
+        return new ClusterSettings(
+                AppConfig.getBoolean("cluster.enabled", true),
+                AppConfig.getLong("cluster.lock-lease.ms", 5000)
+        );
+    }
+}
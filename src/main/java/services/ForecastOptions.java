@@ -0,0 +1,124 @@
+package services;
+
+import data.HourlyForecast;
+import data.WeatherData;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Параметры запроса прогноза: почасовые переменные Open-Meteo и количество суток
+ * @param variables названия переменных без повторов, по алфавиту (например, "temperature_2m")
+ * @param days количество суток прогноза, начиная с текущих
+ */
+public record ForecastOptions(List<String> variables, int days) {
+    /**
+     * Температура на сутки: то, что нужно странице /weather
+     */
+    public static final ForecastOptions DEFAULT = new ForecastOptions(List.of(WeatherData.TEMPERATURE), 1);
+    private static final Set<String> SUPPORTED_VARIABLES = Set.copyOf(AppConfig.getList("forecast.variables",
+            List.of(WeatherData.TEMPERATURE, "precipitation", "wind_speed_10m", "relative_humidity_2m")));
+    private static final int MAX_DAYS = AppConfig.getInt("forecast.max-days", 16);
+    // Подписи и единицы измерения переменных Open-Meteo (в единицах API по умолчанию)
+    private static final Map<String, VariableLabel> LABELS = Map.of(
+            WeatherData.TEMPERATURE, new VariableLabel("Temperature", "C"),
+            "precipitation", new VariableLabel("Precipitation", "mm"),
+            "wind_speed_10m", new VariableLabel("Wind speed", "km/h"),
+            "relative_humidity_2m", new VariableLabel("Relative humidity", "%"));
+
+    public ForecastOptions {
+        variables = List.copyOf(new TreeSet<>(variables));
+    }
+
+    /**
+     * Разбирает параметры HTTP-запроса
+     * @param variables переменные через запятую или null (только температура)
+     * @param days количество суток или null (одни сутки)
+     * @return параметры запроса прогноза
+     * @throws IllegalArgumentException если переменная не поддерживается или количество суток вне допустимого диапазона
+     */
+    public static ForecastOptions parse(String variables, String days) {
+        List<String> names = new ArrayList<>();
+        if (variables != null) {
+            for (String variable : variables.split(",")) {
+                String name = variable.trim().toLowerCase(Locale.ROOT);
+                if (name.isEmpty()) {
+                    continue;
+                }
+                if (!SUPPORTED_VARIABLES.contains(name)) {
+                    throw new IllegalArgumentException("Unsupported forecast variable \"" + name + "\"");
+                }
+                names.add(name);
+            }
+        }
+        if (names.isEmpty()) {
+            names.add(WeatherData.TEMPERATURE);
+        }
+        int forecastDays;
+        try {
+            forecastDays = days == null || days.isBlank() ? 1 : Integer.parseInt(days.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Forecast days must be a number, got \"" + days + "\"");
+        }
+        if (forecastDays < 1 || forecastDays > MAX_DAYS) {
+            throw new IllegalArgumentException("Forecast days must be between 1 and " + MAX_DAYS + ", got " + forecastDays);
+        }
+        return new ForecastOptions(names, forecastDays);
+    }
+
+    /**
+     * @return переменные, которые можно запросить (настройка "forecast.variables")
+     */
+    public static Set<String> supportedVariables() {
+        return SUPPORTED_VARIABLES;
+    }
+
+    /**
+     * Возвращает подпись переменной для графика
+     * @param variable название переменной Open-Meteo
+     * @return название и единица измерения; для переменной без подписи - ее название без единицы измерения
+     */
+    public static VariableLabel label(String variable) {
+        return LABELS.getOrDefault(variable, new VariableLabel(variable, ""));
+    }
+
+    /**
+     * Возвращает параметры, по которым можно обновить уже загруженные данные целиком
+     * @param weatherData загруженные данные
+     */
+    public static ForecastOptions of(WeatherData weatherData) {
+        int days = 1;
+        for (HourlyForecast forecast : weatherData.hourly().values()) {
+            days = Math.max(days, forecast.days());
+        }
+        return new ForecastOptions(new ArrayList<>(weatherData.hourly().keySet()), days);
+    }
+
+    /**
+     * Возвращает параметры с теми же сутками, но другими переменными
+     * @param variables названия переменных
+     */
+    public ForecastOptions withVariables(Collection<String> variables) {
+        return new ForecastOptions(new ArrayList<>(variables), days);
+    }
+
+    /**
+     * @return ключ параметров для объединения одновременных запросов, например "precipitation,temperature_2m/3"
+     */
+    public String key() {
+        return String.join(",", variables) + '/' + days;
+    }
+
+    /**
+     * Подпись переменной прогноза
+     * @param name название для показа (например, "Temperature")
+     * @param unit единица измерения (например, "C") или пустая строка
+     */
+    public record VariableLabel(String name, String unit) {
+    }
+}
@@ -1,57 +1,288 @@
 package services;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
+import data.CachedCoordinates;
 import data.Coordinates;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
+import okhttp3.HttpUrl;
+import okhttp3.ResponseBody;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import redis.clients.jedis.exceptions.JedisException;
 
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Сервис геокодинга: определяет координаты города по его названию.
+ * Координаты городов не меняются, поэтому результаты (в том числе "город не найден")
+ * кэшируются в памяти процесса и в Redis на длительный срок
+ */
 public class GeolocationService {
     private static final String GEOCODING_URL = "https://geocoding-api.open-meteo.com/v1/search";
-    private final OkHttpClient okHttpClient;
-    private final Gson gson;
+    private static final int CACHE_TTL_SECONDS = AppConfig.getInt("cache.geocoding.ttl-days", 30) * 24 * 3600;
+    private static final int NEGATIVE_CACHE_TTL_SECONDS = AppConfig.getInt("cache.geocoding.negative-ttl-hours", 24) * 3600;
+    private static final Metrics.LatencyHistogram GEOCODE_LATENCY = Metrics.registry().histogram("weather_stage_seconds",
+            "Latency of request processing stages", "stage", "geocode");
+    private static final Metrics.Counter UPSTREAM_SUCCESS = Metrics.registry().counter("upstream_requests_total",
+            "Requests to Open-Meteo APIs by outcome", "api", "geocoding", "outcome", "success");
+    private static final Metrics.Counter UPSTREAM_ERRORS = Metrics.registry().counter("upstream_requests_total",
+            "Requests to Open-Meteo APIs by outcome", "api", "geocoding", "outcome", "error");
+    private final HttpUrl geocodingUrl;
+    private final RedisService redis;
+    private final LocalCache<CachedCoordinates> localCache;
+    private final LongAdder redisHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final SingleFlight<CachedCoordinates> singleFlight = new SingleFlight<>();
+    private final UpstreamClient upstream;
+    private final CircuitBreaker breaker;
     private final static Logger logger = LoggerFactory.getLogger(GeolocationService.class);
 
     public GeolocationService() {
-        this.okHttpClient = new OkHttpClient();
-        this.gson = new Gson();
+        this(AppConfig.getString("geocoding.url", GEOCODING_URL), null);
+    }
+
+    public GeolocationService(RedisService redis) {
+        this(AppConfig.getString("geocoding.url", GEOCODING_URL), redis);
+    }
+
+    /**
+     * @param geocodingUrl адрес API геокодинга (например, локальной заглушки в тестах)
+     */
+    public GeolocationService(String geocodingUrl) {
+        this(geocodingUrl, null);
+    }
+
+    /**
+     * @param geocodingUrl адрес API геокодинга (например, локальной заглушки в тестах)
+     * @param redis сервис кэширования в Redis или null, если координаты кэшируются только в памяти
+     */
+    public GeolocationService(String geocodingUrl, RedisService redis) {
+        this(geocodingUrl, redis, UpstreamClient.shared());
+    }
+
+    /**
+     * @param geocodingUrl адрес API геокодинга (например, локальной заглушки в тестах)
+     * @param redis сервис кэширования в Redis или null, если координаты кэшируются только в памяти
+     * @param upstream HTTP-клиент для запросов к внешним API
+     * @throws IllegalArgumentException если адрес API некорректен
+     */
+    public GeolocationService(String geocodingUrl, RedisService redis, UpstreamClient upstream) {
+        this(geocodingUrl, redis, upstream, BreakerSettings.fromConfig());
+    }
+
+    /**
+     * @param geocodingUrl адрес API геокодинга (например, локальной заглушки в тестах)
+     * @param redis сервис кэширования в Redis или null, если координаты кэшируются только в памяти
+     * @param upstream HTTP-клиент для запросов к внешним API
+     * @param breakerSettings настройки защиты запросов к API геокодинга
+     * @throws IllegalArgumentException если адрес API некорректен
+     */
+    public GeolocationService(String geocodingUrl, RedisService redis, UpstreamClient upstream, BreakerSettings breakerSettings) {
+        this.geocodingUrl = HttpUrl.get(geocodingUrl);
+        this.redis = redis;
+        this.localCache = new LocalCache<>(AppConfig.getInt("cache.geocoding.max-size", 10_000));
+        this.upstream = upstream;
+        this.breaker = new CircuitBreaker("geocoding", breakerSettings);
+        Metrics.registry().gauge("cache_hit_ratio", "Share of cache lookups served from cache",
+                () -> getCacheStats().hitRatio(), "cache", "geocoding");
     }
 
     /**
-     * Получает координаты города по его названию
+     * Получает координаты города по его названию.
+     * Сначала проверяется кэш в памяти, затем Redis, и только при промахе выполняется запрос к API геокодинга
      * @param city название города (например: "Moscow")
-     * @return объект Coordinates(double latitude, double longitude) с широтой и долготой или null при ошибке
+     * @return объект Coordinates(double latitude, double longitude) с широтой и долготой или null, если город не найден
+     * @throws CompletionException если API геокодинга недоступно (причина - UpstreamException или IOException)
      */
     public Coordinates getCoordinates(String city) {
-        String url = String.format("%s?name=%s&count=1", GEOCODING_URL, city);
-        Request request = new Request.Builder().url(url).build();
+        return getCoordinatesAsync(city).join();
+    }
+
+    /**
+     * Асинхронно получает координаты города по его названию.
+     * Название нормализуется (CityName.normalize), поэтому варианты написания одного названия
+     * используют одну запись кэша, а одновременные промахи по ней - один запрос к API.
+     * При попадании в кэш возвращает уже завершенный future
+     * @param city название города (например: "Moscow")
+     * @return future с объектом Coordinates или null, если город не найден;
+     * если API геокодинга недоступно, future завершается ошибкой
+     */
+    public CompletableFuture<Coordinates> getCoordinatesAsync(String city) {
+        String key = CityName.normalize(city);
+        if (key.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CachedCoordinates cached = localCache.get(key);
+        if (cached == null) {
+            cached = getSavedCoordinates(key);
+        }
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached.coordinates());
+        }
 
-        try (Response response = okHttpClient.newCall(request).execute()) {
-            if (!response.isSuccessful() || response.body() == null) {
-                logger.error("During requesting temperature by city \"{}\" an error has occurred: {}",city, response.code());
-                return null;
+        misses.increment();
+        return singleFlight.execute(key, () -> requestCoordinates(key).thenApply(result -> {
+            saveCoordinates(key, result);
+            return result;
+        })).thenApply(CachedCoordinates::coordinates);
+    }
+
+    /**
+     * Возвращает результат геокодинга из кэша в памяти процесса, не обращаясь к Redis и API и не изменяя метрики кэша
+     * @param city название города
+     * @return CachedCoordinates.class (NOT_FOUND, если известно, что город не найден) или null, если города нет в кэше
+     */
+    CachedCoordinates peekCoordinates(String city) {
+        LocalCache.Entry<CachedCoordinates> entry = localCache.peek(CityName.normalize(city));
+        return entry == null || entry.isExpired(System.currentTimeMillis()) ? null : entry.value();
+    }
+
+    /**
+     * Заполняет кэш координатами известных городов из файла.
+     * Формат строки: "название;широта;долгота", строки, начинающиеся с #, пропускаются.
+     * Строки с нечисловыми координатами или координатами вне диапазона (широта ±90, долгота ±180) пропускаются с предупреждением
+     * @param file путь к файлу
+     * @return количество загруженных городов
+     * @throws IOException если файл не удалось прочитать
+     */
+    public int preload(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        int loaded = 0;
+        for (String line : lines) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
             }
+            String[] parts = line.split(";");
+            if (parts.length != 3) {
+                logger.warn("Skipping malformed geocoding seed line \"{}\"", line);
+                continue;
+            }
+            String latitude = parts[1].trim();
+            String longitude = parts[2].trim();
+            if (!isDegrees(latitude, 90) || !isDegrees(longitude, 180)) {
+                logger.warn("Skipping geocoding seed line with invalid coordinates \"{}\"", line);
+                continue;
+            }
+            saveCoordinates(CityName.normalize(parts[0]), new CachedCoordinates(new Coordinates(latitude, longitude)));
+            loaded++;
+        }
+        logger.info("{} cities were preloaded into geocoding cache from {}", loaded, file);
+        return loaded;
+    }
+
+    /**
+     * Проверяет, что значение - число градусов (в форме, которую разбирает Coordinates.key) не больше limit по модулю
+     */
+    private static boolean isDegrees(String value, int limit) {
+        try {
+            return new BigDecimal(value).abs().compareTo(BigDecimal.valueOf(limit)) <= 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Возвращает метрики кэша координат
+     * @return снимок метрик CacheStats.class
+     */
+    public CacheStats getCacheStats() {
+        return new CacheStats(localCache.stats().hits(), redisHits.sum(), misses.sum());
+    }
+
+    /**
+     * @return состояние выключателя запросов к API геокодинга
+     */
+    public CircuitBreaker.State getBreakerState() {
+        return breaker.state();
+    }
 
-            JsonObject json = gson.fromJson(response.body().string(), JsonObject.class);
-            JsonArray results = json.getAsJsonArray("results");
-            if (results == null) {
-                logger.error(String.format("When requesting the coordinates of the city \"%s\", the server returned an empty result", city));
-                return null;
+    /**
+     * Асинхронно запрашивает координаты города у API геокодинга.
+     * Пока выключатель разомкнут, запрос сразу завершается ошибкой
+     * @param city нормализованное название города
+     * @return future с CachedCoordinates.class (NOT_FOUND, если город не найден); при ошибке запроса future завершается исключением
+     */
+    private CompletableFuture<CachedCoordinates> requestCoordinates(String city) {
+        // Параметры кодируются: названия с пробелами, "&" или "#" не должны ломать запрос
+        String url = geocodingUrl.newBuilder()
+                .addQueryParameter("name", city)
+                .addQueryParameter("count", "1")
+                .build()
+                .toString();
+        return breaker.execute(() -> {
+                    long start = System.nanoTime();
+                    return upstream.getAsync(url, body -> parseCoordinates(city, body))
+                            .whenComplete((result, exception) -> {
+                                GEOCODE_LATENCY.recordSince(start);
+                                (exception == null ? UPSTREAM_SUCCESS : UPSTREAM_ERRORS).increment();
+                            });
+                })
+                .whenComplete((result, exception) -> {
+                    if (exception != null) {
+                        Throwable cause = exception instanceof CompletionException ? exception.getCause() : exception;
+                        logger.error(String.format("An error occurred when requesting the coordinates of the city \"%s\" - %s", city, cause.getMessage()));
+                    }
+                });
+    }
+
+    private CachedCoordinates parseCoordinates(String city, ResponseBody body) throws IOException {
+        CachedCoordinates coordinates = OpenMeteoParser.parseCoordinates(body.charStream());
+        if (!coordinates.found()) {
+            logger.error(String.format("When requesting the coordinates of the city \"%s\", the server returned an empty result", city));
+        }
+        return coordinates;
+    }
+
+    private CachedCoordinates getSavedCoordinates(String key) {
+        if (redis == null) {
+            return null;
+        }
+        try {
+            CachedCoordinates cached = redis.getSavedCoordinates(key);
+            if (cached != null) {
+                redisHits.increment();
+                localCache.put(key, cached, expiresAt(cached));
             }
-            JsonObject firstResult = results.get(0).getAsJsonObject();
+            return cached;
+        } catch (JedisException e) {
+            logger.warn("Geocoding cache is unavailable: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void saveCoordinates(String key, CachedCoordinates coordinates) {
+        localCache.put(key, coordinates, expiresAt(coordinates));
+        if (redis == null) {
+            return;
+        }
+        redis.saveCoordinates(key, coordinates, coordinates.found() ? CACHE_TTL_SECONDS : NEGATIVE_CACHE_TTL_SECONDS);
+    }
 
-            String latitude = firstResult.get("latitude").getAsString().replace(",",".");
-            String longitude = firstResult.get("longitude").getAsString().replace(",",".");
-            return new Coordinates(latitude, longitude);
+    private static long expiresAt(CachedCoordinates coordinates) {
+        int ttlSeconds = coordinates.found() ? CACHE_TTL_SECONDS : NEGATIVE_CACHE_TTL_SECONDS;
+        return System.currentTimeMillis() + ttlSeconds * 1000L;
+    }
+
+    /**
+     * Метрики кэша координат
+     * @param memoryHits количество попаданий в кэш в памяти процесса
+     * @param redisHits количество попаданий в Redis
+     * @param misses количество запросов к API геокодинга
+     */
+    public record CacheStats(long memoryHits, long redisHits, long misses) {
 
-        } catch (Exception e) {
-            logger.error(String.format("An error occurred when requesting the coordinates of the city \"%s\" - %s", city, e.getMessage()));
+        /**
+         * @return доля запросов, обслуженных из кэша (от 0 до 1)
+         */
+        public double hitRatio() {
+            long total = memoryHits + redisHits + misses;
+            return total == 0 ? 0 : (double) (memoryHits + redisHits) / total;
         }
-        return null;
     }
-}
\ No newline at end of file
+}
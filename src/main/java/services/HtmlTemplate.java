@@ -0,0 +1,133 @@
+package services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTML-шаблон с подстановками вида {{name}}.
+ * Шаблон разбирается один раз на текстовые фрагменты и подстановки, поэтому при заполнении
+ * страница собирается за один проход без промежуточных копий всего текста
+ */
+public final class HtmlTemplate {
+    private static final String OPEN = "{{";
+    private static final String CLOSE = "}}";
+
+    // Четные элементы - текст шаблона, нечетные - имена подстановок
+    private final String[] segments;
+    private final int literalLength;
+
+    private HtmlTemplate(String[] segments) {
+        this.segments = segments;
+        int length = 0;
+        for (int i = 0; i < segments.length; i += 2) {
+            length += segments[i].length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * Загружает и разбирает шаблон из ресурсов приложения (classpath), поэтому работает и при запуске из jar
+     * @param resource путь к ресурсу (например: "/weather_page.html")
+     * @return разобранный шаблон
+     * @throws UncheckedIOException если ресурс не найден или не может быть прочитан
+     */
+    public static HtmlTemplate fromClasspath(String resource) {
+        try (InputStream in = HtmlTemplate.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("Template resource " + resource + " was not found");
+            }
+            return parse(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Разбирает текст шаблона на текстовые фрагменты и подстановки
+     * @param text текст шаблона
+     * @return разобранный шаблон
+     */
+    public static HtmlTemplate parse(String text) {
+        List<String> segments = new ArrayList<>();
+        int position = 0;
+        while (true) {
+            int open = text.indexOf(OPEN, position);
+            int close = open < 0 ? -1 : text.indexOf(CLOSE, open + OPEN.length());
+            if (close < 0) {
+                segments.add(text.substring(position));
+                break;
+            }
+            segments.add(text.substring(position, open));
+            segments.add(text.substring(open + OPEN.length(), close).trim());
+            position = close + CLOSE.length();
+        }
+        return new HtmlTemplate(segments.toArray(new String[0]));
+    }
+
+    /**
+     * Заполняет шаблон в строку. Буфер выделяется сразу нужного размера
+     * @param values значения подстановок по именам
+     * @return готовая страница
+     * @throws IllegalArgumentException если для подстановки не задано значение
+     */
+    public String render(Map<String, ? extends CharSequence> values) {
+        int length = literalLength;
+        for (int i = 1; i < segments.length; i += 2) {
+            length += valueOf(values, segments[i]).length();
+        }
+        StringBuilder page = new StringBuilder(length);
+        renderInto(page, values);
+        return page.toString();
+    }
+
+    /**
+     * Экранирует символы разметки HTML. Значения подстановок не экранируются при заполнении шаблона,
+     * поэтому текст, пришедший от клиента (например, название города), нужно передавать через этот метод
+     * @param value текст
+     * @return текст, безопасный для вставки в элемент или значение атрибута HTML
+     */
+    public static String escape(CharSequence value) {
+        StringBuilder out = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String replacement = switch (c) {
+                case '&' -> "&amp;";
+                case '<' -> "&lt;";
+                case '>' -> "&gt;";
+                case '"' -> "&quot;";
+                case '\'' -> "&#39;";
+                default -> null;
+            };
+            if (replacement != null && out == null) {
+                out = new StringBuilder(value.length() + 16).append(value, 0, i);
+            }
+            if (out != null) {
+                if (replacement != null) {
+                    out.append(replacement);
+                } else {
+                    out.append(c);
+                }
+            }
+        }
+        return out == null ? value.toString() : out.toString();
+    }
+
+    private void renderInto(StringBuilder out, Map<String, ? extends CharSequence> values) {
+        for (int i = 0; i < segments.length; i++) {
+            out.append(i % 2 == 0 ? segments[i] : valueOf(values, segments[i]));
+        }
+    }
+
+    private static CharSequence valueOf(Map<String, ? extends CharSequence> values, String name) {
+        CharSequence value = values.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("No value for template placeholder {{" + name + "}}");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,39 @@
+package services;
+
+/**
+ * Настройки HTTP-клиента для запросов к внешним API
+ * @param connectTimeoutMillis таймаут установки соединения, миллисекунды
+ * @param readTimeoutMillis таймаут чтения ответа, миллисекунды
+ * @param callTimeoutMillis общий таймаут одного запроса (включая перенаправления), миллисекунды
+ * @param maxRetries количество повторов при сетевой ошибке или ответах 429/5xx
+ * @param retryBackoffMillis задержка перед первым повтором, далее удваивается, миллисекунды
+ * @param maxRequests максимальное количество одновременных запросов
+ * @param maxRequestsPerHost максимальное количество одновременных запросов к одному хосту
+ * @param maxIdleConnections максимальное количество простаивающих соединений в пуле
+ * @param keepAliveSeconds время жизни простаивающего соединения, секунды
+ */
+public record HttpSettings(int connectTimeoutMillis, int readTimeoutMillis, int callTimeoutMillis,
+                           int maxRetries, long retryBackoffMillis,
+                           int maxRequests, int maxRequestsPerHost,
+                           int maxIdleConnections, int keepAliveSeconds) {
+
+    /**
+     * Читает настройки из системных свойств и переменных окружения (см. AppConfig):
+     * http.connect-timeout.ms, http.read-timeout.ms, http.call-timeout.ms, http.retries, http.retry-backoff.ms,
+     * http.max-requests, http.max-requests-per-host, http.pool.max-idle, http.pool.keep-alive.seconds
+     * @return настройки HTTP-клиента
+     */
+    public static HttpSettings fromConfig() {
+        return new HttpSettings(
+                AppConfig.getInt("http.connect-timeout.ms", 2000),
+                AppConfig.getInt("http.read-timeout.ms", 5000),
+                AppConfig.getInt("http.call-timeout.ms", 10000),
+                AppConfig.getInt("http.retries", 2),
+                AppConfig.getLong("http.retry-backoff.ms", 200),
+                AppConfig.getInt("http.max-requests", 128),
+                AppConfig.getInt("http.max-requests-per-host", 32),
+                AppConfig.getInt("http.pool.max-idle", 32),
+                AppConfig.getInt("http.pool.keep-alive.seconds", 300)
+        );
+    }
+}
@@ -0,0 +1,92 @@
+package services;
+
+import data.HourlyForecast;
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.plot.CategoryPlot;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.renderer.category.LineAndShapeRenderer;
+import org.jfree.data.category.DefaultCategoryDataset;
+import org.jfree.svg.SVGGraphics2D;
+
+import java.awt.*;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * График температуры на JFreeChart (рисование через AWT в SVGGraphics2D).
+ * Используется, если в настройке chart.renderer указано "jfreechart"
+ */
+public class JFreeChartRenderer implements ChartRenderer {
+    private static final DateTimeFormatter DATE_TIME_LABEL = DateTimeFormatter.ofPattern("dd.MM HH:mm").withZone(ZoneOffset.UTC);
+
+    @Override
+    public void render(HourlyForecast forecast, String label, String unit, StringBuilder out) {
+        // Создаем набор данных для графика
+        DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+        // Заполняем данными о температуре. Подписи - ключи категорий, поэтому для прогноза
+        // на несколько суток к времени добавляется дата, иначе одинаковые часы разных суток совпадут
+        boolean severalDays = forecast.days() > 1;
+        for (int i = 0; i < forecast.size(); i++) {
+            String time = severalDays
+                    ? DATE_TIME_LABEL.format(Instant.ofEpochSecond(forecast.epochSecondAt(i)))
+                    : forecast.timeLabel(i);
+            dataset.addValue(forecast.value(i), label, time);
+        }
+
+        // - Без заголовка
+        // - Ось X: "Hours" (Часы)
+        // - Ось Y: название переменной и единица измерения, например "Temperature (C)"
+        // - Ориентация: вертикальная
+        // - Без легенды, подсказок и URL
+        JFreeChart chart = ChartFactory.createLineChart(
+                null,
+                "Hours",
+                ChartRenderer.axisTitle(label, unit),
+                dataset,
+                PlotOrientation.VERTICAL,
+                false,
+                false,
+                false
+        );
+
+        //Применяем кастомный дизайн к графику
+        customizeChartDesign(chart);
+
+        //Рисуем график в SVG
+        SVGGraphics2D g2 = new SVGGraphics2D(SvgChartRenderer.WIDTH, SvgChartRenderer.HEIGHT);
+        chart.draw(g2, new Rectangle2D.Double(0, 0, SvgChartRenderer.WIDTH, SvgChartRenderer.HEIGHT));
+        out.append(g2.getSVGElement());
+    }
+
+    /**
+     * Настраивает дизайн графика
+     * @param chart объект графика для настройки
+     */
+    private void customizeChartDesign(JFreeChart chart) {
+
+        // Получаем область рисования графика
+        CategoryPlot plot = chart.getCategoryPlot();
+        LineAndShapeRenderer renderer = (LineAndShapeRenderer) plot.getRenderer();
+
+        // Устанавливаем зеленый цвет линии
+        renderer.setSeriesPaint(0, new Color(8, 113, 0));
+        // Толщина линии графика - 3 пикселя
+        renderer.setSeriesStroke(0, new BasicStroke(2f));
+        // Включаем отображение точек на графике
+        renderer.setSeriesShapesVisible(0, true);
+        // Форма точек - круги диаметром 6 пикселей
+        renderer.setSeriesShape(0, new Ellipse2D.Double(-3, -3, 6, 6));
+        // Белый фон области графика
+        plot.setBackgroundPaint(new Color(255, 255, 255));
+        // Цвет сетки по оси Y (полупрозрачный зеленый)
+        plot.setRangeGridlinePaint(new Color(0, 30, 1, 161));
+
+        // Настраиваем шрифт меток:
+        Font axisFont = new Font("Ubuntu", Font.BOLD, 10);
+        plot.getDomainAxis().setTickLabelFont(axisFont);
+    }
+}
@@ -0,0 +1,207 @@
+package services;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * Кэш в памяти процесса с ограничением по размеру и временем жизни записей.
+ * При превышении размера вытесняется запись, к которой дольше всего не обращались (LRU).
+ * Устаревшие записи могут храниться еще maxStaleMillis после истечения срока жизни,
+ * чтобы их можно было отдать, пока выполняется обновление (stale-while-revalidate)
+ * @param <V> тип хранимых значений
+ */
+public class LocalCache<V> {
+    private final int maxSize;
+    private final long maxStaleMillis;
+    private final LinkedHashMap<String, Entry<V>> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize максимальное количество записей в кэше
+     */
+    public LocalCache(int maxSize) {
+        this(maxSize, 0);
+    }
+
+    /**
+     * @param maxSize максимальное количество записей в кэше
+     * @param maxStaleMillis сколько миллисекунд после истечения срока жизни запись еще может быть отдана как устаревшая
+     */
+    public LocalCache(int maxSize, long maxStaleMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive, got " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.maxStaleMillis = maxStaleMillis;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+                if (size() > LocalCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Возвращает значение по ключу, если оно есть в кэше и его срок жизни не истек
+     * @param key ключ
+     * @return значение или null
+     */
+    public V get(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && entry.expiresAt() > now) {
+                hits.increment();
+                return entry.value();
+            }
+            if (entry != null && entry.expiresAt() + maxStaleMillis <= now) {
+                entries.remove(key);
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Возвращает запись по ключу, в том числе устаревшую, если с момента окончания ее срока жизни
+     * прошло не больше maxStaleMillis
+     * @param key ключ
+     * @return запись Entry (проверить актуальность можно через Entry.isExpired) или null
+     */
+    public Entry<V> getEntry(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && !entry.isExpired(now)) {
+                hits.increment();
+                return entry;
+            }
+            if (entry != null && entry.expiresAt() + maxStaleMillis > now) {
+                staleHits.increment();
+                return entry;
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Возвращает запись по ключу, в том числе устаревшую, не изменяя счетчики обращений
+     * @param key ключ
+     * @return запись Entry или null
+     */
+    public Entry<V> peek(String key) {
+        synchronized (entries) {
+            return entries.get(key);
+        }
+    }
+
+    /**
+     * Возвращает момент окончания срока жизни записи, не изменяя счетчики обращений
+     * @param key ключ
+     * @return epoch millis или 0, если записи нет
+     */
+    public long expiresAt(String key) {
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            return entry == null ? 0 : entry.expiresAt();
+        }
+    }
+
+    /**
+     * Сохраняет значение в кэш
+     * @param key ключ
+     * @param value значение
+     * @param expiresAtMillis момент окончания срока жизни записи (epoch millis)
+     */
+    public void put(String key, V value, long expiresAtMillis) {
+        if (expiresAtMillis + maxStaleMillis <= System.currentTimeMillis()) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(key, new Entry<>(value, expiresAtMillis));
+        }
+    }
+
+    /**
+     * Атомарно заменяет запись по ключу: например, чтобы дописать данные к уже сохраненному значению
+     * @param key ключ
+     * @param remapping получает текущую запись (в том числе устаревшую) или null и возвращает новую запись
+     */
+    public void compute(String key, UnaryOperator<Entry<V>> remapping) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry<V> entry = remapping.apply(entries.get(key));
+            if (entry == null || entry.expiresAt() + maxStaleMillis <= now) {
+                entries.remove(key);
+            } else {
+                entries.put(key, entry);
+            }
+        }
+    }
+
+    /**
+     * Удаляет значение из кэша
+     * @param key ключ
+     */
+    public void invalidate(String key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Возвращает счетчики обращений к кэшу
+     * @return снимок метрик Stats.class
+     */
+    public Stats stats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new Stats(hits.sum(), staleHits.sum(), misses.sum(), evictions.sum(), size);
+    }
+
+    /**
+     * Запись кэша
+     * @param value значение
+     * @param expiresAt момент окончания срока жизни (epoch millis)
+     */
+    public record Entry<V>(V value, long expiresAt) {
+
+        public boolean isExpired(long nowMillis) {
+            return expiresAt <= nowMillis;
+        }
+    }
+
+    /**
+     * Метрики кэша
+     * @param hits количество попаданий
+     * @param staleHits количество отданных устаревших записей
+     * @param misses количество промахов (включая устаревшие записи)
+     * @param evictions количество записей, вытесненных из-за ограничения размера
+     * @param size текущее количество записей
+     */
+    public record Stats(long hits, long staleHits, long misses, long evictions, int size) {
+
+        /**
+         * @return доля попаданий среди всех обращений (от 0 до 1)
+         */
+        public double hitRatio() {
+            long total = hits + staleHits + misses;
+            return total == 0 ? 0 : (double) (hits + staleHits) / total;
+        }
+    }
+}
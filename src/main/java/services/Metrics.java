@@ -0,0 +1,283 @@
+package services;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Метрики приложения в текстовом формате Prometheus.
+ * Счетчики и гистограммы не используют блокировок: запись значения - это несколько атомарных инкрементов,
+ * поэтому их можно обновлять на каждом запросе. Метрика определяется именем и набором меток;
+ * повторный запрос метрики с тем же именем и метками возвращает тот же объект
+ */
+public final class Metrics {
+    private static final Metrics REGISTRY = new Metrics();
+    // Границы бакетов гистограмм в выводе Prometheus, секунды
+    private static final double[] EXPORTED_BUCKETS = {0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01,
+            0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private final ConcurrentSkipListMap<String, Family> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * Создает отдельный реестр (в приложении используется общий registry())
+     */
+    Metrics() {
+    }
+
+    /**
+     * @return общий реестр метрик приложения
+     */
+    public static Metrics registry() {
+        return REGISTRY;
+    }
+
+    /**
+     * Возвращает счетчик (монотонно растущее значение)
+     * @param name имя метрики (например: "upstream_requests_total")
+     * @param help описание метрики
+     * @param labels пары "имя метки", "значение"
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, "counter", help).series.computeIfAbsent(labels(labels), key -> new Counter());
+    }
+
+    /**
+     * Возвращает гистограмму задержек
+     * @param name имя метрики (например: "weather_stage_seconds")
+     * @param help описание метрики
+     * @param labels пары "имя метки", "значение"
+     */
+    public LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram) family(name, "histogram", help).series.computeIfAbsent(labels(labels), key -> new LatencyHistogram());
+    }
+
+    /**
+     * Регистрирует показатель, значение которого вычисляется при каждом чтении метрик.
+     * Повторная регистрация с тем же именем и метками заменяет прежний показатель
+     * @param name имя метрики (например: "cache_hit_ratio")
+     * @param help описание метрики
+     * @param value функция, возвращающая текущее значение
+     * @param labels пары "имя метки", "значение"
+     */
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, "gauge", help).series.put(labels(labels), value);
+    }
+
+    /**
+     * Возвращает все метрики в текстовом формате Prometheus (version 0.0.4)
+     */
+    public String scrape() {
+        StringBuilder text = new StringBuilder(4096);
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            text.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            text.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Object> series : family.series.entrySet()) {
+                String labels = series.getKey();
+                Object metric = series.getValue();
+                if (metric instanceof Counter counter) {
+                    sample(text, name, labels, counter.sum());
+                } else if (metric instanceof DoubleSupplier gauge) {
+                    sample(text, name, labels, gauge.getAsDouble());
+                } else if (metric instanceof LatencyHistogram histogram) {
+                    writeHistogram(text, name, labels, histogram);
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    private Family family(String name, String type, String help) {
+        Family family = families.computeIfAbsent(name, key -> new Family(type, help));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException(String.format("Metric \"%s\" is already registered as %s", name, family.type));
+        }
+        return family;
+    }
+
+    private static void writeHistogram(StringBuilder text, String name, String labels, LatencyHistogram histogram) {
+        long[] counts = histogram.snapshot();
+        long cumulative = 0;
+        int bucket = 0;
+        for (double bound : EXPORTED_BUCKETS) {
+            long boundMicros = (long) (bound * 1_000_000);
+            while (bucket < counts.length && LatencyHistogram.upperBoundMicros(bucket) <= boundMicros) {
+                cumulative += counts[bucket++];
+            }
+            sample(text, name + "_bucket", withLabel(labels, "le", BigDecimal.valueOf(bound).stripTrailingZeros().toPlainString()), cumulative);
+        }
+        while (bucket < counts.length) {
+            cumulative += counts[bucket++];
+        }
+        sample(text, name + "_bucket", withLabel(labels, "le", "+Inf"), cumulative);
+        sample(text, name + "_sum", labels, histogram.sumMicros() / 1_000_000.0);
+        sample(text, name + "_count", labels, cumulative);
+    }
+
+    private static void sample(StringBuilder text, String name, String labels, double value) {
+        text.append(name).append(labels).append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            text.append((long) value);
+        } else {
+            text.append(value);
+        }
+        text.append('\n');
+    }
+
+    private static String labels(String... pairs) {
+        if (pairs.length % 2 != 0) {
+            throw new IllegalArgumentException("Metric labels must be name/value pairs");
+        }
+        String labels = "";
+        for (int i = 0; i < pairs.length; i += 2) {
+            labels = withLabel(labels, pairs[i], pairs[i + 1]);
+        }
+        return labels;
+    }
+
+    private static String withLabel(String labels, String name, String value) {
+        String label = name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + '"';
+        return labels.isEmpty() ? '{' + label + '}' : labels.substring(0, labels.length() - 1) + ',' + label + '}';
+    }
+
+    /**
+     * Семейство метрик с одним именем и разными метками
+     */
+    private static final class Family {
+        private final String type;
+        private final String help;
+        private final ConcurrentSkipListMap<String, Object> series = new ConcurrentSkipListMap<>();
+
+        private Family(String type, String help) {
+            this.type = type;
+            this.help = help;
+        }
+    }
+
+    /**
+     * Счетчик на LongAdder
+     */
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long sum() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * Гистограмма задержек с логарифмически-линейными бакетами (как в HdrHistogram):
+     * каждая степень двойки микросекунд делится на 8 бакетов, поэтому относительная погрешность
+     * не превышает 12.5% во всем диапазоне от микросекунды до нескольких суток
+     */
+    public static final class LatencyHistogram {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = SUB_BUCKETS * 36;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder sumMicros = new LongAdder();
+
+        /**
+         * Записывает время, прошедшее с указанного момента
+         * @param startNanos момент начала, полученный из System.nanoTime()
+         */
+        public void recordSince(long startNanos) {
+            recordMicros((System.nanoTime() - startNanos) / 1_000);
+        }
+
+        /**
+         * Записывает задержку
+         * @param micros задержка, микросекунды
+         */
+        public void recordMicros(long micros) {
+            long value = Math.max(0, micros);
+            counts.incrementAndGet(bucketIndex(value));
+            sumMicros.add(value);
+        }
+
+        /**
+         * @return количество записанных значений
+         */
+        public long count() {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += counts.get(i);
+            }
+            return count;
+        }
+
+        /**
+         * @return сумма записанных значений, микросекунды
+         */
+        public long sumMicros() {
+            return sumMicros.sum();
+        }
+
+        /**
+         * Возвращает оценку процентиля сверху (верхнюю границу бакета)
+         * @param quantile квантиль от 0 до 1 (например: 0.99)
+         * @return значение, микросекунды, или 0, если значений нет
+         */
+        public long percentileMicros(double quantile) {
+            long[] snapshot = snapshot();
+            long total = 0;
+            for (long count : snapshot) {
+                total += count;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long cumulative = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                cumulative += snapshot[i];
+                if (cumulative >= rank) {
+                    return upperBoundMicros(i);
+                }
+            }
+            return upperBoundMicros(snapshot.length - 1);
+        }
+
+        long[] snapshot() {
+            long[] snapshot = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = counts.get(i);
+            }
+            return snapshot;
+        }
+
+        static int bucketIndex(long micros) {
+            if (micros < SUB_BUCKETS) {
+                return (int) micros;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(micros);
+            int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return Math.min(BUCKETS - 1, (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket);
+        }
+
+        /**
+         * @return верхняя граница бакета (не включительно), микросекунды
+         */
+        static long upperBoundMicros(int index) {
+            if (index < SUB_BUCKETS) {
+                return index + 1;
+            }
+            int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            int subBucket = index % SUB_BUCKETS;
+            return (long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package services;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import data.CachedCoordinates;
+import data.Coordinates;
+import data.HourlyForecast;
+import data.WeatherData;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Потоковый разбор ответов Open-Meteo (прогноз и геокодинг).
+ * Ответ читается по токенам прямо из потока ответа: дерево JSON не строится,
+ * ненужные поля и переменные пропускаются, значения прогноза записываются сразу в массивы double
+ */
+public final class OpenMeteoParser {
+    private OpenMeteoParser() {
+    }
+
+    /**
+     * Разбирает ответ прогноза с одними координатами
+     * @param city название города
+     * @param coordinates координаты города
+     * @param variables названия почасовых переменных, которые нужно прочитать
+     * @param json поток ответа
+     * @return данные температуры WeatherData.class
+     * @throws IOException если ответ не удалось прочитать или он не соответствует формату Open-Meteo
+     */
+    public static WeatherData parseForecast(String city, Coordinates coordinates, Collection<String> variables, Reader json) throws IOException {
+        try (JsonReader reader = new JsonReader(json)) {
+            return readForecast(city, coordinates, variables, reader);
+        }
+    }
+
+    /**
+     * Разбирает ответ прогноза с несколькими координатами.
+     * Для нескольких координат Open-Meteo возвращает массив прогнозов в порядке запроса, для одной - один объект
+     * @param cities названия городов в порядке запроса
+     * @param coordinates координаты городов в порядке запроса
+     * @param variables названия почасовых переменных, которые нужно прочитать
+     * @param json поток ответа
+     * @return данные температуры в порядке запроса
+     * @throws IOException если ответ не удалось прочитать или он не соответствует формату Open-Meteo
+     */
+    public static List<WeatherData> parseForecastBatch(List<String> cities, List<Coordinates> coordinates,
+                                                       Collection<String> variables, Reader json) throws IOException {
+        List<WeatherData> weatherData = new ArrayList<>(cities.size());
+        try (JsonReader reader = new JsonReader(json)) {
+            if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                weatherData.add(readForecast(cities.get(0), coordinates.get(0), variables, reader));
+                return weatherData;
+            }
+            reader.beginArray();
+            for (int i = 0; i < cities.size() && reader.hasNext(); i++) {
+                weatherData.add(readForecast(cities.get(i), coordinates.get(i), variables, reader));
+            }
+        }
+        return weatherData;
+    }
+
+    /**
+     * Разбирает ответ геокодинга: берутся координаты первого найденного города
+     * @param json поток ответа
+     * @return CachedCoordinates.class или CachedCoordinates.NOT_FOUND, если город не найден
+     * @throws IOException если ответ не удалось прочитать
+     */
+    public static CachedCoordinates parseCoordinates(Reader json) throws IOException {
+        try (JsonReader reader = new JsonReader(json)) {
+            CachedCoordinates result = CachedCoordinates.NOT_FOUND;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("results") || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                if (reader.hasNext()) {
+                    result = readFirstResult(reader);
+                }
+                while (reader.hasNext()) {
+                    reader.skipValue();
+                }
+                reader.endArray();
+            }
+            return result;
+        }
+    }
+
+    private static CachedCoordinates readFirstResult(JsonReader reader) throws IOException {
+        String latitude = null;
+        String longitude = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                // Числа читаются как строки, чтобы сохранить их запись из ответа без округления
+                case "latitude" -> latitude = reader.nextString().replace(",", ".");
+                case "longitude" -> longitude = reader.nextString().replace(",", ".");
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (latitude == null || longitude == null) {
+            return CachedCoordinates.NOT_FOUND;
+        }
+        return new CachedCoordinates(new Coordinates(latitude, longitude));
+    }
+
+    private static WeatherData readForecast(String city, Coordinates coordinates, Collection<String> variables,
+                                            JsonReader reader) throws IOException {
+        int utcOffsetSeconds = 0;
+        Hourly hourly = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "utc_offset_seconds" -> utcOffsetSeconds = reader.nextInt();
+                case "hourly" -> hourly = readHourly(reader, variables);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (hourly == null || hourly.values.size() < variables.size()) {
+            throw new IOException("Forecast response has no hourly data for some of " + variables);
+        }
+        // Время в ответе указано в часовом поясе прогноза, приводим его к UTC
+        long start = hourly.firstTime == null ? 0 : toEpochSecond(hourly.firstTime, utcOffsetSeconds);
+        int step = hourly.secondTime == null ? HourlyForecast.HOUR_SECONDS
+                : (int) (toEpochSecond(hourly.secondTime, utcOffsetSeconds) - start);
+        Map<String, HourlyForecast> forecasts = new HashMap<>(hourly.values.size() * 2);
+        hourly.values.forEach((variable, values) -> forecasts.put(variable, new HourlyForecast(start, step, values)));
+        return new WeatherData(city, coordinates, forecasts);
+    }
+
+    /**
+     * Читает объект "hourly". Время разбирается только у первых двух точек:
+     * по ним определяются начало ряда и шаг, остальные точки идут с тем же шагом
+     */
+    private static Hourly readHourly(JsonReader reader, Collection<String> variables) throws IOException {
+        Hourly hourly = new Hourly();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("time")) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (hourly.count == 0) {
+                        hourly.firstTime = reader.nextString();
+                    } else if (hourly.count == 1) {
+                        hourly.secondTime = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                    hourly.count++;
+                }
+                reader.endArray();
+            } else if (variables.contains(name)) {
+                hourly.values.put(name, readValues(reader, hourly.count));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return hourly;
+    }
+
+    /**
+     * Читает массив чисел. Если количество значений уже известно по массиву времени, массив выделяется один раз
+     */
+    private static double[] readValues(JsonReader reader, int expectedCount) throws IOException {
+        double[] values = new double[expectedCount > 0 ? expectedCount : 24];
+        int size = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                values[size++] = Double.NaN;
+            } else {
+                values[size++] = reader.nextDouble();
+            }
+        }
+        reader.endArray();
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+
+    private static long toEpochSecond(String time, int utcOffsetSeconds) {
+        return LocalDateTime.parse(time).toEpochSecond(ZoneOffset.ofTotalSeconds(utcOffsetSeconds));
+    }
+
+    /**
+     * Промежуточный результат разбора объекта "hourly"
+     */
+    private static final class Hourly {
+        private int count;
+        private String firstTime;
+        private String secondTime;
+        private final Map<String, double[]> values = new HashMap<>();
+    }
+}
@@ -0,0 +1,57 @@
+package services;
+
+import java.util.List;
+
+/**
+ * Настройки ограничения частоты запросов клиентов
+ * @param enabled включено ли ограничение
+ * @param requestsPerSecond средняя допустимая частота запросов одного клиента, запросов в секунду
+ * @param burst сколько запросов клиент может отправить подряд сверх средней частоты
+ * @param missesPerSecond средняя допустимая частота запросов, которых нет в кэше (идут в Redis и Open-Meteo), в секунду
+ * @param missBurst сколько запросов мимо кэша клиент может отправить подряд
+ * @param apiKeys известные API-ключи: клиент с таким ключом в заголовке X-Api-Key учитывается по ключу, а не по IP-адресу
+ * @param trustedProxies адреса или подсети (например, "10.0.0.0/8") балансировщиков и прокси, от которых принимается
+ *                       адрес клиента в заголовке X-Forwarded-For; от остальных соединений заголовок не учитывается
+ * @param maxClients наибольшее количество клиентов, счетчики которых хранятся в памяти; сверх него удаляются счетчики
+ *                   самых давно добавленных клиентов
+ */
+public record RateLimitSettings(boolean enabled, double requestsPerSecond, int burst,
+                                double missesPerSecond, int missBurst, List<String> apiKeys,
+                                List<String> trustedProxies, int maxClients) {
+
+    public RateLimitSettings {
+        if (enabled && (requestsPerSecond <= 0 || missesPerSecond <= 0 || burst < 1 || missBurst < 1 || maxClients < 1)) {
+            throw new IllegalArgumentException("Rate limits must be positive");
+        }
+        apiKeys = List.copyOf(apiKeys);
+        trustedProxies = List.copyOf(trustedProxies);
+    }
+
+    /**
+     * Настройки без ограничения частоты запросов
+     */
+    public static RateLimitSettings disabled() {
+        return new RateLimitSettings(false, 1, 1, 1, 1, List.of(), List.of(), 1);
+    }
+
+    /**
+     * Читает настройки из системных свойств и переменных окружения (см. AppConfig):
+     * ratelimit.enabled, ratelimit.requests-per-second, ratelimit.burst, ratelimit.misses-per-second,
+     * ratelimit.miss-burst, ratelimit.api-keys, ratelimit.trusted-proxies, ratelimit.max-clients.
+     * По умолчанию ограничение выключено: за балансировщиком без ratelimit.trusted-proxies
+     * все клиенты получили бы один общий бюджет - адрес балансировщика
+     * @return настройки ограничения частоты запросов
+     */
+    public static RateLimitSettings fromConfig() {
+        return new RateLimitSettings(
+                AppConfig.getBoolean("ratelimit.enabled", false),
+                AppConfig.getInt("ratelimit.requests-per-second", 20),
+                AppConfig.getInt("ratelimit.burst", 40),
+                AppConfig.getInt("ratelimit.misses-per-second", 2),
+                AppConfig.getInt("ratelimit.miss-burst", 20),
+                AppConfig.getList("ratelimit.api-keys", List.of()),
+                AppConfig.getList("ratelimit.trusted-proxies", List.of()),
+                AppConfig.getInt("ratelimit.max-clients", 100_000)
+        );
+    }
+}
@@ -0,0 +1,296 @@
+package services;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ограничение частоты запросов по клиентам (IP-адрес или известный API-ключ).
+ * У каждого клиента два бюджета: общий на все запросы и более строгий на запросы, которых нет в кэше
+ * и которые поэтому обращаются к Redis и Open-Meteo. Бюджеты - маркерные корзины (token bucket) без блокировок:
+ * состояние корзины - одно число в AtomicLong, запрос из кэша стоит одного поиска в ConcurrentHashMap и одной операции CAS.
+ * Клиентов в памяти не больше maxClients: сверх этого вытесняются самые давно добавленные, а клиенты с полными корзинами
+ * периодически удаляются в фоне, поэтому ни поток новых адресов, ни очистка не обходят всех клиентов на пути запроса
+ */
+public class RateLimiter {
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final RateLimitSettings settings;
+    private final Set<String> apiKeys;
+    private final List<AddressRange> trustedProxies = new ArrayList<>();
+    private final ConcurrentHashMap<String, ClientBuckets> clients = new ConcurrentHashMap<>();
+    // Клиенты в порядке добавления; записи уже удаленных клиентов пропускаются при вытеснении и убираются при очистке
+    private final ConcurrentLinkedQueue<Arrival> arrivals = new ConcurrentLinkedQueue<>();
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    public RateLimiter(RateLimitSettings settings) {
+        this.settings = settings;
+        this.apiKeys = Set.copyOf(settings.apiKeys());
+        for (String proxy : settings.trustedProxies()) {
+            trustedProxies.add(AddressRange.parse(proxy));
+        }
+    }
+
+    /**
+     * Определяет адрес клиента. Если соединение пришло от доверенного прокси (балансировщика), адрес берется
+     * из X-Forwarded-For: это последний адрес списка, не являющийся доверенным прокси. Адреса левее него
+     * мог подставить сам клиент, поэтому они не учитываются
+     * @param remoteAddress адрес соединения
+     * @param forwardedFor значение заголовка X-Forwarded-For или null
+     * @return адрес клиента
+     */
+    public String clientAddress(String remoteAddress, String forwardedFor) {
+        if (forwardedFor == null || !isTrustedProxy(remoteAddress)) {
+            return remoteAddress;
+        }
+        String client = remoteAddress;
+        String[] hops = forwardedFor.split(",");
+        for (int i = hops.length - 1; i >= 0; i--) {
+            String hop = hops[i].trim();
+            if (hop.isEmpty()) {
+                continue;
+            }
+            client = hop;
+            if (!isTrustedProxy(hop)) {
+                break;
+            }
+        }
+        return client;
+    }
+
+    private boolean isTrustedProxy(String address) {
+        byte[] bytes = AddressRange.parseLiteral(address);
+        if (bytes == null) {
+            return false;
+        }
+        for (AddressRange proxy : trustedProxies) {
+            if (proxy.contains(bytes)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Определяет клиента запроса: по API-ключу, если ключ известен, иначе по IP-адресу.
+     * Неизвестные ключи не учитываются, иначе клиент мог бы обойти ограничение, меняя ключ в каждом запросе
+     * @param ip IP-адрес клиента
+     * @param apiKey значение заголовка X-Api-Key или null
+     * @return идентификатор клиента
+     */
+    public String clientId(String ip, String apiKey) {
+        return apiKey != null && apiKeys.contains(apiKey) ? "key:" + apiKey : "ip:" + ip;
+    }
+
+    /**
+     * Списывает запрос из общего бюджета клиента
+     * @param client идентификатор клиента (см. clientId)
+     * @return 0, если запрос допущен, иначе сколько наносекунд клиенту нужно подождать
+     */
+    public long tryAcquire(String client) {
+        if (!settings.enabled()) {
+            return 0;
+        }
+        return buckets(client).requests.tryAcquire(1, System.nanoTime());
+    }
+
+    /**
+     * Списывает запросы мимо кэша из бюджета промахов клиента: все или ни одного.
+     * Запрос с большим количеством промахов, чем емкость бюджета, списывает весь бюджет
+     * @param client идентификатор клиента (см. clientId)
+     * @param misses количество городов, прогноза которых нет в кэше
+     * @return 0, если запрос допущен, иначе сколько наносекунд клиенту нужно подождать
+     */
+    public long tryAcquireMisses(String client, int misses) {
+        if (!settings.enabled() || misses == 0) {
+            return 0;
+        }
+        return buckets(client).misses.tryAcquire(Math.min(misses, settings.missBurst()), System.nanoTime());
+    }
+
+    /**
+     * @return True, если ограничение включено
+     */
+    public boolean isEnabled() {
+        return settings.enabled();
+    }
+
+    /**
+     * @return количество клиентов, счетчики которых хранятся в памяти
+     */
+    int clientCount() {
+        return clients.size();
+    }
+
+    private ClientBuckets buckets(String client) {
+        ClientBuckets buckets = clients.get(client);
+        if (buckets != null) {
+            return buckets;
+        }
+        ClientBuckets created = new ClientBuckets(settings);
+        buckets = clients.putIfAbsent(client, created);
+        if (buckets != null) {
+            return buckets;
+        }
+        arrivals.add(new Arrival(client, created));
+        // Каждая запись очереди извлекается один раз, поэтому вытеснение в среднем стоит O(1) на нового клиента
+        while (clients.size() > settings.maxClients()) {
+            Arrival oldest = arrivals.poll();
+            if (oldest == null) {
+                break;
+            }
+            clients.remove(oldest.client(), oldest.buckets());
+        }
+        long now = System.nanoTime();
+        long last = lastSweep.get();
+        if (now - last > SWEEP_INTERVAL_NANOS && lastSweep.compareAndSet(last, now)) {
+            CompletableFuture.runAsync(this::removeIdleClients);
+        }
+        return created;
+    }
+
+    /**
+     * Удаляет клиентов с полными корзинами: их счетчики ничем не отличаются от новых.
+     * Выполняется в фоне не чаще раза в SWEEP_INTERVAL_NANOS
+     */
+    void removeIdleClients() {
+        long now = System.nanoTime();
+        clients.values().removeIf(buckets -> buckets.requests.isFull(now) && buckets.misses.isFull(now));
+        arrivals.removeIf(arrival -> clients.get(arrival.client()) != arrival.buckets());
+    }
+
+    private record Arrival(String client, ClientBuckets buckets) {
+    }
+
+    private static final class ClientBuckets {
+        private final TokenBucket requests;
+        private final TokenBucket misses;
+
+        private ClientBuckets(RateLimitSettings settings) {
+            long now = System.nanoTime();
+            this.requests = new TokenBucket(settings.requestsPerSecond(), settings.burst(), now);
+            this.misses = new TokenBucket(settings.missesPerSecond(), settings.missBurst(), now);
+        }
+    }
+
+    /**
+     * Адрес или подсеть доверенного прокси
+     * @param network адрес сети
+     * @param prefixLength длина префикса подсети, бит
+     */
+    private record AddressRange(byte[] network, int prefixLength) {
+
+        /**
+         * @param value IP-адрес ("10.0.0.1") или подсеть ("10.0.0.0/8", "fd00::/8")
+         * @throws IllegalArgumentException если значение не является IP-адресом или подсетью
+         */
+        static AddressRange parse(String value) {
+            int slash = value.indexOf('/');
+            byte[] network = parseLiteral(slash < 0 ? value.trim() : value.substring(0, slash).trim());
+            if (network == null) {
+                throw new IllegalArgumentException("Trusted proxy must be an IP address or subnet, got \"" + value + "\"");
+            }
+            int prefixLength = network.length * 8;
+            if (slash >= 0) {
+                try {
+                    prefixLength = Integer.parseInt(value.substring(slash + 1).trim());
+                } catch (NumberFormatException e) {
+                    prefixLength = -1;
+                }
+                if (prefixLength < 0 || prefixLength > network.length * 8) {
+                    throw new IllegalArgumentException("Invalid trusted proxy subnet \"" + value + "\"");
+                }
+            }
+            return new AddressRange(network, prefixLength);
+        }
+
+        /**
+         * Разбирает IP-адрес без обращения к DNS: значения, похожие на имя хоста, не считаются адресами
+         * @return байты адреса или null
+         */
+        static byte[] parseLiteral(String address) {
+            if (address == null || address.isEmpty() || !address.matches("[0-9A-Fa-f:.]+")) {
+                return null;
+            }
+            if (address.indexOf(':') < 0 && !address.matches("\\d{1,3}(\\.\\d{1,3}){3}")) {
+                return null;
+            }
+            try {
+                return InetAddress.getByName(address).getAddress();
+            } catch (UnknownHostException e) {
+                return null;
+            }
+        }
+
+        boolean contains(byte[] address) {
+            if (address.length != network.length) {
+                return false;
+            }
+            int fullBytes = prefixLength / 8;
+            for (int i = 0; i < fullBytes; i++) {
+                if (address[i] != network[i]) {
+                    return false;
+                }
+            }
+            int remainingBits = prefixLength % 8;
+            if (remainingBits == 0) {
+                return true;
+            }
+            int mask = 0xFF << (8 - remainingBits) & 0xFF;
+            return (address[fullBytes] & mask) == (network[fullBytes] & mask);
+        }
+    }
+
+    /**
+     * Маркерная корзина в виде теоретического времени следующего запроса (алгоритм GCRA):
+     * каждый маркер сдвигает это время на интервал 1/rate, запрос допускается, если время опережает
+     * текущий момент не больше чем на capacity интервалов. Обновляется одной операцией CAS
+     */
+    static final class TokenBucket {
+        private final long intervalNanos;
+        private final long capacityNanos;
+        private final AtomicLong theoreticalArrival;
+
+        /**
+         * @param ratePerSecond скорость пополнения, маркеров в секунду
+         * @param capacity емкость корзины, маркеров
+         * @param nowNanos текущий момент (System.nanoTime), корзина создается полной
+         */
+        TokenBucket(double ratePerSecond, int capacity, long nowNanos) {
+            this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+            this.capacityNanos = intervalNanos * capacity;
+            this.theoreticalArrival = new AtomicLong(nowNanos);
+        }
+
+        /**
+         * @param tokens количество маркеров
+         * @param nowNanos текущий момент (System.nanoTime)
+         * @return 0, если маркеры списаны, иначе через сколько наносекунд их будет достаточно
+         */
+        long tryAcquire(int tokens, long nowNanos) {
+            long cost = intervalNanos * tokens;
+            while (true) {
+                long current = theoreticalArrival.get();
+                long next = (current - nowNanos > 0 ? current : nowNanos) + cost;
+                long excess = next - nowNanos - capacityNanos;
+                if (excess > 0) {
+                    return excess;
+                }
+                if (theoreticalArrival.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        boolean isFull(long nowNanos) {
+            return theoreticalArrival.get() - nowNanos <= 0;
+        }
+    }
+}
@@ -1,50 +1,521 @@
 package services;
 
-import com.google.gson.Gson;
+import data.CachedCoordinates;
+import data.CachedWeather;
+import data.Coordinates;
 import data.WeatherData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import redis.clients.jedis.Jedis;
-import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.params.SetParams;
 
-public class RedisService {
-    private static final String REDIS_HOST = "localhost";
-    private static final int REDIS_PORT = 6379;
-    private final Jedis jedis;
-    private final Gson gson;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Сервис кэширования данных о погоде в Redis.
+ * Соединения берутся из ограниченного пула, поэтому сервис можно вызывать из нескольких потоков одновременно.
+ * Также передает между экземплярами сервиса сообщения об обновлении прогнозов (канал pub/sub "weather:events")
+ * и выдает блокировки с ограниченным сроком (SET NX PX)
+ */
+public class RedisService implements AutoCloseable {
+    /**
+     * Канал сообщений об обновлении и удалении прогнозов
+     */
+    static final String EVENTS_CHANNEL = "weather:events";
+    // Удаляет блокировку, только если ее держит владелец токена: истекшую и взятую заново блокировку снимать нельзя
+    private static final String UNLOCK_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
+    private static final long RESUBSCRIBE_DELAY_MILLIS = 1000;
+    private static final Logger logger = LoggerFactory.getLogger(RedisService.class);
+    private static final Metrics.LatencyHistogram GET_WEATHER = operationLatency("get_weather");
+    private static final Metrics.LatencyHistogram GET_WEATHER_BATCH = operationLatency("get_weather_batch");
+    private static final Metrics.LatencyHistogram SAVE_WEATHER = operationLatency("save_weather");
+    private static final Metrics.LatencyHistogram GET_COORDINATES = operationLatency("get_coordinates");
+    private static final Metrics.LatencyHistogram SAVE_COORDINATES = operationLatency("save_coordinates");
+    private static final Metrics.LatencyHistogram DELETE_WEATHER = operationLatency("delete_weather");
+    private static final Metrics.LatencyHistogram PUBLISH = operationLatency("publish");
+    private static final Metrics.LatencyHistogram LOCK = operationLatency("lock");
+    private static final Metrics.LatencyHistogram UNLOCK = operationLatency("unlock");
+    private static final Metrics.Counter ERRORS = Metrics.registry().counter("redis_errors_total",
+            "Redis operations that failed (connection, timeout or command errors)");
+    private final JedisPool pool;
+    private final RedisSettings settings;
+    private final List<Consumer<WeatherEvent>> listeners = new CopyOnWriteArrayList<>();
+    private Thread subscriber;
+    private volatile JedisPubSub subscription;
+    private volatile boolean closed;
 
     public RedisService () {
-        this.jedis = new Jedis(REDIS_HOST, REDIS_PORT);
-        this.gson = new Gson();
+        this(RedisSettings.fromConfig());
+    }
+
+    public RedisService(RedisSettings settings) {
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(settings.maxTotal());
+        poolConfig.setMaxIdle(settings.maxIdle());
+        poolConfig.setMinIdle(settings.minIdle());
+        poolConfig.setMaxWait(Duration.ofMillis(settings.maxWaitMillis()));
+        poolConfig.setBlockWhenExhausted(true);
+        poolConfig.setJmxEnabled(false);
+        this.pool = new JedisPool(poolConfig, settings.host(), settings.port(), settings.timeoutMillis());
+        this.settings = settings;
+
+        Metrics metrics = Metrics.registry();
+        metrics.gauge("redis_pool_connections", "Redis pool connections by state", pool::getNumActive, "state", "active");
+        metrics.gauge("redis_pool_connections", "Redis pool connections by state", pool::getNumIdle, "state", "idle");
+        metrics.gauge("redis_pool_waiters", "Threads waiting for a Redis connection", pool::getNumWaiters);
+    }
+
+    private static Metrics.LatencyHistogram operationLatency(String operation) {
+        return Metrics.registry().histogram("redis_operation_seconds", "Redis round trip latency by operation", "operation", operation);
     }
 
     /**
-     * Сохраняет данные о погоде (город, температуру) на указанный период
-     * @param weatherData данные температуры WeatherData.class
+     * Сохраняет данные о погоде на указанный период.
+     * Каждая переменная прогноза хранится под своим ключом "weather:{местоположение}:{переменная}",
+     * где местоположение - округленные координаты (Coordinates.key), общие для всех названий города,
+     * в компактном двоичном формате WeatherCodec, все ключи записываются одним конвейерным запросом
+     * @param weatherData данные о погоде WeatherData.class
      * @param ttlSeconds  период кэширования (int, секунды)
      * @return True, если успешно, иначе False
      */
     boolean saveWeather(WeatherData weatherData, int ttlSeconds) {
-        String key = "weather:" + weatherData.city();
-        String value = gson.toJson(weatherData);
+        return saveWeatherBatch(List.of(weatherData), ttlSeconds);
+    }
+
+    /**
+     * Возвращает данные о температуре по указанному местоположению
+     *
+     * @param coordinates координаты города
+     * @return данные температуры WeatherData.class, если успешно, иначе null
+     */
+    WeatherData getSavedWeather(Coordinates coordinates) {
+        byte[] value = execute(GET_WEATHER, jedis -> jedis.get(weatherKey(coordinates.key(), WeatherData.TEMPERATURE)));
+        if (value == null) {
+            return null;
+        }
+        return WeatherCodec.decode(value);
+    }
+
+    /**
+     * Возвращает сохраненные переменные прогноза по указанному местоположению вместе с оставшимся сроком жизни записи.
+     * Значения и TTL всех переменных запрашиваются одним конвейерным запросом (GET + PTTL на каждую переменную)
+     *
+     * @param coordinates координаты города
+     * @param variables названия переменных прогноза
+     * @return данные CachedWeather.class с найденными переменными (срок жизни - наименьший из них)
+     * или null, если ни одной переменной нет в кэше
+     */
+    CachedWeather getSavedWeatherWithTtl(Coordinates coordinates, List<String> variables) {
+        String location = coordinates.key();
+        List<Response<byte[]>> values = new ArrayList<>(variables.size());
+        List<Response<Long>> ttls = new ArrayList<>(variables.size());
+        execute(GET_WEATHER, jedis -> {
+            Pipeline pipeline = jedis.pipelined();
+            for (String variable : variables) {
+                byte[] key = weatherKey(location, variable);
+                values.add(pipeline.get(key));
+                ttls.add(pipeline.pttl(key));
+            }
+            pipeline.sync();
+            return null;
+        });
+        WeatherData weatherData = null;
+        long ttlMillis = Long.MAX_VALUE;
+        for (int i = 0; i < variables.size(); i++) {
+            byte[] value = values.get(i).get();
+            long variableTtl = ttls.get(i).get();
+            if (value != null && variableTtl > 0) {
+                WeatherData variable = WeatherCodec.decode(value);
+                weatherData = weatherData == null ? variable : weatherData.merge(variable);
+                ttlMillis = Math.min(ttlMillis, variableTtl);
+            }
+        }
+        if (weatherData == null) {
+            return null;
+        }
+        return new CachedWeather(weatherData, System.currentTimeMillis() + ttlMillis);
+    }
+
+    /**
+     * Сохраняет данные о погоде по нескольким городам одним конвейерным запросом (SETEX на каждую переменную каждого города)
+     * @param weatherData данные о погоде по городам
+     * @param ttlSeconds период кэширования (int, секунды)
+     * @return True, если успешно, иначе False
+     */
+    boolean saveWeatherBatch(List<WeatherData> weatherData, int ttlSeconds) {
         try {
-            jedis.setex(key, ttlSeconds, value);
-            return true;
-        } catch (JedisDataException e) {
+            return execute(SAVE_WEATHER, jedis -> {
+                List<Response<String>> responses = new ArrayList<>();
+                Pipeline pipeline = jedis.pipelined();
+                for (WeatherData data : weatherData) {
+                    for (String variable : data.hourly().keySet()) {
+                        responses.add(pipeline.setex(weatherKey(data.coordinates().key(), variable), ttlSeconds, WeatherCodec.encode(data, variable)));
+                    }
+                }
+                pipeline.sync();
+                for (Response<String> response : responses) {
+                    response.get();
+                }
+                return true;
+            });
+        } catch (JedisException e) {
+            // Прогноз уже получен из Open-Meteo: ошибка записи в кэш не должна мешать его отдать
+            logger.warn("Weather cache write failed: {}", e.getMessage());
             return false;
         }
     }
 
     /**
-     * Возвращает данные о погоде по указанному городу
-     *
-     * @param city название города (String, например, "Berlin")
-     * @return данные температуры WeatherData.class, если успешно, иначе null
+     * Возвращает данные о погоде по нескольким местоположениям одним конвейерным запросом (MGET и PTTL по каждому ключу)
+     * @param locations координаты городов
+     * @param variables названия переменных прогноза
+     * @return найденные в кэше данные по ключу местоположения (Coordinates.key);
+     * местоположений, для которых сохранены не все переменные, в результате нет
+     */
+    Map<String, CachedWeather> getSavedWeatherBatch(List<Coordinates> locations, List<String> variables) {
+        Map<String, CachedWeather> saved = new HashMap<>();
+        if (locations.isEmpty()) {
+            return saved;
+        }
+        byte[][] keys = new byte[locations.size() * variables.size()][];
+        for (int i = 0; i < locations.size(); i++) {
+            String location = locations.get(i).key();
+            for (int v = 0; v < variables.size(); v++) {
+                keys[i * variables.size() + v] = weatherKey(location, variables.get(v));
+            }
+        }
+        List<Response<Long>> ttls = new ArrayList<>(keys.length);
+        Response<List<byte[]>> values = execute(GET_WEATHER_BATCH, jedis -> {
+            Pipeline pipeline = jedis.pipelined();
+            Response<List<byte[]>> mget = pipeline.mget(keys);
+            for (byte[] key : keys) {
+                ttls.add(pipeline.pttl(key));
+            }
+            pipeline.sync();
+            return mget;
+        });
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < locations.size(); i++) {
+            WeatherData weatherData = null;
+            long ttlMillis = Long.MAX_VALUE;
+            for (int v = 0; v < variables.size(); v++) {
+                byte[] value = values.get().get(i * variables.size() + v);
+                long variableTtl = ttls.get(i * variables.size() + v).get();
+                if (value == null || variableTtl <= 0) {
+                    weatherData = null;
+                    break;
+                }
+                WeatherData variable = WeatherCodec.decode(value);
+                weatherData = weatherData == null ? variable : weatherData.merge(variable);
+                ttlMillis = Math.min(ttlMillis, variableTtl);
+            }
+            if (weatherData != null) {
+                saved.put(locations.get(i).key(), new CachedWeather(weatherData, now + ttlMillis));
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * Сохраняет результат геокодинга города. Отрицательный результат (город не найден) хранится как "-"
+     * @param key нормализованное название города
+     * @param cachedCoordinates результат геокодинга CachedCoordinates.class
+     * @param ttlSeconds период кэширования (секунды)
+     * @return True, если успешно, иначе False
      */
-    WeatherData getSavedWeather(String city) {
-        String key = "weather:" + city;
-        String value = jedis.get(key);
+    boolean saveCoordinates(String key, CachedCoordinates cachedCoordinates, int ttlSeconds) {
+        String value = cachedCoordinates.found()
+                ? cachedCoordinates.coordinates().latitude() + "," + cachedCoordinates.coordinates().longitude()
+                : "-";
+        try {
+            return execute(SAVE_COORDINATES, jedis -> {
+                jedis.setex("geo:" + key, ttlSeconds, value);
+                return true;
+            });
+        } catch (JedisException e) {
+            // Координаты уже получены от API геокодинга: ошибка записи в кэш не должна мешать их отдать
+            logger.warn("Coordinates cache write failed: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Возвращает сохраненный результат геокодинга города
+     * @param key нормализованное название города
+     * @return CachedCoordinates.class, если запись есть в кэше (в т.ч. отрицательная), иначе null
+     */
+    CachedCoordinates getSavedCoordinates(String key) {
+        String value = execute(GET_COORDINATES, jedis -> jedis.get("geo:" + key));
         if (value == null) {
             return null;
         }
-        return gson.fromJson(value, WeatherData.class);
+        int separator = value.indexOf(',');
+        if (separator < 0) {
+            return CachedCoordinates.NOT_FOUND;
+        }
+        return new CachedCoordinates(new Coordinates(value.substring(0, separator), value.substring(separator + 1)));
+    }
+
+    /**
+     * Удаляет сохраненные переменные прогноза по указанному местоположению
+     * @param coordinates координаты города
+     * @param variables названия переменных прогноза
+     * @return True, если успешно, иначе False
+     */
+    boolean deleteWeather(Coordinates coordinates, Collection<String> variables) {
+        String location = coordinates.key();
+        byte[][] keys = variables.stream().map(variable -> weatherKey(location, variable)).toArray(byte[][]::new);
+        try {
+            return execute(DELETE_WEATHER, jedis -> {
+                jedis.del(keys);
+                return true;
+            });
+        } catch (JedisException e) {
+            logger.warn("Weather cache delete failed: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Рассылает сообщения всем экземплярам сервиса, подписанным на канал (в том числе отправителю), одним конвейерным запросом.
+     * Доставка не гарантируется: экземпляр, который в этот момент переподключается к Redis, сообщение не получит
+     * @param events сообщения об обновлении или удалении прогнозов
+     * @return True, если сообщения отправлены, иначе False
+     */
+    boolean publishWeatherEvents(List<WeatherEvent> events) {
+        try {
+            return execute(PUBLISH, jedis -> {
+                Pipeline pipeline = jedis.pipelined();
+                for (WeatherEvent event : events) {
+                    pipeline.publish(EVENTS_CHANNEL, event.encode());
+                }
+                pipeline.sync();
+                return true;
+            });
+        } catch (JedisException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Добавляет получателя сообщений канала "weather:events". При первом вызове запускает поток подписки
+     * с отдельным соединением (не из пула), который переподключается при обрыве связи с Redis.
+     * Получатели вызываются в потоке подписки по очереди, поэтому не должны выполнять долгих операций
+     * @param listener получатель сообщений
+     */
+    void addWeatherEventListener(Consumer<WeatherEvent> listener) {
+        listeners.add(listener);
+        synchronized (this) {
+            if (subscriber == null && !closed) {
+                subscriber = new Thread(this::subscribeLoop, "redis-subscriber");
+                subscriber.setDaemon(true);
+                subscriber.start();
+            }
+        }
+    }
+
+    /**
+     * Удаляет получателя сообщений. Поток подписки работает до закрытия сервиса
+     * @param listener получатель сообщений
+     */
+    void removeWeatherEventListener(Consumer<WeatherEvent> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Берет блокировку с ограниченным сроком: по истечении срока блокировка снимается сама,
+     * даже если ее владелец завис или остановился
+     * @param name название блокировки (например, ключ местоположения)
+     * @param leaseMillis срок блокировки, миллисекунды
+     * @return токен владельца для снятия блокировки или null, если блокировку держит кто-то другой
+     */
+    String tryLock(String name, long leaseMillis) {
+        String token = UUID.randomUUID().toString();
+        String reply = execute(LOCK, jedis -> jedis.set(lockKey(name), token, SetParams.setParams().nx().px(leaseMillis)));
+        return reply == null ? null : token;
+    }
+
+    /**
+     * Снимает блокировку, если она еще принадлежит владельцу токена
+     * @param name название блокировки
+     * @param token токен, полученный от tryLock
+     * @return True, если блокировка снята, False, если ее срок уже истек
+     */
+    boolean unlock(String name, String token) {
+        Object removed = execute(UNLOCK, jedis -> jedis.eval(UNLOCK_SCRIPT, List.of(lockKey(name)), List.of(token)));
+        return Long.valueOf(1).equals(removed);
+    }
+
+    /**
+     * Возвращает текущее состояние пула соединений
+     * @return снимок метрик пула PoolStats.class
+     */
+    public PoolStats getPoolStats() {
+        return new PoolStats(
+                pool.getNumActive(),
+                pool.getNumIdle(),
+                pool.getNumWaiters(),
+                pool.getMeanBorrowWaitTimeMillis(),
+                pool.getMaxBorrowWaitTimeMillis()
+        );
+    }
+
+    /**
+     * Выполняет команды на соединении из пула, замеряя время (включая ожидание соединения) и считая ошибки
+     * @param latency гистограмма времени выполнения операции
+     * @param command команды Redis
+     * @return результат команд
+     */
+    private <T> T execute(Metrics.LatencyHistogram latency, Function<Jedis, T> command) {
+        long start = System.nanoTime();
+        try (Jedis jedis = pool.getResource()) {
+            return command.apply(jedis);
+        } catch (JedisException e) {
+            ERRORS.increment();
+            throw e;
+        } finally {
+            latency.recordSince(start);
+        }
+    }
+
+    /**
+     * Держит подписку на канал сообщений, пока сервис не закрыт.
+     * Сообщения, отправленные во время переподключения, теряются: записи локальных кэшей в этом случае
+     * остаются несогласованными не дольше своего срока жизни
+     */
+    private void subscribeLoop() {
+        while (!closed) {
+            JedisPubSub pubSub = new JedisPubSub() {
+                @Override
+                public void onMessage(String channel, String message) {
+                    dispatch(message);
+                }
+            };
+            subscription = pubSub;
+            try (Jedis jedis = new Jedis(settings.host(), settings.port(), settings.timeoutMillis())) {
+                jedis.subscribe(pubSub, EVENTS_CHANNEL);
+            } catch (JedisException e) {
+                if (closed) {
+                    return;
+                }
+                ERRORS.increment();
+                logger.warn("Subscription to Redis channel {} was lost, reconnecting: {}", EVENTS_CHANNEL, e.getMessage());
+                try {
+                    Thread.sleep(RESUBSCRIBE_DELAY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void dispatch(String message) {
+        WeatherEvent event = WeatherEvent.decode(message);
+        if (event == null) {
+            logger.warn("Unknown message in Redis channel {}: {}", EVENTS_CHANNEL, message);
+            return;
+        }
+        for (Consumer<WeatherEvent> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (RuntimeException e) {
+                logger.error("Weather event {} was not handled", message, e);
+            }
+        }
+    }
+
+    private static byte[] weatherKey(String location, String variable) {
+        return ("weather:" + location + ':' + variable).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String lockKey(String name) {
+        return "lock:" + name;
+    }
+
+    /**
+     * Останавливает подписку на сообщения и закрывает пул соединений
+     */
+    @Override
+    public void close() {
+        Thread subscriberThread;
+        synchronized (this) {
+            closed = true;
+            subscriberThread = subscriber;
+        }
+        JedisPubSub pubSub = subscription;
+        if (pubSub != null && pubSub.isSubscribed()) {
+            try {
+                pubSub.unsubscribe();
+            } catch (JedisException e) {
+                // Соединение подписки уже разорвано
+            }
+        }
+        if (subscriberThread != null) {
+            subscriberThread.interrupt();
+        }
+        pool.close();
+    }
+
+    /**
+     * Метрики пула соединений
+     * @param active количество выданных соединений
+     * @param idle количество простаивающих соединений
+     * @param waiters количество потоков, ожидающих свободное соединение
+     * @param meanWaitMillis среднее время ожидания соединения, миллисекунды
+     * @param maxWaitMillis максимальное время ожидания соединения, миллисекунды
+     */
+    public record PoolStats(int active, int idle, int waiters, long meanWaitMillis, long maxWaitMillis) {
+    }
+
+    /**
+     * Сообщение об изменении прогноза местоположения, передается в виде "UPDATED|55.75,37.62|{отправитель}"
+     * @param type тип изменения
+     * @param location ключ местоположения (Coordinates.key)
+     * @param origin идентификатор экземпляра сервиса, отправившего сообщение
+     */
+    record WeatherEvent(Type type, String location, String origin) {
+
+        enum Type {
+            /** В Redis сохранен свежий прогноз местоположения */
+            UPDATED,
+            /** Прогноз местоположения удален из Redis и должен быть удален из локальных кэшей */
+            INVALIDATED
+        }
+
+        String encode() {
+            return type.name() + '|' + location + '|' + origin;
+        }
+
+        /**
+         * @return сообщение или null, если строка имеет неизвестный формат
+         */
+        static WeatherEvent decode(String message) {
+            String[] parts = message.split("\\|", 3);
+            if (parts.length != 3) {
+                return null;
+            }
+            try {
+                return new WeatherEvent(Type.valueOf(parts[0]), parts[1], parts[2]);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,47 @@
+package services;
+
+/**
+ * Настройки подключения к Redis и пула соединений
+ * @param host адрес сервера Redis
+ * @param port порт сервера Redis
+ * @param maxTotal максимальное количество соединений в пуле
+ * @param maxIdle максимальное количество простаивающих соединений
+ * @param minIdle минимальное количество простаивающих соединений
+ * @param timeoutMillis таймаут подключения и чтения ответа, миллисекунды
+ * @param maxWaitMillis максимальное время ожидания свободного соединения из пула, миллисекунды
+ */
+public record RedisSettings(String host, int port, int maxTotal, int maxIdle, int minIdle,
+                            int timeoutMillis, long maxWaitMillis) {
+
+    public static final String DEFAULT_HOST = "localhost";
+    public static final int DEFAULT_PORT = 6379;
+
+    /**
+     * Создает настройки с параметрами пула по умолчанию для указанного сервера
+     * @param host адрес сервера Redis
+     * @param port порт сервера Redis
+     * @return настройки подключения
+     */
+    public static RedisSettings of(String host, int port) {
+        return new RedisSettings(host, port, 16, 16, 0, 2000, 1000);
+    }
+
+    /**
+     * Читает настройки из системных свойств и переменных окружения (см. AppConfig):
+     * redis.host, redis.port, redis.pool.max-total, redis.pool.max-idle, redis.pool.min-idle,
+     * redis.timeout.ms, redis.pool.max-wait.ms
+     * @return настройки подключения
+     */
+    public static RedisSettings fromConfig() {
+        RedisSettings defaults = of(DEFAULT_HOST, DEFAULT_PORT);
+        return new RedisSettings(
+                AppConfig.getString("redis.host", defaults.host()),
+                AppConfig.getInt("redis.port", defaults.port()),
+                AppConfig.getInt("redis.pool.max-total", defaults.maxTotal()),
+                AppConfig.getInt("redis.pool.max-idle", defaults.maxIdle()),
+                AppConfig.getInt("redis.pool.min-idle", defaults.minIdle()),
+                AppConfig.getInt("redis.timeout.ms", defaults.timeoutMillis()),
+                AppConfig.getLong("redis.pool.max-wait.ms", defaults.maxWaitMillis())
+        );
+    }
+}
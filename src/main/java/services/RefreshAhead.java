@@ -0,0 +1,126 @@
+package services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Фоновое обновление популярных городов.
+ * Считает запросы по каждому городу и периодически заранее обновляет данные тех городов,
+ * которые запрашивались чаще порога и срок жизни которых скоро истечет.
+ * Также выполняет фоновое обновление устаревших записей, которые уже отданы пользователю
+ */
+class RefreshAhead implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(RefreshAhead.class);
+
+    private final RefreshSettings settings;
+    private final ToLongFunction<String> expiresAt;
+    private final Consumer<String> refresher;
+    private final Map<String, LongAdder> requestCounts = new ConcurrentHashMap<>();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler;
+    private final ThreadPoolExecutor refreshExecutor;
+
+    /**
+     * @param settings настройки фонового обновления
+     * @param expiresAt возвращает момент окончания срока жизни данных города (epoch millis, 0 - данных нет)
+     * @param refresher загружает свежие данные города из внешнего API и сохраняет их в кэш
+     */
+    RefreshAhead(RefreshSettings settings, ToLongFunction<String> expiresAt, Consumer<String> refresher) {
+        this.settings = settings;
+        this.expiresAt = expiresAt;
+        this.refresher = refresher;
+        this.refreshExecutor = new ThreadPoolExecutor(settings.concurrency(), settings.concurrency(),
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1000), daemonThreads("weather-refresh"),
+                new ThreadPoolExecutor.DiscardPolicy());
+        this.refreshExecutor.allowCoreThreadTimeOut(true);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("weather-refresh-scheduler"));
+        if (settings.enabled()) {
+            scheduler.scheduleWithFixedDelay(this::refreshHotEntries,
+                    settings.intervalMillis(), settings.intervalMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Учитывает запрос города при определении популярных городов
+     * @param city название города
+     */
+    void recordRequest(String city) {
+        if (settings.enabled()) {
+            requestCounts.computeIfAbsent(city, key -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * Запускает фоновое обновление города, если оно еще не выполняется
+     * @param city название города
+     */
+    void refreshAsync(String city) {
+        if (!refreshing.add(city)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    refresher.accept(city);
+                } catch (RuntimeException e) {
+                    logger.warn("Background refresh of the city \"{}\" has failed: {}", city, e.getMessage());
+                } finally {
+                    refreshing.remove(city);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(city);
+        }
+    }
+
+    /**
+     * Обновляет популярные города, срок жизни данных которых истекает в ближайшие aheadMillis.
+     * После проверки счетчики запросов уменьшаются вдвое, чтобы город, который перестали запрашивать, переставал быть популярным
+     */
+    private void refreshHotEntries() {
+        long refreshBefore = System.currentTimeMillis() + settings.aheadMillis();
+        for (Map.Entry<String, LongAdder> entry : requestCounts.entrySet()) {
+            String city = entry.getKey();
+            long requests = entry.getValue().sumThenReset();
+            if (requests >= settings.hotThreshold()) {
+                long cityExpiresAt = expiresAt.applyAsLong(city);
+                if (cityExpiresAt > 0 && cityExpiresAt <= refreshBefore) {
+                    refreshAsync(city);
+                }
+            }
+            if (requests / 2 > 0) {
+                entry.getValue().add(requests / 2);
+            } else {
+                requestCounts.remove(city, entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        refreshExecutor.shutdownNow();
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
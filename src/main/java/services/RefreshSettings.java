@@ -0,0 +1,38 @@
+package services;
+
+/**
+ * Настройки фонового обновления популярных городов (refresh-ahead) и выдачи устаревших данных
+ * @param enabled включено ли фоновое обновление
+ * @param hotThreshold сколько запросов за интервал нужно, чтобы город считался популярным
+ * @param intervalMillis интервал проверки популярных городов, миллисекунды
+ * @param aheadMillis за сколько миллисекунд до истечения срока жизни запись обновляется заранее
+ * @param maxStaleMillis сколько миллисекунд после истечения срока жизни запись может отдаваться, пока идет обновление
+ * @param concurrency максимальное количество одновременных фоновых обновлений
+ */
+public record RefreshSettings(boolean enabled, int hotThreshold, long intervalMillis, long aheadMillis,
+                              long maxStaleMillis, int concurrency) {
+
+    /**
+     * Настройки с выключенным фоновым обновлением и без выдачи устаревших данных
+     */
+    public static RefreshSettings disabled() {
+        return new RefreshSettings(false, Integer.MAX_VALUE, 30_000, 0, 0, 1);
+    }
+
+    /**
+     * Читает настройки из системных свойств и переменных окружения (см. AppConfig):
+     * refresh.enabled, refresh.hot-threshold, refresh.interval.seconds, refresh.ahead.seconds,
+     * refresh.max-stale.seconds, refresh.concurrency
+     * @return настройки фонового обновления
+     */
+    public static RefreshSettings fromConfig() {
+        return new RefreshSettings(
+                AppConfig.getBoolean("refresh.enabled", true),
+                AppConfig.getInt("refresh.hot-threshold", 5),
+                AppConfig.getLong("refresh.interval.seconds", 30) * 1000,
+                AppConfig.getLong("refresh.ahead.seconds", 120) * 1000,
+                AppConfig.getLong("refresh.max-stale.seconds", 300) * 1000,
+                AppConfig.getInt("refresh.concurrency", 4)
+        );
+    }
+}
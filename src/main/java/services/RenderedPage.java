@@ -0,0 +1,67 @@
+package services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Готовое тело ответа (HTML-страница или JSON): байты в UTF-8 и их сжатая gzip копия.
+ * Тело сжимается один раз при построении, поэтому запросы из кэша отдают готовые байты
+ */
+final class RenderedPage {
+    private final byte[] html;
+    private final byte[] gzip;
+    private final String etag;
+    private final long lastModifiedMillis;
+
+    private RenderedPage(byte[] html, byte[] gzip, String etag, long lastModifiedMillis) {
+        this.html = html;
+        this.gzip = gzip;
+        this.etag = etag;
+        this.lastModifiedMillis = lastModifiedMillis;
+    }
+
+    /**
+     * Кодирует и сжимает тело ответа
+     * @param html текст ответа
+     * @param version версия ответа без кавычек (например, отпечаток прогноза), из нее строится ETag
+     * @return готовый ответ, время изменения - текущий момент с точностью до секунды
+     */
+    static RenderedPage of(String html, String version) {
+        byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+        return new RenderedPage(bytes, gzip(bytes), version, System.currentTimeMillis() / 1000 * 1000);
+    }
+
+    /**
+     * @param gzip True для сжатого представления
+     * @return тело ответа
+     */
+    byte[] body(boolean gzip) {
+        return gzip ? this.gzip : html;
+    }
+
+    /**
+     * Возвращает строгий ETag представления. Сжатое и несжатое представления имеют разные ETag
+     * @param gzip True для сжатого представления
+     * @return значение заголовка ETag в кавычках
+     */
+    String etag(boolean gzip) {
+        return gzip ? '"' + etag + "-gzip\"" : '"' + etag + '"';
+    }
+
+    long lastModifiedMillis() {
+        return lastModifiedMillis;
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed, 8192)) {
+            out.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,52 @@
+package services;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Объединение одновременных запросов по одному ключу (single-flight).
+ * Пока загрузка по ключу выполняется, остальные вызовы с тем же ключом не запускают
+ * собственную загрузку, а получают ее результат
+ * @param <V> тип загружаемого значения
+ */
+public class SingleFlight<V> {
+    private final ConcurrentHashMap<String, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Запускает загрузку по ключу или возвращает future уже выполняющейся загрузки.
+     * Ключ освобождается, когда загрузка завершится
+     * @param key ключ загрузки (например, нормализованное название города)
+     * @param loader функция, запускающая асинхронную загрузку значения
+     * @return future с результатом загрузки (значение может быть null)
+     */
+    public CompletableFuture<V> execute(String key, Supplier<CompletableFuture<V>> loader) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+        CompletableFuture<V> loading;
+        try {
+            loading = loader.get();
+        } catch (RuntimeException | Error e) {
+            loading = CompletableFuture.failedFuture(e);
+        }
+        loading.whenComplete((value, error) -> {
+            inFlight.remove(key, created);
+            if (error != null) {
+                created.completeExceptionally(error);
+            } else {
+                created.complete(value);
+            }
+        });
+        return created;
+    }
+
+    /**
+     * Возвращает количество загрузок, выполняющихся в данный момент
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+}
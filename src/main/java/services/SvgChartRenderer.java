@@ -0,0 +1,207 @@
+package services;
+
+import data.HourlyForecast;
+
+import java.time.LocalDate;
+
+/**
+ * График почасового прогноза, записываемый в SVG напрямую, без AWT и JFreeChart.
+ * Внешний вид повторяет график JFreeChartRenderer: зеленая линия с круглыми точками,
+ * горизонтальная сетка по значениям и подписи осей. Координаты округляются до десятых пикселя,
+ * строки, кроме итогового буфера, не создаются
+ */
+public class SvgChartRenderer implements ChartRenderer {
+    static final int WIDTH = 950;
+    static final int HEIGHT = 500;
+    private static final int LEFT = 64;
+    private static final int RIGHT = 16;
+    private static final int TOP = 16;
+    private static final int BOTTOM = 56;
+    private static final double PLOT_WIDTH = WIDTH - LEFT - RIGHT;
+    private static final double PLOT_HEIGHT = HEIGHT - TOP - BOTTOM;
+    // Примерное количество делений шкалы значений и минимальное расстояние между подписями часов, пиксели
+    private static final int VALUE_TICKS = 8;
+    private static final int MIN_LABEL_SPACING = 34;
+    // Шаги подписей по оси времени (в точках), чтобы подписи приходились на "круглые" часы
+    private static final int[] LABEL_STEPS = {1, 2, 3, 4, 6, 12, 24};
+    private static final String COLOR = "rgb(8,113,0)";
+    private static final String GRID_COLOR = "rgba(0,30,1,0.63)";
+
+    @Override
+    public void render(HourlyForecast forecast, String label, String unit, StringBuilder out) {
+        int size = forecast.size();
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            double value = forecast.value(i);
+            if (!Double.isNaN(value)) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+        if (min > max) {
+            min = 0;
+            max = 1;
+        } else if (min == max) {
+            min -= 1;
+            max += 1;
+        }
+        double step = niceStep((max - min) / VALUE_TICKS);
+        double lower = Math.floor(min / step) * step;
+        double upper = Math.ceil(max / step) * step;
+
+        out.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(WIDTH).append("\" height=\"").append(HEIGHT)
+                .append("\" viewBox=\"0 0 ").append(WIDTH).append(' ').append(HEIGHT)
+                .append("\" font-family=\"Ubuntu, sans-serif\">")
+                .append("<rect width=\"100%\" height=\"100%\" fill=\"white\"/>")
+                .append("<rect x=\"").append(LEFT).append("\" y=\"").append(TOP)
+                .append("\" width=\"").append((int) PLOT_WIDTH).append("\" height=\"").append((int) PLOT_HEIGHT)
+                .append("\" fill=\"white\" stroke=\"gray\" stroke-width=\"0.5\"/>");
+
+        // Сетка и подписи шкалы значений
+        out.append("<g font-size=\"10\" text-anchor=\"end\">");
+        int ticks = (int) Math.round((upper - lower) / step);
+        for (int t = 0; t <= ticks; t++) {
+            double value = lower + t * step;
+            double y = y(value, lower, upper);
+            out.append("<line x1=\"").append(LEFT).append("\" x2=\"").append(WIDTH - RIGHT).append("\" y1=\"");
+            appendNumber(out, y).append("\" y2=\"");
+            appendNumber(out, y).append("\" stroke=\"").append(GRID_COLOR).append("\" stroke-width=\"0.5\"/>");
+            out.append("<text x=\"").append(LEFT - 6).append("\" y=\"");
+            appendNumber(out, y + 3.5).append("\">");
+            appendNumber(out, value).append("</text>");
+        }
+        out.append("</g>");
+
+        // Подписи времени: через равный шаг, для прогноза на несколько суток полночь подписывается датой
+        int labelStep = labelStep(size);
+        out.append("<g font-size=\"10\" font-weight=\"bold\" text-anchor=\"middle\">");
+        for (int i = 0; i < size; i += labelStep) {
+            out.append("<text x=\"");
+            appendNumber(out, x(i, size)).append("\" y=\"").append(HEIGHT - BOTTOM + 16).append("\">");
+            appendTimeLabel(out, forecast.epochSecondAt(i), size > 24);
+            out.append("</text>");
+        }
+        out.append("</g>");
+
+        // Названия осей
+        out.append("<g font-size=\"12\" text-anchor=\"middle\">")
+                .append("<text x=\"").append(LEFT + (int) PLOT_WIDTH / 2).append("\" y=\"").append(HEIGHT - 16).append("\">Hours</text>")
+                .append("<text transform=\"translate(16,").append(TOP + (int) PLOT_HEIGHT / 2)
+                .append(") rotate(-90)\">");
+        appendText(out, ChartRenderer.axisTitle(label, unit)).append("</text></g>");
+
+        // Линия графика: пропущенные значения (NaN) разрывают линию
+        out.append("<path fill=\"none\" stroke=\"").append(COLOR).append("\" stroke-width=\"2\" stroke-linejoin=\"round\" d=\"");
+        boolean drawing = false;
+        for (int i = 0; i < size; i++) {
+            double value = forecast.value(i);
+            if (Double.isNaN(value)) {
+                drawing = false;
+                continue;
+            }
+            out.append(drawing ? 'L' : 'M');
+            appendNumber(out, x(i, size)).append(',');
+            appendNumber(out, y(value, lower, upper));
+            drawing = true;
+        }
+        out.append("\"/>");
+
+        // Точки - круги диаметром 6 пикселей
+        out.append("<g fill=\"").append(COLOR).append("\">");
+        for (int i = 0; i < size; i++) {
+            double value = forecast.value(i);
+            if (!Double.isNaN(value)) {
+                out.append("<circle cx=\"");
+                appendNumber(out, x(i, size)).append("\" cy=\"");
+                appendNumber(out, y(value, lower, upper)).append("\" r=\"3\"/>");
+            }
+        }
+        out.append("</g></svg>");
+    }
+
+    /**
+     * Точки стоят в середине равных интервалов по оси времени, как на графике категорий JFreeChart
+     */
+    private static double x(int index, int size) {
+        return LEFT + (index + 0.5) * PLOT_WIDTH / size;
+    }
+
+    private static double y(double value, double lower, double upper) {
+        return TOP + PLOT_HEIGHT - (value - lower) / (upper - lower) * PLOT_HEIGHT;
+    }
+
+    /**
+     * Округляет шаг шкалы до 1, 2 или 5, умноженного на степень десяти (не меньше 0.1)
+     */
+    static double niceStep(double rawStep) {
+        double magnitude = Math.pow(10, Math.floor(Math.log10(rawStep)));
+        double normalized = rawStep / magnitude;
+        double step = (normalized <= 1 ? 1 : normalized <= 2 ? 2 : normalized <= 5 ? 5 : 10) * magnitude;
+        return Math.max(0.1, step);
+    }
+
+    /**
+     * Возвращает шаг подписей по оси времени, при котором подписи не перекрываются
+     */
+    static int labelStep(int size) {
+        int needed = (int) Math.ceil(size * MIN_LABEL_SPACING / PLOT_WIDTH);
+        for (int step : LABEL_STEPS) {
+            if (step >= needed) {
+                return step;
+            }
+        }
+        return (needed + 23) / 24 * 24;
+    }
+
+    /**
+     * Записывает время "HH:mm" (UTC) или, если указано, дату "dd.MM" для полуночи
+     */
+    private static void appendTimeLabel(StringBuilder out, long epochSecond, boolean dateAtMidnight) {
+        long secondOfDay = Math.floorMod(epochSecond, (long) HourlyForecast.DAY_SECONDS);
+        if (dateAtMidnight && secondOfDay == 0) {
+            LocalDate date = LocalDate.ofEpochDay(Math.floorDiv(epochSecond, (long) HourlyForecast.DAY_SECONDS));
+            appendTwoDigits(out, date.getDayOfMonth()).append('.');
+            appendTwoDigits(out, date.getMonthValue());
+            return;
+        }
+        appendTwoDigits(out, secondOfDay / 3600).append(':');
+        appendTwoDigits(out, secondOfDay / 60 % 60);
+    }
+
+    /**
+     * Записывает текст, экранируя символы разметки XML
+     */
+    private static StringBuilder appendText(StringBuilder out, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&' -> out.append("&amp;");
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                default -> out.append(c);
+            }
+        }
+        return out;
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder out, long value) {
+        return out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    /**
+     * Записывает число с точностью до десятых без лишнего нуля (12.5, 12, -0.3)
+     */
+    static StringBuilder appendNumber(StringBuilder out, double value) {
+        long tenths = Math.round(value * 10);
+        if (tenths < 0) {
+            out.append('-');
+            tenths = -tenths;
+        }
+        out.append(tenths / 10);
+        if (tenths % 10 != 0) {
+            out.append('.').append((char) ('0' + tenths % 10));
+        }
+        return out;
+    }
+}
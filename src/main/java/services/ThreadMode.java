@@ -0,0 +1,93 @@
+package services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Spark;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Режим потоков для обработки запросов и блокирующего ввода-вывода.
+ * PLATFORM - ограниченный пул обычных потоков Jetty (по умолчанию),
+ * VIRTUAL - каждый запрос обрабатывается в отдельном виртуальном потоке (требуется Java 21+)
+ */
+public enum ThreadMode {
+    PLATFORM,
+    VIRTUAL;
+
+    private static final Logger logger = LoggerFactory.getLogger(ThreadMode.class);
+
+    /**
+     * Читает режим из настройки server.threads ("platform" или "virtual").
+     * Если виртуальные потоки недоступны в текущей JVM, используется PLATFORM
+     * @return режим потоков
+     */
+    public static ThreadMode fromConfig() {
+        ThreadMode mode = valueOf(AppConfig.getString("server.threads", "platform").toUpperCase(Locale.ROOT));
+        if (mode == VIRTUAL && !virtualThreadsSupported()) {
+            logger.warn("Virtual threads require Java 21+, running on {}. Falling back to platform threads",
+                    System.getProperty("java.version"));
+            return PLATFORM;
+        }
+        return mode;
+    }
+
+    /**
+     * Настраивает пул потоков встроенного сервера Spark/Jetty. Вызывается до регистрации маршрутов
+     * @param maxThreads размер пула обычных потоков (для режима PLATFORM)
+     */
+    public void configureServer(int maxThreads) {
+        if (this == VIRTUAL) {
+            EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY,
+                    new EmbeddedJettyFactory().withThreadPool(new VirtualThreadPool(() -> newExecutor("http-"))));
+        } else {
+            EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY, new EmbeddedJettyFactory());
+            Spark.threadPool(maxThreads);
+        }
+        logger.info("Request handling runs on {} threads", name().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Создает пул для фоновых задач и обратных вызовов: в режиме VIRTUAL - виртуальный поток на задачу,
+     * иначе - расширяемый пул обычных потоков-демонов
+     * @param namePrefix префикс имени потоков
+     * @return пул потоков
+     */
+    public ExecutorService newExecutor(String namePrefix) {
+        if (this == VIRTUAL) {
+            try {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+                Object factory = builderClass.getMethod("factory").invoke(builder);
+                return (ExecutorService) Executors.class
+                        .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                        .invoke(null, factory);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Virtual threads are not supported by this JVM", e);
+            }
+        }
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + "worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return True, если текущая JVM поддерживает виртуальные потоки (Java 21+)
+     */
+    public static boolean virtualThreadsSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
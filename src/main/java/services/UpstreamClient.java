@@ -0,0 +1,141 @@
+package services;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Общий асинхронный HTTP-клиент для запросов к внешним API (Open-Meteo).
+ * Один экземпляр OkHttpClient с пулом соединений и HTTP/2 используется всеми сервисами.
+ * Запросы выполняются без блокировки вызывающего потока, ограничиваются по количеству
+ * одновременных запросов к хосту и повторяются с экспоненциальной задержкой при временных ошибках
+ */
+public class UpstreamClient {
+    private static volatile UpstreamClient shared;
+
+    private final OkHttpClient httpClient;
+    private final HttpSettings settings;
+
+    public UpstreamClient(HttpSettings settings) {
+        this(settings, new Dispatcher());
+    }
+
+    /**
+     * @param settings настройки HTTP-клиента
+     * @param callbackExecutor пул, в котором выполняются запросы и обработка ответов (например, виртуальные потоки)
+     */
+    public UpstreamClient(HttpSettings settings, ExecutorService callbackExecutor) {
+        this(settings, new Dispatcher(callbackExecutor));
+    }
+
+    private UpstreamClient(HttpSettings settings, Dispatcher dispatcher) {
+        dispatcher.setMaxRequests(settings.maxRequests());
+        dispatcher.setMaxRequestsPerHost(settings.maxRequestsPerHost());
+        this.httpClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(settings.maxIdleConnections(), settings.keepAliveSeconds(), TimeUnit.SECONDS))
+                .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(settings.connectTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .readTimeout(settings.readTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .callTimeout(settings.callTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .build();
+        this.settings = settings;
+    }
+
+    /**
+     * Возвращает общий для всего процесса клиент с настройками из AppConfig.
+     * Ответы обрабатываются в потоках режима server.threads (см. ThreadMode)
+     * @return общий экземпляр UpstreamClient
+     */
+    public static UpstreamClient shared() {
+        UpstreamClient client = shared;
+        if (client == null) {
+            synchronized (UpstreamClient.class) {
+                client = shared;
+                if (client == null) {
+                    client = new UpstreamClient(HttpSettings.fromConfig(), ThreadMode.fromConfig().newExecutor("upstream-"));
+                    shared = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Выполняет GET-запрос асинхронно и разбирает успешный ответ
+     * @param url адрес запроса
+     * @param parser разбор тела успешного ответа
+     * @return результат разбора; при ошибке future завершается исключением (UpstreamException при неуспешном коде ответа)
+     */
+    public <T> CompletableFuture<T> getAsync(String url, ResponseParser<T> parser) {
+        Request request;
+        try {
+            request = new Request.Builder().url(url).build();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        execute(request, parser, result, 0);
+        return result;
+    }
+
+    private <T> void execute(Request request, ResponseParser<T> parser, CompletableFuture<T> result, int attempt) {
+        httpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                retryOrFail(request, parser, result, attempt, e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    ResponseBody body = response.body();
+                    if (response.isSuccessful() && body != null) {
+                        result.complete(parser.parse(body));
+                        return;
+                    }
+                    UpstreamException error = new UpstreamException(
+                            String.format("%s responded with %d", request.url().host(), response.code()), response.code());
+                    if (response.code() == 429 || response.code() >= 500) {
+                        retryOrFail(request, parser, result, attempt, error);
+                    } else {
+                        result.completeExceptionally(error);
+                    }
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+    }
+
+    private <T> void retryOrFail(Request request, ResponseParser<T> parser, CompletableFuture<T> result, int attempt, IOException error) {
+        if (attempt >= settings.maxRetries()) {
+            result.completeExceptionally(error);
+            return;
+        }
+        long delay = settings.retryBackoffMillis() << attempt;
+        CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)
+                .execute(() -> execute(request, parser, result, attempt + 1));
+    }
+
+    /**
+     * Разбор тела успешного ответа
+     * @param <T> тип результата
+     */
+    @FunctionalInterface
+    public interface ResponseParser<T> {
+        T parse(ResponseBody body) throws IOException;
+    }
+}
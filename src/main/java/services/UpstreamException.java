@@ -0,0 +1,22 @@
+package services;
+
+import java.io.IOException;
+
+/**
+ * Ошибка запроса к внешнему API: неуспешный код ответа или пустое тело ответа
+ */
+public class UpstreamException extends IOException {
+    private final int statusCode;
+
+    public UpstreamException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @return HTTP-код ответа внешнего API
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
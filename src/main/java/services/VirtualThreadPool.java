@@ -0,0 +1,96 @@
+package services;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Пул потоков Jetty, запускающий каждую задачу в отдельном виртуальном потоке.
+ * Количество одновременно обрабатываемых запросов не ограничено размером пула,
+ * а заблокированный на вводе-выводе запрос почти не расходует память.
+ * Jetty запускает и останавливает пул вместе с сервером: при остановке пул перестает принимать задачи
+ * и ждет завершения начатых (не дольше stopTimeout), поэтому join() возвращается после остановки сервера
+ */
+class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+    private final Supplier<ExecutorService> executors;
+    private final AtomicInteger running = new AtomicInteger();
+    private volatile ExecutorService executor;
+
+    /**
+     * @param executors создает пул "виртуальный поток на задачу" при каждом запуске сервера
+     */
+    VirtualThreadPool(Supplier<ExecutorService> executors) {
+        this.executors = executors;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        executor = executors.get();
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        super.doStop();
+        ExecutorService stopping = executor;
+        stopping.shutdown();
+        if (!stopping.awaitTermination(getStopTimeout(), TimeUnit.MILLISECONDS)) {
+            stopping.shutdownNow();
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        ExecutorService current = executor;
+        if (current == null) {
+            throw new RejectedExecutionException("Thread pool is not started");
+        }
+        current.execute(() -> {
+            running.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                running.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Ждет остановки пула; если пул не запущен, возвращается сразу
+     */
+    @Override
+    public void join() throws InterruptedException {
+        synchronized (this) {
+            while (isStarting() || isStarted()) {
+                wait();
+            }
+        }
+        ExecutorService current = executor;
+        if (current != null) {
+            current.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public int getThreads() {
+        return running.get();
+    }
+
+    @Override
+    public int getIdleThreads() {
+        return 0;
+    }
+
+    @Override
+    public boolean isLowOnThreads() {
+        return false;
+    }
+}
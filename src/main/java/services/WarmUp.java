@@ -0,0 +1,114 @@
+package services;
+
+import data.WeatherData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Прогрев кэшей при запуске сервиса.
+ * Загружает прогноз популярных городов через WeatherService (не больше parallelism загрузок одновременно)
+ * и строит их страницы, чтобы первые запросы после перезапуска не ждали геокодинга, API прогноза
+ * и построения графика. Первый построенный график также загружает классы AWT и шрифты, если используется JFreeChart
+ */
+public class WarmUp {
+    private static final List<String> DEFAULT_CITIES = List.of("Moscow", "Saint Petersburg", "London", "Paris", "Berlin", "New York");
+    private static final Logger logger = LoggerFactory.getLogger(WarmUp.class);
+
+    private final WeatherService weatherService;
+    private final WeatherViewer weatherViewer;
+    private final List<String> cities;
+    private final int parallelism;
+    private final CompletableFuture<Integer> done = new CompletableFuture<>();
+
+    /**
+     * @param weatherService сервис прогноза погоды
+     * @param weatherViewer веб-интерфейс, страницы которого строятся заранее
+     * @param cities города для прогрева
+     * @param parallelism количество одновременных загрузок (не меньше 1)
+     */
+    public WarmUp(WeatherService weatherService, WeatherViewer weatherViewer, List<String> cities, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Warm-up parallelism must be positive: " + parallelism);
+        }
+        this.weatherService = weatherService;
+        this.weatherViewer = weatherViewer;
+        this.cities = List.copyOf(cities);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Создает прогрев по настройкам "warmup.cities" и "warmup.parallelism"
+     * @param weatherService сервис прогноза погоды
+     * @param weatherViewer веб-интерфейс, страницы которого строятся заранее
+     */
+    public static WarmUp fromConfig(WeatherService weatherService, WeatherViewer weatherViewer) {
+        return new WarmUp(weatherService, weatherViewer,
+                AppConfig.getList("warmup.cities", DEFAULT_CITIES), AppConfig.getInt("warmup.parallelism", 4));
+    }
+
+    /**
+     * Запускает прогрев в фоновом потоке, сервис может принимать запросы параллельно с ним
+     * @return future с количеством прогретых городов, завершается по окончании прогрева
+     */
+    public CompletableFuture<Integer> start() {
+        Thread thread = new Thread(this::run, "weather-warmup");
+        thread.setDaemon(true);
+        thread.start();
+        return done;
+    }
+
+    /**
+     * @return True, если прогрев закончен (в том числе с ошибками по отдельным городам)
+     */
+    public boolean isDone() {
+        return done.isDone();
+    }
+
+    private void run() {
+        long start = System.nanoTime();
+        int loaded = 0;
+        try {
+            // Прогнозы загружаются асинхронно, семафор ограничивает количество одновременных загрузок
+            Semaphore permits = new Semaphore(parallelism);
+            List<CompletableFuture<WeatherData>> loads = new ArrayList<>(cities.size());
+            for (String city : cities) {
+                permits.acquire();
+                CompletableFuture<WeatherData> load;
+                try {
+                    load = weatherService.getWeatherAsync(city);
+                } catch (RuntimeException e) {
+                    load = CompletableFuture.failedFuture(e);
+                }
+                load.whenComplete((weatherData, exception) -> permits.release());
+                loads.add(load);
+            }
+
+            // Страницы строятся в потоке прогрева, а не в потоках HTTP-клиента
+            for (int i = 0; i < cities.size(); i++) {
+                WeatherData weatherData = loads.get(i).exceptionally(exception -> null).join();
+                if (weatherData == null) {
+                    logger.warn("Warm-up of the city \"{}\" has failed", cities.get(i));
+                    continue;
+                }
+                try {
+                    weatherViewer.renderPage(cities.get(i), weatherData);
+                    loaded++;
+                } catch (RuntimeException e) {
+                    logger.warn("Warm-up page of the city \"{}\" was not rendered: {}", cities.get(i), e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            logger.info("Warm-up finished: {} of {} cities loaded in {} ms", loaded, cities.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            done.complete(loaded);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package services;
+
+import data.Coordinates;
+import data.HourlyForecast;
+import data.WeatherData;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Компактный двоичный формат WeatherData для хранения в Redis.
+ *
+ * <p>Формат версии 3:
+ * <pre>
+ *   byte    версия формата (3)
+ *   string  город, string широта, string долгота (short длина + UTF-8)
+ *   byte    количество переменных, затем для каждой переменной:
+ *     string  название переменной Open-Meteo (например, "temperature_2m")
+ *     byte    флаги: 0x01 - начало и шаг ряда записаны явно, 0x02 - значения записаны как double
+ *     int     час начала ряда от начала эпохи (шаг - один час)
+ *             либо, при флаге 0x01, long начало ряда (epoch seconds) и int шаг (секунды)
+ *     short   количество значений
+ *     short[] значение * 10 либо, при флаге 0x02, double[] (если значение не укладывается в десятые доли)
+ * </pre>
+ * Записи прежних версий не читаются: они хранились под другими ключами (см. RedisService) и сервису не попадаются
+ */
+public final class WeatherCodec {
+    static final byte VERSION = 3;
+    private static final byte EXPLICIT_TIMES = 0x01;
+    private static final byte DOUBLE_VALUES = 0x02;
+
+    private WeatherCodec() {
+    }
+
+    /**
+     * Кодирует данные о погоде со всеми переменными в двоичный формат
+     * @param weatherData данные о погоде WeatherData.class
+     * @return закодированные данные
+     */
+    public static byte[] encode(WeatherData weatherData) {
+        return encode(weatherData, weatherData.hourly().keySet());
+    }
+
+    /**
+     * Кодирует в двоичный формат данные о погоде только по одной переменной
+     * @param weatherData данные о погоде WeatherData.class
+     * @param variable название переменной, которая есть в данных
+     * @return закодированные данные
+     */
+    public static byte[] encode(WeatherData weatherData, String variable) {
+        return encode(weatherData, List.of(variable));
+    }
+
+    private static byte[] encode(WeatherData weatherData, Collection<String> variables) {
+        byte[] city = utf8(weatherData.city());
+        byte[] latitude = utf8(weatherData.coordinates().latitude());
+        byte[] longitude = utf8(weatherData.coordinates().longitude());
+
+        int size = 1 + 6 + city.length + latitude.length + longitude.length + 1;
+        byte[][] names = new byte[variables.size()][];
+        HourlyForecast[] forecasts = new HourlyForecast[names.length];
+        byte[] flags = new byte[names.length];
+        int v = 0;
+        for (String variable : variables) {
+            names[v] = utf8(variable);
+            forecasts[v] = weatherData.hourly().get(variable);
+            flags[v] = flags(forecasts[v]);
+            size += 2 + names[v].length + 1
+                    + ((flags[v] & EXPLICIT_TIMES) != 0 ? 12 : 4) + 2
+                    + ((flags[v] & DOUBLE_VALUES) != 0 ? 8 : 2) * forecasts[v].size();
+            v++;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(VERSION);
+        putString(buffer, city);
+        putString(buffer, latitude);
+        putString(buffer, longitude);
+        buffer.put((byte) names.length);
+        for (v = 0; v < names.length; v++) {
+            putString(buffer, names[v]);
+            buffer.put(flags[v]);
+            putForecast(buffer, forecasts[v], flags[v]);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Декодирует данные о погоде из двоичного формата
+     * @param value закодированные данные
+     * @return данные о погоде WeatherData.class
+     * @throws IllegalArgumentException если версия формата не поддерживается
+     */
+    public static WeatherData decode(byte[] value) {
+        ByteBuffer buffer = ByteBuffer.wrap(value);
+        byte version = value.length == 0 ? 0 : buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported weather data format version " + version
+                    + ", expected " + VERSION);
+        }
+        String city = getString(buffer);
+        Coordinates coordinates = new Coordinates(getString(buffer), getString(buffer));
+        int count = buffer.get();
+        Map<String, HourlyForecast> hourly = new HashMap<>(count * 2);
+        for (int v = 0; v < count; v++) {
+            String variable = getString(buffer);
+            hourly.put(variable, getForecast(buffer, buffer.get()));
+        }
+        return new WeatherData(city, coordinates, hourly);
+    }
+
+    private static byte flags(HourlyForecast forecast) {
+        byte flags = 0;
+        if (forecast.stepSeconds() != HourlyForecast.HOUR_SECONDS
+                || forecast.startEpochSecond() % HourlyForecast.HOUR_SECONDS != 0) {
+            flags |= EXPLICIT_TIMES;
+        }
+        for (int i = 0; i < forecast.size(); i++) {
+            double scaled = Math.rint(forecast.value(i) * 10);
+            if (Math.abs(scaled) > Short.MAX_VALUE || scaled / 10 != forecast.value(i)) {
+                flags |= DOUBLE_VALUES;
+                break;
+            }
+        }
+        return flags;
+    }
+
+    private static void putForecast(ByteBuffer buffer, HourlyForecast forecast, byte flags) {
+        if ((flags & EXPLICIT_TIMES) != 0) {
+            buffer.putLong(forecast.startEpochSecond()).putInt(forecast.stepSeconds());
+        } else {
+            buffer.putInt((int) (forecast.startEpochSecond() / HourlyForecast.HOUR_SECONDS));
+        }
+        buffer.putShort((short) forecast.size());
+        for (int i = 0; i < forecast.size(); i++) {
+            if ((flags & DOUBLE_VALUES) != 0) {
+                buffer.putDouble(forecast.value(i));
+            } else {
+                buffer.putShort((short) Math.rint(forecast.value(i) * 10));
+            }
+        }
+    }
+
+    private static HourlyForecast getForecast(ByteBuffer buffer, byte flags) {
+        long start;
+        int step;
+        if ((flags & EXPLICIT_TIMES) != 0) {
+            start = buffer.getLong();
+            step = buffer.getInt();
+        } else {
+            start = (long) buffer.getInt() * HourlyForecast.HOUR_SECONDS;
+            step = HourlyForecast.HOUR_SECONDS;
+        }
+        return new HourlyForecast(start, step, getValues(buffer, flags, buffer.getShort()));
+    }
+
+    private static double[] getValues(ByteBuffer buffer, byte flags, int count) {
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = (flags & DOUBLE_VALUES) != 0 ? buffer.getDouble() : buffer.getShort() / 10.0;
+        }
+        return values;
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        buffer.putShort((short) value.length).put(value);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] value = new byte[buffer.getShort()];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -1,112 +1,879 @@
 package services;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
+import data.CachedCoordinates;
+import data.CachedWeather;
 import data.Coordinates;
-import data.Temperature;
 import data.WeatherData;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
+import okhttp3.ResponseBody;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import redis.clients.jedis.exceptions.JedisException;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
 /**
  * Сервис для получения прогноза погоды по названию города.
  * Обеспечивает:
- * - Получение данных через Open-Meteo API
- * - Кэширование результатов в Redis
+ * - Получение данных через Open-Meteo API (асинхронно, через общий UpstreamClient)
+ * - Кэширование результатов в памяти процесса (L1) и в Redis (L2) по округленным координатам города
+ * - Согласование L1 нескольких экземпляров сервиса: сообщения об обновлении прогнозов через Redis pub/sub
+ *   и блокировка, с которой местоположение загружает из Open-Meteo только один экземпляр
  * - Преобразование данных из Json в объектную модель (WeatherData.class)
  */
-public class WeatherService {
+public class WeatherService implements AutoCloseable {
     private static final String WEATHER_URL = "https://api.open-meteo.com/v1/forecast";
     private static final int CACHE_TTL_SECONDS = 900; // 15 минут
     private static final Logger logger = LoggerFactory.getLogger(WeatherService.class);
+    // Время ответа API прогноза (включая повторы) и время чтения и разбора тела ответа
+    private static final Metrics.LatencyHistogram FETCH_LATENCY = Metrics.registry().histogram("weather_stage_seconds",
+            "Latency of request processing stages", "stage", "forecast_fetch");
+    private static final Metrics.LatencyHistogram PARSE_LATENCY = Metrics.registry().histogram("weather_stage_seconds",
+            "Latency of request processing stages", "stage", "forecast_parse");
+    private static final Metrics.Counter UPSTREAM_SUCCESS = Metrics.registry().counter("upstream_requests_total",
+            "Requests to Open-Meteo APIs by outcome", "api", "forecast", "outcome", "success");
+    private static final Metrics.Counter UPSTREAM_ERRORS = Metrics.registry().counter("upstream_requests_total",
+            "Requests to Open-Meteo APIs by outcome", "api", "forecast", "outcome", "error");
+    private static final Metrics.Counter STALE_RESPONSES = Metrics.registry().counter("weather_stale_responses_total",
+            "Forecasts served past their TTL because the forecast API is unavailable");
+    private static final Metrics.Counter LOCK_ACQUIRED = Metrics.registry().counter("weather_load_locks_total",
+            "Forecast loads by distributed lock outcome", "outcome", "acquired");
+    private static final Metrics.Counter LOCK_BUSY = Metrics.registry().counter("weather_load_locks_total",
+            "Forecast loads by distributed lock outcome", "outcome", "busy");
+    private static final Metrics.Counter LOCK_UNAVAILABLE = Metrics.registry().counter("weather_load_locks_total",
+            "Forecast loads by distributed lock outcome", "outcome", "unavailable");
+    private static final Metrics.Counter EVENTS_RECEIVED = Metrics.registry().counter("weather_cache_events_total",
+            "Forecast update and invalidation messages received from other instances");
 
+    private final String weatherUrl;
     private final RedisService redis;
     private final GeolocationService geolocation;
-    private final OkHttpClient httpClient;
-    private final Gson gson;
+    private final LocalCache<WeatherData> localCache;
+    // Последний известный прогноз по местоположению: отдается после истечения срока жизни, если API недоступно
+    private final LocalCache<WeatherData> lastKnown;
+    private final SingleFlight<WeatherData> singleFlight;
+    private final RefreshAhead refreshAhead;
+    private final UpstreamClient upstream;
+    private final CircuitBreaker breaker;
+    private final ClusterSettings clusterSettings;
+    // Идентификатор экземпляра сервиса: собственные сообщения об обновлении прогнозов не обрабатываются
+    private final String instanceId = UUID.randomUUID().toString();
+    // Загрузки, ожидающие, пока другой экземпляр сервиса загрузит прогноз местоположения
+    // У каждой ожидающей загрузки свое future, которое удаляется при любом исходе ожидания
+    private final Map<String, Set<CompletableFuture<Void>>> pendingUpdates = new ConcurrentHashMap<>();
+    private final Consumer<RedisService.WeatherEvent> eventListener = this::onWeatherEvent;
+    // Блокирующие обращения к Redis после ожидания загрузки и после сообщений других экземпляров:
+    // поток подписки Redis и общий поток таймеров CompletableFuture только передают сюда работу
+    private final ExecutorService clusterExecutor = ThreadMode.fromConfig().newExecutor("weather-cluster-");
 
     public WeatherService(GeolocationService geolocation) {
-        this.redis = new RedisService();
+        this(geolocation, new RedisService());
+    }
+
+    public WeatherService(GeolocationService geolocation, RedisService redis) {
+        this(geolocation, redis, AppConfig.getString("weather.url", WEATHER_URL));
+    }
+
+    /**
+     * @param geolocation сервис геокодинга
+     * @param redis сервис кэширования в Redis
+     * @param weatherUrl адрес API прогноза погоды (например, локальной заглушки в тестах)
+     */
+    public WeatherService(GeolocationService geolocation, RedisService redis, String weatherUrl) {
+        this(geolocation, redis, weatherUrl, RefreshSettings.fromConfig());
+    }
+
+    /**
+     * @param geolocation сервис геокодинга
+     * @param redis сервис кэширования в Redis
+     * @param weatherUrl адрес API прогноза погоды (например, локальной заглушки в тестах)
+     * @param refreshSettings настройки фонового обновления популярных городов
+     */
+    public WeatherService(GeolocationService geolocation, RedisService redis, String weatherUrl, RefreshSettings refreshSettings) {
+        this(geolocation, redis, weatherUrl, refreshSettings, UpstreamClient.shared());
+    }
+
+    /**
+     * @param geolocation сервис геокодинга
+     * @param redis сервис кэширования в Redis
+     * @param weatherUrl адрес API прогноза погоды (например, локальной заглушки в тестах)
+     * @param refreshSettings настройки фонового обновления популярных городов
+     * @param upstream HTTP-клиент для запросов к внешним API
+     */
+    public WeatherService(GeolocationService geolocation, RedisService redis, String weatherUrl,
+                          RefreshSettings refreshSettings, UpstreamClient upstream) {
+        this(geolocation, redis, weatherUrl, refreshSettings, upstream, BreakerSettings.fromConfig());
+    }
+
+    /**
+     * @param geolocation сервис геокодинга
+     * @param redis сервис кэширования в Redis
+     * @param weatherUrl адрес API прогноза погоды (например, локальной заглушки в тестах)
+     * @param refreshSettings настройки фонового обновления популярных городов
+     * @param upstream HTTP-клиент для запросов к внешним API
+     * @param breakerSettings настройки защиты запросов к API прогноза и выдачи сохраненного прогноза при его недоступности
+     */
+    public WeatherService(GeolocationService geolocation, RedisService redis, String weatherUrl,
+                          RefreshSettings refreshSettings, UpstreamClient upstream, BreakerSettings breakerSettings) {
+        this(geolocation, redis, weatherUrl, refreshSettings, upstream, breakerSettings, ClusterSettings.fromConfig());
+    }
+
+    /**
+     * @param geolocation сервис геокодинга
+     * @param redis сервис кэширования в Redis
+     * @param weatherUrl адрес API прогноза погоды (например, локальной заглушки в тестах)
+     * @param refreshSettings настройки фонового обновления популярных городов
+     * @param upstream HTTP-клиент для запросов к внешним API
+     * @param breakerSettings настройки защиты запросов к API прогноза и выдачи сохраненного прогноза при его недоступности
+     * @param clusterSettings настройки согласования кэшей экземпляров сервиса, работающих с одним Redis
+     */
+    public WeatherService(GeolocationService geolocation, RedisService redis, String weatherUrl,
+                          RefreshSettings refreshSettings, UpstreamClient upstream, BreakerSettings breakerSettings,
+                          ClusterSettings clusterSettings) {
+        this.weatherUrl = weatherUrl;
+        this.redis = redis;
         this.geolocation = geolocation;
-        this.httpClient = new OkHttpClient();
-        this.gson = new Gson();
+        int localCacheSize = AppConfig.getInt("cache.local.max-size", 1000);
+        this.localCache = new LocalCache<>(localCacheSize, refreshSettings.maxStaleMillis());
+        this.lastKnown = new LocalCache<>(localCacheSize, breakerSettings.staleIfErrorMillis());
+        this.singleFlight = new SingleFlight<>();
+        this.refreshAhead = new RefreshAhead(refreshSettings, localCache::expiresAt, this::refreshWeather);
+        this.upstream = upstream;
+        this.breaker = new CircuitBreaker("forecast", breakerSettings);
+        this.clusterSettings = clusterSettings;
+
+        Metrics metrics = Metrics.registry();
+        metrics.gauge("cache_hit_ratio", "Share of cache lookups served from cache",
+                () -> localCache.stats().hitRatio(), "cache", "forecast_local");
+        metrics.gauge("weather_loads_in_flight", "Forecast loads currently running (after single-flight deduplication)",
+                singleFlight::inFlightCount);
+        if (clusterSettings.enabled()) {
+            redis.addWeatherEventListener(eventListener);
+        }
+    }
+
+    /**
+     * Возвращает счетчики попаданий, промахов и вытеснений локального кэша
+     * @return снимок метрик LocalCache.Stats
+     */
+    public LocalCache.Stats getLocalCacheStats() {
+        return localCache.stats();
+    }
+
+    /**
+     * Возвращает момент, до которого прогноз по местоположению считается свежим.
+     * Совпадает со сроком жизни записи в Redis, если прогноз был взят оттуда
+     * @param coordinates координаты города
+     * @return epoch millis или 0, если прогноза по местоположению нет в кэше
+     */
+    public long getExpiresAt(Coordinates coordinates) {
+        return localCache.expiresAt(coordinates.key());
+    }
+
+    /**
+     * @return состояние выключателя запросов к API прогноза
+     */
+    public CircuitBreaker.State getBreakerState() {
+        return breaker.state();
+    }
+
+    /**
+     * Проверяет, можно ли ответить на запрос прогноза из памяти процесса, без обращения к Redis и Open-Meteo.
+     * Метрики кэшей не изменяются. Город, про который известно, что он не найден, тоже считается отвеченным из кэша
+     * @param city название города
+     * @param options переменные и количество суток прогноза
+     * @return True, если координаты и прогноз (в том числе устаревший, который обновится в фоне) есть в памяти процесса
+     */
+    public boolean isCachedLocally(String city, ForecastOptions options) {
+        CachedCoordinates coordinates = geolocation.peekCoordinates(city);
+        if (coordinates == null || !coordinates.found()) {
+            return coordinates != null;
+        }
+        LocalCache.Entry<WeatherData> entry = localCache.peek(coordinates.coordinates().key());
+        return entry != null && entry.value().covers(options.variables(), options.days());
+    }
+
+    /**
+     * Удаляет прогноз местоположения из Redis и из памяти этого и всех остальных экземпляров сервиса
+     * (в том числе последний известный прогноз), например, если сохраненный прогноз оказался ошибочным
+     * @param coordinates координаты города
+     */
+    public void invalidate(Coordinates coordinates) {
+        String location = coordinates.key();
+        localCache.invalidate(location);
+        lastKnown.invalidate(location);
+        redis.deleteWeather(coordinates, ForecastOptions.supportedVariables());
+        if (clusterSettings.enabled()) {
+            redis.publishWeatherEvents(List.of(new RedisService.WeatherEvent(RedisService.WeatherEvent.Type.INVALIDATED, location, instanceId)));
+        }
     }
 
     /**
      * Получает прогноз температуры на сутки для указанного города
      * @param city название города (например: "Moscow")
-     * @return объект WeatherData с прогнозом температуры или null, если город не найден или произошла ошибка
+     * @return объект WeatherData с прогнозом температуры или null, если город не найден
+     * @throws CompletionException если прогноз не удалось загрузить и сохраненного прогноза нет
      */
     WeatherData getWeather(String city) {
+        return getWeather(city, ForecastOptions.DEFAULT);
+    }
+
+    /**
+     * Получает прогноз по указанным переменным и количеству суток для указанного города
+     * @param city название города (например: "Moscow")
+     * @param options переменные и количество суток прогноза
+     * @return объект WeatherData ровно с запрошенными переменными или null, если город не найден
+     * @throws CompletionException если прогноз не удалось загрузить и сохраненного прогноза нет
+     * (причина - UpstreamException, если API прогноза недоступно)
+     */
+    WeatherData getWeather(String city, ForecastOptions options) {
+        try {
+            return getWeatherAsync(city, options).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Асинхронно получает прогноз температуры на сутки для указанного города
+     * @param city название города (например: "Moscow")
+     * @return future с объектом WeatherData или null, если город не найден
+     */
+    public CompletableFuture<WeatherData> getWeatherAsync(String city) {
+        return getWeatherAsync(city, ForecastOptions.DEFAULT);
+    }
+
+    /**
+     * Асинхронно получает прогноз по указанным переменным и количеству суток для указанного города.
+     * Сначала определяются координаты города (обычно из кэша геокодинга), прогноз кэшируется
+     * по округленным координатам, поэтому разные названия одного города ("Moscow", " moscow", "Москва")
+     * используют одну запись кэша. При попадании в локальный кэш возвращает уже завершенный future;
+     * при промахе поток вызывающего не блокируется на запросах к внешним API. Из Open-Meteo запрашиваются только те переменные,
+     * которых нет ни в одном из кэшей, и они дописываются к уже сохраненному прогнозу города.
+     * Если API прогноза недоступно (ошибка или разомкнутый выключатель), отдается последний известный прогноз
+     * местоположения, даже с истекшим сроком жизни (не старше breaker.stale-if-error.hours)
+     * @param city название города (например: "Moscow")
+     * @param options переменные и количество суток прогноза
+     * @return future с объектом WeatherData ровно с запрошенными переменными (с названием города из запроса)
+     * или null, если город не найден; если прогноз не удалось загрузить и сохраненного прогноза нет,
+     * future завершается ошибкой (UpstreamException, если API прогноза недоступно)
+     */
+    public CompletableFuture<WeatherData> getWeatherAsync(String city, ForecastOptions options) {
+        return geolocation.getCoordinatesAsync(city).thenCompose(coordinates -> {
+            if (coordinates == null) {
+                logger.error("City \"{}\" was not found", city);
+                return CompletableFuture.completedFuture(null);
+            }
+            return getWeatherAsync(city, coordinates, options);
+        });
+    }
+
+    private CompletableFuture<WeatherData> getWeatherAsync(String city, Coordinates coordinates, ForecastOptions options) {
+        String location = coordinates.key();
+        refreshAhead.recordRequest(location);
+
+        // Запрашиваем данные из локального кэша: без сетевых запросов и разбора JSON.
+        // Устаревшая запись отдается сразу, а обновление запускается в фоне (stale-while-revalidate)
+        LocalCache.Entry<WeatherData> localData = localCache.getEntry(location);
+        if (localData != null && localData.value().covers(options.variables(), options.days())) {
+            if (localData.isExpired(System.currentTimeMillis())) {
+                refreshAhead.refreshAsync(location);
+            }
+            return CompletableFuture.completedFuture(localData.value().select(options.variables(), options.days()).withCity(city));
+        }
+
+        // Одновременные промахи по одному местоположению с одними параметрами объединяются: в Redis и во внешнее API
+        // идет только один запрос, остальные вызовы получают его результат
+        return singleFlight.execute(flightKey(location, options), () -> loadWeather(city, coordinates, options))
+                .thenApply(weatherData -> weatherData == null ? null : weatherData.withCity(city));
+    }
+
+    /**
+     * Получает прогноз температуры на сутки сразу для нескольких городов
+     * @param cities названия городов
+     * @return прогноз по названию города в порядке запроса; null для города, который не найден или не загрузился
+     */
+    Map<String, WeatherData> getWeatherBatch(List<String> cities) {
+        return getWeatherBatch(cities, ForecastOptions.DEFAULT);
+    }
+
+    /**
+     * Получает прогноз по указанным переменным и количеству суток сразу для нескольких городов
+     * @param cities названия городов
+     * @param options переменные и количество суток прогноза
+     * @return прогноз по названию города в порядке запроса; null для города, который не найден или не загрузился
+     */
+    Map<String, WeatherData> getWeatherBatch(List<String> cities, ForecastOptions options) {
+        try {
+            return getWeatherBatchAsync(cities, options).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Асинхронно получает прогноз сразу для нескольких городов.
+     * Количество обращений не зависит от количества городов: координаты определяются параллельно,
+     * города с одинаковым местоположением объединяются, данные из Redis читаются одним конвейерным MGET,
+     * недостающие прогнозы запрашиваются одним запросом Open-Meteo с несколькими координатами
+     * и сохраняются одним конвейерным запросом SETEX
+     * @param cities названия городов
+     * @param options переменные и количество суток прогноза
+     * @return future с прогнозом по названию города в порядке запроса; null для города, который не найден или не загрузился
+     */
+    public CompletableFuture<Map<String, WeatherData>> getWeatherBatchAsync(List<String> cities, ForecastOptions options) {
+        List<String> uniqueCities = new ArrayList<>(new LinkedHashSet<>(cities));
+        List<CompletableFuture<Coordinates>> coordinates = new ArrayList<>(uniqueCities.size());
+        for (String city : uniqueCities) {
+            // Город, координаты которого не удалось получить, остается без прогноза и не мешает остальным
+            coordinates.add(geolocation.getCoordinatesAsync(city).exceptionally(exception -> null));
+        }
+        return CompletableFuture.allOf(coordinates.toArray(new CompletableFuture[0])).thenCompose(ignored -> {
+            Map<String, WeatherData> result = new LinkedHashMap<>();
+            Map<String, List<String>> citiesByLocation = new LinkedHashMap<>();
+            Map<String, Coordinates> locations = new LinkedHashMap<>();
+            for (int i = 0; i < uniqueCities.size(); i++) {
+                String city = uniqueCities.get(i);
+                Coordinates cityCoordinates = coordinates.get(i).join();
+                result.put(city, null);
+                if (cityCoordinates == null) {
+                    logger.error("City \"{}\" was not found", city);
+                    continue;
+                }
+                citiesByLocation.computeIfAbsent(cityCoordinates.key(), key -> new ArrayList<>()).add(city);
+                locations.putIfAbsent(cityCoordinates.key(), cityCoordinates);
+            }
+
+            List<Coordinates> misses = new ArrayList<>();
+            for (Map.Entry<String, Coordinates> location : locations.entrySet()) {
+                refreshAhead.recordRequest(location.getKey());
+                LocalCache.Entry<WeatherData> localData = localCache.getEntry(location.getKey());
+                if (localData != null && localData.value().covers(options.variables(), options.days())) {
+                    if (localData.isExpired(System.currentTimeMillis())) {
+                        refreshAhead.refreshAsync(location.getKey());
+                    }
+                    putResult(result, citiesByLocation.get(location.getKey()), localData.value(), options);
+                } else {
+                    misses.add(location.getValue());
+                }
+            }
+            if (misses.isEmpty()) {
+                return CompletableFuture.completedFuture(result);
+            }
+
+            Map<String, CachedWeather> savedData = readSavedWeatherBatch(misses, options.variables());
+            List<String> upstreamCities = new ArrayList<>();
+            List<Coordinates> upstreamMisses = new ArrayList<>();
+            for (Coordinates location : misses) {
+                CachedWeather saved = savedData.get(location.key());
+                if (saved != null && saved.weatherData().covers(options.variables(), options.days())) {
+                    putLocal(saved.weatherData(), saved.expiresAtMillis());
+                    putResult(result, citiesByLocation.get(location.key()), saved.weatherData(), options);
+                } else {
+                    upstreamCities.add(citiesByLocation.get(location.key()).get(0));
+                    upstreamMisses.add(location);
+                }
+            }
+            if (upstreamMisses.isEmpty()) {
+                return CompletableFuture.completedFuture(result);
+            }
+            return fetchWeatherBatch(upstreamCities, upstreamMisses, options).thenApply(fetched -> {
+                fetched.forEach((location, weatherData) -> putResult(result, citiesByLocation.get(location), weatherData, options));
+                return result;
+            });
+        });
+    }
+
+    /**
+     * Записывает прогноз местоположения в результат под каждым названием, под которым его запросили
+     */
+    private static void putResult(Map<String, WeatherData> result, List<String> cities, WeatherData weatherData, ForecastOptions options) {
+        WeatherData selected = weatherData.select(options.variables(), options.days());
+        for (String city : cities) {
+            result.put(city, selected.withCity(city));
+        }
+    }
+
+    /**
+     * Загружает прогнозы для нескольких местоположений одним запросом к Open-Meteo API и сохраняет их в кэш.
+     * Если API недоступно, возвращаются последние известные прогнозы местоположений
+     * @param cities названия городов (по одному на местоположение)
+     * @param locations координаты городов, которых нет в кэше
+     * @param options переменные и количество суток прогноза
+     * @return future с прогнозами по ключу местоположения (Coordinates.key)
+     */
+    private CompletableFuture<Map<String, WeatherData>> fetchWeatherBatch(List<String> cities, List<Coordinates> locations,
+                                                                          ForecastOptions options) {
+        StringBuilder latitudes = new StringBuilder();
+        StringBuilder longitudes = new StringBuilder();
+        for (Coordinates location : locations) {
+            latitudes.append(latitudes.length() == 0 ? "" : ",").append(location.latitude());
+            longitudes.append(longitudes.length() == 0 ? "" : ",").append(location.longitude());
+        }
+        return requestForecast(forecastUrl(latitudes, longitudes, options),
+                        body -> parseWeatherBatch(cities, locations, options, body))
+                .thenApply(weatherData -> {
+                    saveWeatherBatch(weatherData);
+                    return weatherData;
+                })
+                .exceptionally(exception -> {
+                    Throwable cause = exception instanceof CompletionException ? exception.getCause() : exception;
+                    logger.error("During batch temperature request an error has occurred: - {}", cause.getMessage());
+                    Map<String, WeatherData> stale = new LinkedHashMap<>();
+                    for (Coordinates location : locations) {
+                        WeatherData weatherData = getLastKnown(location, options);
+                        if (weatherData != null) {
+                            stale.put(location.key(), weatherData);
+                        }
+                    }
+                    return stale;
+                });
+    }
+
+    /**
+     * Останавливает фоновое обновление популярных городов и получение сообщений от других экземпляров сервиса
+     */
+    @Override
+    public void close() {
+        refreshAhead.close();
+        redis.removeWeatherEventListener(eventListener);
+        clusterExecutor.shutdownNow();
+    }
+
+    /**
+     * Загружает свежий прогноз из Open-Meteo API в обход кэша и сохраняет его в кэш.
+     * Обновляются все переменные и сутки, которые уже есть в локальном кэше местоположения.
+     * Вызывается фоновым обновлением популярных и устаревших записей. Если местоположение в это время
+     * загружает другой экземпляр сервиса, обновление пропускается: свежий прогноз придет от него сообщением
+     * @param location ключ местоположения (Coordinates.key)
+     */
+    private void refreshWeather(String location) {
+        LocalCache.Entry<WeatherData> localData = localCache.peek(location);
+        if (localData == null) {
+            return;
+        }
+        WeatherData current = localData.value();
+        ForecastOptions options = ForecastOptions.of(current);
+        LoadLock lock = tryLock(location);
+        if (lock.busy()) {
+            return;
+        }
+        try {
+            singleFlight.execute(flightKey(location, options), () -> fetchWeather(current.city(), current.coordinates(), options)).join();
+        } finally {
+            unlock(location, lock);
+        }
+    }
 
-        // Запрашиваем данные из кэша. Возвращаем, если успешно.
-        WeatherData savedData = redis.getSavedWeather(city);
+    private static String flightKey(String location, ForecastOptions options) {
+        return location + '|' + options.key();
+    }
+
+    /**
+     * Загружает прогноз из Redis, а недостающие в Redis переменные - из Open-Meteo API, и сохраняет в кэш
+     * @param city название города (например: "Moscow")
+     * @param coordinates координаты города
+     * @param options переменные и количество суток прогноза
+     * @return future с объектом WeatherData; если API недоступно и сохраненного прогноза нет, future завершается ошибкой
+     */
+    private CompletableFuture<WeatherData> loadWeather(String city, Coordinates coordinates, ForecastOptions options) {
+        // Запрашиваем данные из Redis. Запись в локальном кэше живет ровно столько же, сколько в Redis
+        CachedWeather savedData = readSavedWeather(coordinates, options.variables());
+        List<String> missing = new ArrayList<>();
+        for (String variable : options.variables()) {
+            if (savedData == null || !savedData.weatherData().covers(List.of(variable), options.days())) {
+                missing.add(variable);
+            }
+        }
+        if (missing.isEmpty()) {
+            putLocal(savedData.weatherData(), savedData.expiresAtMillis());
+            return CompletableFuture.completedFuture(savedData.weatherData().select(options.variables(), options.days()));
+        }
         if (savedData != null) {
-            return savedData;
+            putLocal(savedData.weatherData(), savedData.expiresAtMillis());
         }
 
-        // Запрос координат города
-        Coordinates coordinates = geolocation.getCoordinates(city);
-        if (coordinates == null) {
-            logger.error("City \"{}\" was not found", city);
+        // Из Open-Meteo запрашиваются только недостающие переменные, остальные берутся из Redis
+        // Если API недоступно, отдается последний известный прогноз местоположения
+        return fetchWeatherExclusive(city, coordinates, options.withVariables(missing)).handle((fetched, exception) -> {
+            if (exception == null) {
+                WeatherData weatherData = savedData == null ? fetched : savedData.weatherData().merge(fetched);
+                return weatherData.select(options.variables(), options.days());
+            }
+            WeatherData stale = getLastKnown(coordinates, options);
+            if (stale == null) {
+                throw exception instanceof CompletionException completion ? completion : new CompletionException(exception);
+            }
+            return stale;
+        });
+    }
+
+    /**
+     * Возвращает последний известный прогноз местоположения, если он покрывает запрошенные переменные и сутки
+     * @return прогноз ровно с запрошенными переменными или null
+     */
+    private WeatherData getLastKnown(Coordinates coordinates, ForecastOptions options) {
+        LocalCache.Entry<WeatherData> entry = lastKnown.getEntry(coordinates.key());
+        if (entry == null || !entry.value().covers(options.variables(), options.days())) {
             return null;
         }
+        STALE_RESPONSES.increment();
+        logger.warn("Forecast API is unavailable, serving stale forecast for \"{}\"", entry.value().city());
+        return entry.value().select(options.variables(), options.days());
+    }
+
+    /**
+     * Загружает прогноз из Open-Meteo API под блокировкой местоположения, чтобы одно местоположение одновременно
+     * загружал только один экземпляр сервиса. Если блокировку держит другой экземпляр, дожидается его сообщения
+     * об обновлении (не дольше срока блокировки) и берет прогноз из Redis; если прогноза там так и нет, загружает его сам
+     * @param city название города (например: "Moscow")
+     * @param coordinates координаты города
+     * @param options переменные и количество суток прогноза
+     * @return future с объектом WeatherData; при ошибке запроса future завершается исключением
+     */
+    private CompletableFuture<WeatherData> fetchWeatherExclusive(String city, Coordinates coordinates, ForecastOptions options) {
+        if (!clusterSettings.enabled()) {
+            return fetchWeather(city, coordinates, options);
+        }
+        String location = coordinates.key();
+        LoadLock lock = tryLock(location);
+        if (!lock.busy()) {
+            return fetchWeather(city, coordinates, options).whenComplete((weatherData, exception) -> unlock(location, lock));
+        }
 
-        // Запрос температуры на сутки по городу
-        String url = String.format("%s?latitude=%s&longitude=%s&hourly=temperature_2m&forecast_days=1",
-                WEATHER_URL, coordinates.latitude(), coordinates.longitude());
-        System.out.println(url);
-        Request request = new Request.Builder().url(url).build();
-        try (Response response = httpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()||response.body()==null) {
-                logger.error("During temperature request an error has occurred: {}", response.code());
-                return null;
+        // Ожидание регистрируется до повторной проверки Redis, поэтому сообщение о загрузке, завершившейся между
+        // попыткой взять блокировку и регистрацией, не теряется: ее результат будет найден в Redis
+        CompletableFuture<Void> update = awaitUpdate(location);
+        boolean waiting = false;
+        try {
+            WeatherData saved = getSavedWeather(coordinates, options);
+            if (saved != null) {
+                return CompletableFuture.completedFuture(saved);
             }
+            waiting = true;
+            // Ожидание завершается в потоке подписки или таймера, а чтение Redis и загрузка выполняются в clusterExecutor
+            return update.completeOnTimeout(null, clusterSettings.lockLeaseMillis(), TimeUnit.MILLISECONDS)
+                    .thenComposeAsync(ignored -> {
+                        stopAwaiting(location, update);
+                        WeatherData loaded = getSavedWeather(coordinates, options);
+                        return loaded != null ? CompletableFuture.completedFuture(loaded) : fetchWeather(city, coordinates, options);
+                    }, clusterExecutor);
+        } finally {
+            if (!waiting) {
+                stopAwaiting(location, update);
+            }
+        }
+    }
 
-            //Строим данные из ответа json с сервера
-            String responseBody = response.body().string();
-            JsonObject json = gson.fromJson(responseBody, JsonObject.class);
-            JsonObject hourly = json.getAsJsonObject("hourly");
+    /**
+     * Регистрирует ожидание сообщения об обновлении местоположения
+     * @return future, которое завершается при получении сообщения
+     */
+    private CompletableFuture<Void> awaitUpdate(String location) {
+        CompletableFuture<Void> update = new CompletableFuture<>();
+        pendingUpdates.compute(location, (key, waiters) -> {
+            Set<CompletableFuture<Void>> updated = waiters == null ? new HashSet<>() : waiters;
+            updated.add(update);
+            return updated;
+        });
+        return update;
+    }
 
-            JsonArray timeArray = hourly.getAsJsonArray("time");
-            JsonArray tempArray = hourly.getAsJsonArray("temperature_2m");
+    private void stopAwaiting(String location, CompletableFuture<Void> update) {
+        pendingUpdates.computeIfPresent(location, (key, waiters) -> {
+            waiters.remove(update);
+            return waiters.isEmpty() ? null : waiters;
+        });
+    }
 
-            ArrayList<Temperature> hourlyTemps = new ArrayList<>();
-            DateTimeFormatter formatter = DateTimeFormatter.ISO_DATE_TIME;
-            DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm");
+    /**
+     * Возвращает прогноз из Redis, если он покрывает запрошенные переменные и сутки, и сохраняет его в локальный кэш
+     * @return прогноз ровно с запрошенными переменными или null
+     */
+    private WeatherData getSavedWeather(Coordinates coordinates, ForecastOptions options) {
+        CachedWeather savedData = readSavedWeather(coordinates, options.variables());
+        if (savedData == null || !savedData.weatherData().covers(options.variables(), options.days())) {
+            return null;
+        }
+        putLocal(savedData.weatherData(), savedData.expiresAtMillis());
+        return savedData.weatherData().select(options.variables(), options.days());
+    }
 
-            //Записываем данные в класс WeatherData
-            for (int i = 0; i < timeArray.size(); i++) {
-                String timeStr = timeArray.get(i).getAsString();
-                LocalDateTime time = LocalDateTime.parse(timeStr, formatter);
-                double temp = tempArray.get(i).getAsDouble();
+    /**
+     * Читает прогноз местоположения из Redis. Недоступный Redis считается промахом кэша:
+     * прогноз загружается из Open-Meteo, а если и оно недоступно - отдается последний известный
+     * @return сохраненный прогноз или null
+     */
+    private CachedWeather readSavedWeather(Coordinates coordinates, List<String> variables) {
+        try {
+            return redis.getSavedWeatherWithTtl(coordinates, variables);
+        } catch (JedisException e) {
+            logger.warn("Weather cache is unavailable: {}", e.getMessage());
+            return null;
+        }
+    }
 
-                hourlyTemps.add(new Temperature(time.format(timeFormatter), temp));
-                System.out.println(String.format("TIME - %s, TEMP - %s",time, temp));
+    /**
+     * Читает прогнозы нескольких местоположений из Redis; недоступный Redis считается промахом кэша
+     * @return сохраненные прогнозы по ключу местоположения (Coordinates.key)
+     */
+    private Map<String, CachedWeather> readSavedWeatherBatch(List<Coordinates> locations, List<String> variables) {
+        try {
+            return redis.getSavedWeatherBatch(locations, variables);
+        } catch (JedisException e) {
+            logger.warn("Weather cache is unavailable: {}", e.getMessage());
+            return Map.of();
+        }
+    }
+
+    /**
+     * Берет блокировку загрузки местоположения. Если Redis недоступен, загрузка выполняется без блокировки
+     * @return взятая блокировка; LoadLock.BUSY, если ее держит другой экземпляр;
+     * LoadLock.NONE, если согласование выключено или Redis недоступен
+     */
+    private LoadLock tryLock(String location) {
+        if (!clusterSettings.enabled()) {
+            return LoadLock.NONE;
+        }
+        try {
+            String token = redis.tryLock("weather:" + location, clusterSettings.lockLeaseMillis());
+            if (token == null) {
+                LOCK_BUSY.increment();
+                return LoadLock.BUSY;
             }
-            WeatherData weatherData =  new WeatherData(city, coordinates, hourlyTemps);
+            LOCK_ACQUIRED.increment();
+            return new LoadLock(token, false);
+        } catch (RuntimeException e) {
+            LOCK_UNAVAILABLE.increment();
+            logger.warn("Load lock of location {} is unavailable, loading without it: {}", location, e.getMessage());
+            return LoadLock.NONE;
+        }
+    }
+
+    private void unlock(String location, LoadLock lock) {
+        if (lock.token() == null) {
+            return;
+        }
+        try {
+            redis.unlock("weather:" + location, lock.token());
+        } catch (RuntimeException e) {
+            // Блокировка снимется сама по истечении срока
+            logger.warn("Load lock of location {} was not released: {}", location, e.getMessage());
+        }
+    }
 
-            //Сохраняем данные о температуре в кэш на 15 минут
-            if(redis.saveWeather(weatherData, CACHE_TTL_SECONDS)){
-                logger.info("Temperature data by city \"{}\" was saved", city);
-            }else {
-                logger.info("During saving temperature data by \"{}\" city an error has occurred", city);
+    /**
+     * Обрабатывает сообщение другого экземпляра сервиса: свежий прогноз перечитывается из Redis в локальный кэш,
+     * если местоположение в нем есть; удаленный прогноз удаляется из локального кэша.
+     * Также завершает ожидание загрузки местоположения другим экземпляром. Вызывается в потоке подписки Redis,
+     * поэтому прогноз перечитывается в clusterExecutor, чтобы медленный ответ Redis не задерживал следующие сообщения
+     */
+    private void onWeatherEvent(RedisService.WeatherEvent event) {
+        String location = event.location();
+        Set<CompletableFuture<Void>> waiters = pendingUpdates.remove(location);
+        if (waiters != null) {
+            waiters.forEach(update -> update.complete(null));
+        }
+        if (event.origin().equals(instanceId)) {
+            return;
+        }
+        EVENTS_RECEIVED.increment();
+        if (event.type() == RedisService.WeatherEvent.Type.INVALIDATED) {
+            localCache.invalidate(location);
+            lastKnown.invalidate(location);
+            return;
+        }
+        LocalCache.Entry<WeatherData> localData = localCache.peek(location);
+        if (localData == null) {
+            return;
+        }
+        try {
+            clusterExecutor.execute(() -> reloadLocal(location, localData.value().coordinates()));
+        } catch (RejectedExecutionException e) {
+            // Сервис закрыт
+        }
+    }
 
+    /**
+     * Перечитывает обновленный другим экземпляром прогноз из Redis в локальный кэш.
+     * Перечитываются все поддерживаемые переменные: другой экземпляр мог загрузить переменные, которых здесь еще нет
+     */
+    private void reloadLocal(String location, Coordinates coordinates) {
+        try {
+            CachedWeather savedData = redis.getSavedWeatherWithTtl(coordinates, new ArrayList<>(ForecastOptions.supportedVariables()));
+            if (savedData != null) {
+                putLocal(savedData.weatherData(), savedData.expiresAtMillis());
+                return;
             }
-            return weatherData;
+        } catch (RuntimeException e) {
+            logger.warn("Updated forecast of location {} was not read from Redis: {}", location, e.getMessage());
+        }
+        localCache.invalidate(location);
+    }
+
+    /**
+     * Загружает прогноз из Open-Meteo API и сохраняет его в кэш
+     * @param city название города (например: "Moscow")
+     * @param coordinates координаты города
+     * @param options переменные и количество суток прогноза
+     * @return future с объектом WeatherData; при ошибке запроса future завершается исключением
+     */
+    private CompletableFuture<WeatherData> fetchWeather(String city, Coordinates coordinates, ForecastOptions options) {
+        return requestForecast(forecastUrl(coordinates.latitude(), coordinates.longitude(), options),
+                        body -> parseWeather(city, coordinates, options, body))
+                .thenApply(weatherData -> {
+                    saveWeather(weatherData);
+                    return weatherData;
+                })
+                .whenComplete((weatherData, exception) -> {
+                    if (exception != null) {
+                        Throwable cause = exception instanceof CompletionException ? exception.getCause() : exception;
+                        logger.error("During temperature request an error has occurred: - {}", cause.getMessage());
+                    }
+                });
+    }
+
+    /**
+     * Выполняет запрос к API прогноза через выключатель, замеряя время ответа вместе с разбором и считая ошибки.
+     * Запросы, отклоненные выключателем, сразу завершаются UpstreamException и в метриках запросов не учитываются
+     */
+    private <T> CompletableFuture<T> requestForecast(String url, UpstreamClient.ResponseParser<T> parser) {
+        return breaker.execute(() -> {
+            long start = System.nanoTime();
+            return upstream.getAsync(url, parser).whenComplete((result, exception) -> {
+                FETCH_LATENCY.recordSince(start);
+                (exception == null ? UPSTREAM_SUCCESS : UPSTREAM_ERRORS).increment();
+            });
+        });
+    }
+
+    private String forecastUrl(CharSequence latitudes, CharSequence longitudes, ForecastOptions options) {
+        return String.format("%s?latitude=%s&longitude=%s&hourly=%s&forecast_days=%d",
+                weatherUrl, latitudes, longitudes, String.join(",", options.variables()), options.days());
+    }
 
-        } catch (Exception exception) {
-            logger.error("During request an error has occurred: - {}", exception.getMessage());
+    /**
+     * Строит данные о погоде из ответа json с сервера, читая его потоково
+     */
+    private WeatherData parseWeather(String city, Coordinates coordinates, ForecastOptions options, ResponseBody body) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return OpenMeteoParser.parseForecast(city, coordinates, options.variables(), body.charStream());
+        } finally {
+            PARSE_LATENCY.recordSince(start);
         }
-        return null;
     }
 
-}
\ No newline at end of file
+    /**
+     * Строит данные о погоде из ответа с несколькими координатами
+     */
+    private Map<String, WeatherData> parseWeatherBatch(List<String> cities, List<Coordinates> coordinates,
+                                                       ForecastOptions options, ResponseBody body) throws IOException {
+        long start = System.nanoTime();
+        List<WeatherData> forecasts;
+        try {
+            forecasts = OpenMeteoParser.parseForecastBatch(cities, coordinates, options.variables(), body.charStream());
+        } finally {
+            PARSE_LATENCY.recordSince(start);
+        }
+        Map<String, WeatherData> weatherData = new LinkedHashMap<>();
+        for (WeatherData forecast : forecasts) {
+            weatherData.put(forecast.coordinates().key(), forecast);
+        }
+        return weatherData;
+    }
+
+    /**
+     * Сохраняет данные о погоде по нескольким местоположениям в кэш на 15 минут
+     * и сообщает об обновлении другим экземплярам сервиса
+     */
+    private void saveWeatherBatch(Map<String, WeatherData> weatherData) {
+        long expiresAt = System.currentTimeMillis() + CACHE_TTL_SECONDS * 1000L;
+        weatherData.values().forEach(data -> putLocal(data, expiresAt));
+        if (redis.saveWeatherBatch(new ArrayList<>(weatherData.values()), CACHE_TTL_SECONDS)) {
+            logger.info("Temperature data by {} cities was saved", weatherData.size());
+            publishUpdates(weatherData.keySet());
+        } else {
+            logger.info("During saving temperature data by {} cities an error has occurred", weatherData.size());
+        }
+    }
+
+    /**
+     * Сохраняет данные о погоде в кэш на 15 минут и сообщает об обновлении другим экземплярам сервиса
+     */
+    private void saveWeather(WeatherData weatherData) {
+        putLocal(weatherData, System.currentTimeMillis() + CACHE_TTL_SECONDS * 1000L);
+        if(redis.saveWeather(weatherData, CACHE_TTL_SECONDS)){
+            logger.info("Temperature data by city \"{}\" was saved", weatherData.city());
+            publishUpdates(List.of(weatherData.coordinates().key()));
+        }else {
+            logger.info("During saving temperature data by \"{}\" city an error has occurred", weatherData.city());
+        }
+    }
+
+    private void publishUpdates(Collection<String> locations) {
+        if (!clusterSettings.enabled()) {
+            return;
+        }
+        List<RedisService.WeatherEvent> events = new ArrayList<>(locations.size());
+        for (String location : locations) {
+            events.add(new RedisService.WeatherEvent(RedisService.WeatherEvent.Type.UPDATED, location, instanceId));
+        }
+        if (!redis.publishWeatherEvents(events)) {
+            logger.warn("Update of {} locations was not published to other instances", events.size());
+        }
+    }
+
+    /**
+     * Дописывает переменные прогноза к записи местоположения (Coordinates.key) в локальном кэше.
+     * Если новые данные содержат все переменные записи или запись уже устарела, запись заменяется целиком;
+     * иначе переменные объединяются, а запись живет до окончания срока самой старой из них.
+     * Так же обновляется последний известный прогноз местоположения
+     */
+    private void putLocal(WeatherData weatherData, long expiresAtMillis) {
+        long now = System.currentTimeMillis();
+        UnaryOperator<LocalCache.Entry<WeatherData>> merge = current -> {
+            if (current == null || current.isExpired(now)
+                    || weatherData.hourly().keySet().containsAll(current.value().hourly().keySet())) {
+                return new LocalCache.Entry<>(weatherData, expiresAtMillis);
+            }
+            return new LocalCache.Entry<>(current.value().merge(weatherData), Math.min(current.expiresAt(), expiresAtMillis));
+        };
+        String location = weatherData.coordinates().key();
+        localCache.compute(location, merge);
+        lastKnown.compute(location, merge);
+    }
+
+    /**
+     * Результат попытки взять блокировку загрузки местоположения
+     * @param token токен взятой блокировки или null, если загрузка идет без блокировки
+     * @param busy True, если блокировку держит другой экземпляр сервиса
+     */
+    private record LoadLock(String token, boolean busy) {
+        // Загрузка без блокировки: согласование выключено или Redis недоступен
+        static final LoadLock NONE = new LoadLock(null, false);
+        static final LoadLock BUSY = new LoadLock(null, true);
+    }
+}
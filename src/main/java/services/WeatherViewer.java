@@ -1,41 +1,309 @@
 package services;
 
-import data.Temperature;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import data.HourlyForecast;
 import data.WeatherData;
-import org.jfree.chart.ChartFactory;
-import org.jfree.chart.JFreeChart;
-import org.jfree.chart.plot.CategoryPlot;
-import org.jfree.chart.plot.PlotOrientation;
-import org.jfree.chart.renderer.category.LineAndShapeRenderer;
-import org.jfree.data.category.DefaultCategoryDataset;
-import org.jfree.svg.SVGGraphics2D;
+import spark.Filter;
 import spark.Request;
 import spark.Response;
+import spark.Route;
 import spark.Spark;
 
-import java.awt.*;
-import java.awt.geom.Ellipse2D;
-import java.awt.geom.Rectangle2D;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.ToIntFunction;
 
 
 public class WeatherViewer {
+    private static final long RENDER_CACHE_TTL_MILLIS = AppConfig.getLong("cache.render.ttl.seconds", 900) * 1000;
+    static final int BATCH_MAX_CITIES = AppConfig.getInt("batch.max-cities", 50);
+    private static final String METRICS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final Metrics.LatencyHistogram CHART_LATENCY = stageLatency("chart_render");
+    private static final Metrics.LatencyHistogram TEMPLATE_LATENCY = stageLatency("template_render");
+    private static final Metrics.LatencyHistogram JSON_LATENCY = stageLatency("json_render");
+    private static final Metrics.LatencyHistogram COMPRESS_LATENCY = stageLatency("page_compress");
+    private static final AtomicInteger requestsInFlight = new AtomicInteger();
+    // Пропущенные значения прогноза (NaN) записываются как null: Gson не записывает NaN в JSON
+    private final Gson gson = new GsonBuilder().serializeNulls()
+            .registerTypeAdapter(double[].class, new ForecastValuesAdapter()).create();
     private final WeatherService weatherService;
+    private final ChartRenderer chartRenderer;
+    // Шаблон страницы читается из resources один раз при запуске
+    private final HtmlTemplate pageTemplate = HtmlTemplate.fromClasspath("/weather_page.html");
+    // Готовые SVG-графики, HTML-страницы и JSON-ответы. Ключ содержит отпечаток прогноза,
+    // поэтому при обновлении прогноза старые записи перестают использоваться
+    private final LocalCache<String> chartCache;
+    private final LocalCache<RenderedPage> pageCache;
+    private final LocalCache<RenderedPage> jsonCache;
+    private final RateLimiter rateLimiter;
 
     public WeatherViewer(WeatherService weatherService) {
+        this(weatherService, ChartRenderer.fromConfig());
+    }
+
+    /**
+     * @param weatherService сервис прогноза погоды
+     * @param chartRenderer построитель SVG-графика
+     */
+    public WeatherViewer(WeatherService weatherService, ChartRenderer chartRenderer) {
+        this(weatherService, chartRenderer, RateLimitSettings.fromConfig());
+    }
+
+    /**
+     * @param weatherService сервис прогноза погоды
+     * @param chartRenderer построитель SVG-графика
+     * @param rateLimitSettings ограничение частоты запросов клиентов
+     */
+    public WeatherViewer(WeatherService weatherService, ChartRenderer chartRenderer, RateLimitSettings rateLimitSettings) {
         this.weatherService = weatherService;
+        this.chartRenderer = chartRenderer;
+        this.rateLimiter = new RateLimiter(rateLimitSettings);
+        int renderCacheSize = AppConfig.getInt("cache.render.max-size", 500);
+        this.chartCache = new LocalCache<>(renderCacheSize);
+        this.pageCache = new LocalCache<>(renderCacheSize);
+        this.jsonCache = new LocalCache<>(renderCacheSize);
+
+        Metrics metrics = Metrics.registry();
+        metrics.gauge("cache_hit_ratio", "Share of cache lookups served from cache",
+                () -> chartCache.stats().hitRatio(), "cache", "chart");
+        metrics.gauge("cache_hit_ratio", "Share of cache lookups served from cache",
+                () -> pageCache.stats().hitRatio(), "cache", "page");
+        metrics.gauge("cache_hit_ratio", "Share of cache lookups served from cache",
+                () -> jsonCache.stats().hitRatio(), "cache", "json");
+        metrics.gauge("http_requests_in_flight", "HTTP requests currently being processed", requestsInFlight::get);
+    }
+
+    private static Metrics.LatencyHistogram stageLatency(String stage) {
+        return Metrics.registry().histogram("weather_stage_seconds", "Latency of request processing stages", "stage", stage);
+    }
+
+    /**
+     * Возвращает метрики кэша SVG-графиков
+     * @return снимок метрик LocalCache.Stats (доля попаданий - hitRatio())
+     */
+    public LocalCache.Stats getChartCacheStats() {
+        return chartCache.stats();
+    }
+
+    /**
+     * Возвращает метрики кэша готовых HTML-страниц
+     * @return снимок метрик LocalCache.Stats (доля попаданий - hitRatio())
+     */
+    public LocalCache.Stats getPageCacheStats() {
+        return pageCache.stats();
+    }
+
+    /**
+     * Возвращает метрики кэша готовых JSON-ответов
+     * @return снимок метрик LocalCache.Stats (доля попаданий - hitRatio())
+     */
+    public LocalCache.Stats getJsonCacheStats() {
+        return jsonCache.stats();
     }
 
     public void setupRoutes() {
-        Spark.get("/weather", ((request, response) -> getWeather(request, response)));
+        setupRoutes(() -> true);
+    }
+
+    /**
+     * Регистрирует маршруты сервиса
+     * @param ready возвращает True, когда сервис готов принимать трафик (например, закончен прогрев кэшей);
+     *              до этого маршрут /ready отвечает 503
+     */
+    public void setupRoutes(BooleanSupplier ready) {
+        //Ограничение частоты запросов проверяется до обработки маршрута
+        Spark.before("/weather", admission("/weather", this::weatherMisses));
+        Spark.before("/weather/batch", admission("/weather/batch", this::batchMisses));
+        Spark.before("/api/weather", admission("/api/weather", this::jsonMisses));
+        Spark.get("/weather", timed("/weather", this::getWeather));
+        Spark.get("/weather/batch", timed("/weather/batch", this::getWeatherBatch));
+        Spark.get("/api/weather", timed("/api/weather", this::getWeatherJson));
+        Spark.get("/metrics", (request, response) -> {
+            response.type(METRICS_CONTENT_TYPE);
+            return Metrics.registry().scrape();
+        });
+        Spark.get("/ready", (request, response) -> {
+            response.type("text/plain; charset=utf-8");
+            if (ready.getAsBoolean()) {
+                return "ready";
+            }
+            response.status(503);
+            return "warming up";
+        });
+    }
+
+    /**
+     * Создает фильтр ограничения частоты запросов: запрос списывается из общего бюджета клиента,
+     * а запрос, которого нет в кэше, - еще и из бюджета промахов. При превышении бюджета
+     * запрос завершается ответом 429 с заголовком Retry-After (секунды)
+     * @param route шаблон маршрута (значение метки "route")
+     * @param misses возвращает количество городов запроса, прогноза которых нет в памяти процесса
+     * @return фильтр Spark
+     */
+    private Filter admission(String route, ToIntFunction<Request> misses) {
+        Metrics.Counter limited = Metrics.registry().counter("http_rate_limited_total",
+                "Requests rejected by the per-client rate limiter", "route", route, "budget", "requests");
+        Metrics.Counter limitedMisses = Metrics.registry().counter("http_rate_limited_total",
+                "Requests rejected by the per-client rate limiter", "route", route, "budget", "cache_misses");
+        return (request, response) -> {
+            if (!rateLimiter.isEnabled()) {
+                return;
+            }
+            String address = rateLimiter.clientAddress(request.ip(), request.headers("X-Forwarded-For"));
+            String client = rateLimiter.clientId(address, request.headers("X-Api-Key"));
+            long waitNanos = rateLimiter.tryAcquire(client);
+            Metrics.Counter rejected = limited;
+            if (waitNanos == 0) {
+                waitNanos = rateLimiter.tryAcquireMisses(client, misses.applyAsInt(request));
+                rejected = limitedMisses;
+            }
+            if (waitNanos > 0) {
+                rejected.increment();
+                response.header("Retry-After", Long.toString(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999))));
+                Spark.halt(429, "");
+            }
+        };
+    }
+
+    private int weatherMisses(Request request) {
+        if (!prefersJson(request.headers("Accept"))) {
+            return cityMisses(request.queryParams("city"), ForecastOptions.DEFAULT);
+        }
+        return jsonMisses(request);
+    }
+
+    private int jsonMisses(Request request) {
+        try {
+            ForecastOptions options = ForecastOptions.parse(request.queryParams("variables"), request.queryParams("days"));
+            return cityMisses(request.queryParams("city"), options);
+        } catch (IllegalArgumentException e) {
+            return 0;
+        }
+    }
+
+    private int batchMisses(Request request) {
+        List<String> cities = parseCities(request.queryParams("cities"));
+        if (cities.size() > BATCH_MAX_CITIES) {
+            return 0;
+        }
+        try {
+            ForecastOptions options = ForecastOptions.parse(request.queryParams("variables"), request.queryParams("days"));
+            int misses = 0;
+            for (String city : cities) {
+                misses += cityMisses(city, options);
+            }
+            return misses;
+        } catch (IllegalArgumentException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Запросы без города или с некорректными параметрами не обращаются к кэшу и API (на них отвечает обработчик маршрута)
+     */
+    private int cityMisses(String city, ForecastOptions options) {
+        return city == null || city.isEmpty() || weatherService.isCachedLocally(city, options) ? 0 : 1;
+    }
+
+    /**
+     * Разбирает список городов через запятую, пустые названия пропускаются
+     */
+    private static List<String> parseCities(String citiesParam) {
+        List<String> cities = new ArrayList<>();
+        if (citiesParam != null) {
+            for (String city : citiesParam.split(",")) {
+                if (!city.isBlank()) {
+                    cities.add(city.trim());
+                }
+            }
+        }
+        return cities;
+    }
+
+    /**
+     * Оборачивает обработчик маршрута: замеряет полное время обработки запроса
+     * и считает ответы по классу кода статуса (2xx, 4xx, ...). Счетчики берутся из реестра один раз
+     * при создании маршрута, а не на каждый запрос
+     * @param route шаблон маршрута (значение метки "route")
+     * @param handler обработчик маршрута
+     * @return обработчик с замером времени
+     */
+    private static Route timed(String route, Route handler) {
+        Metrics.LatencyHistogram latency = Metrics.registry().histogram("http_request_seconds",
+                "HTTP request processing time by route", "route", route);
+        Metrics.Counter[] responses = new Metrics.Counter[5];
+        for (int i = 0; i < responses.length; i++) {
+            responses[i] = Metrics.registry().counter("http_responses_total", "HTTP responses by route and status class",
+                    "route", route, "status", (i + 1) + "xx");
+        }
+        return (request, response) -> {
+            long start = System.nanoTime();
+            requestsInFlight.incrementAndGet();
+            int status = 500;
+            try {
+                Object body = handler.handle(request, response);
+                status = response.raw().getStatus();
+                return body;
+            } finally {
+                requestsInFlight.decrementAndGet();
+                latency.recordSince(start);
+                int statusClass = status / 100;
+                responses[statusClass >= 1 && statusClass <= 5 ? statusClass - 1 : 4].increment();
+            }
+        };
+    }
+
+    /**
+     * Обрабатывает HTTP-запрос прогноза сразу для нескольких городов.
+     * Города передаются параметром "cities" через запятую, например: /weather/batch?cities=Moscow,Paris.
+     * Необязательные параметры: "variables" - почасовые переменные Open-Meteo через запятую (по умолчанию temperature_2m)
+     * и "days" - количество суток прогноза (по умолчанию 1)
+     *
+     * @param request HTTP-запрос, должен содержать параметр "cities"
+     * @param response HTTP-ответ, в который будет установлен тип содержимого
+     * @return JSON-объект вида {"город": прогноз или null} или пустая строка в случае ошибки
+     */
+    String getWeatherBatch(Request request, Response response) {
+        List<String> cities = parseCities(request.queryParams("cities"));
+        if (cities.isEmpty() || cities.size() > BATCH_MAX_CITIES) {
+            return error(response, 400);
+        }
+        ForecastOptions options;
+        try {
+            options = ForecastOptions.parse(request.queryParams("variables"), request.queryParams("days"));
+        } catch (IllegalArgumentException e) {
+            return error(response, 400);
+        }
+
+        Map<String, WeatherData> weatherData;
+        try {
+            weatherData = weatherService.getWeatherBatch(cities, options);
+        } catch (Exception e) {
+            return error(response, failureStatus(e));
+        }
+        long start = System.nanoTime();
+        String json = gson.toJson(weatherData);
+        JSON_LATENCY.recordSince(start);
+        response.type("application/json");
+        return json;
     }
 
     /**
@@ -44,24 +312,25 @@ public class WeatherViewer {
      * <p>Метод выполняет следующие действия:
      * <ol>
      *   <li>Извлекает название города из параметров запроса</li>
+     *   <li>Если клиент предпочитает JSON (заголовок Accept), отвечает как /api/weather</li>
      *   <li>Получает данные о погоде через WeatherService</li>
      *   <li>Генерирует SVG-график температуры</li>
-     *   <li>Загружает HTML-шаблон страницы</li>
-     *   <li>Заполняет шаблон данными о погоде</li>
+     *   <li>Заполняет заранее разобранный HTML-шаблон данными о погоде</li>
      *   <li>Возвращает сформированную HTML-страницу</li>
      * </ol>
      *
      * @param request HTTP-запрос, должен содержать параметр "city"
      * @param response HTTP-ответ, в который будет установлен тип содержимого
-     * @return HTML-страница с информацией о погоде или null в случае ошибки
+     * @return пустая строка (страница записана в поток ответа или произошла ошибка)
      */
-    String getWeather(Request request, Response response) {
-        System.out.println(request.body());
+    String getWeather(Request request, Response response) throws IOException {
+        if (prefersJson(request.headers("Accept"))) {
+            return writeWeatherJson(request, response, "Accept, Accept-Encoding");
+        }
         //Получаем город из запроса и проверяем его
         String city = request.queryParams("city");
         if (city == null || city.isEmpty()) {
-            response.status(404);
-            return null;
+            return error(response, 404);
         }
 
         //Запрашиваем погоду по городу
@@ -69,124 +338,323 @@ public class WeatherViewer {
         try {
             weatherData = weatherService.getWeather(city);
         } catch (Exception e) {
-            response.status(500);
-            return null;
+            return error(response, failureStatus(e));
         }
+        if (weatherData == null) {
+            return error(response, 404);
+        }
+
+        //Возвращаем HTML-страницу или 304, если у клиента уже есть эта версия
+        RenderedPage page = renderPage(city, weatherData);
+        return writeBody(request, response, page, "text/html; charset=utf-8", "Accept, Accept-Encoding",
+                weatherService.getExpiresAt(weatherData.coordinates()));
+    }
 
-        //Строим SVG график
-        String svg = generateTemperatureChartSVG(weatherData);
+    /**
+     * Обрабатывает HTTP-запрос прогноза в формате JSON, например: /api/weather?city=Moscow.
+     * Необязательные параметры "variables" и "days" - как у /weather/batch.
+     * График и HTML-шаблон не строятся: прогноз берется из кэша WeatherService,
+     * а сериализованный и сжатый ответ кэшируется для каждой версии прогноза
+     *
+     * @param request HTTP-запрос, должен содержать параметр "city"
+     * @param response HTTP-ответ
+     * @return пустая строка (тело записано в поток ответа или произошла ошибка)
+     */
+    String getWeatherJson(Request request, Response response) throws IOException {
+        return writeWeatherJson(request, response, "Accept-Encoding");
+    }
 
-        //Читаем HTML страницу из resources
-        String htmlTemplate;
+    private String writeWeatherJson(Request request, Response response, String vary) throws IOException {
+        String city = request.queryParams("city");
+        if (city == null || city.isEmpty()) {
+            return error(response, 404);
+        }
+        ForecastOptions options;
         try {
-            htmlTemplate = Files.readString(
-                    Paths.get("src/main/resources/weather_page.html"),
-                    StandardCharsets.UTF_8
-            );
-        } catch (IOException e) {
-            return null;
+            options = ForecastOptions.parse(request.queryParams("variables"), request.queryParams("days"));
+        } catch (IllegalArgumentException e) {
+            return error(response, 400);
         }
 
-        //Вставляем в templates название города и график
-        String html = htmlTemplate
-                .replace("{{city}}", city)
-                .replace("{{temperature}}", getCurrentTemperature(weatherData.temperature()))
-                .replace("{{chart}}", svg);
+        WeatherData weatherData;
+        try {
+            weatherData = weatherService.getWeather(city, options);
+        } catch (Exception e) {
+            return error(response, failureStatus(e));
+        }
+        if (weatherData == null) {
+            return error(response, 404);
+        }
 
-        //Возвращаем ответ в виде HTML страницы
-        response.type("text/html");
-        return html;
+        // Как и страница, ответ кэшируется по нормализованному названию города
+        String jsonKey = CityName.normalize(city) + '/' + options.key() + ':' + weatherData.fingerprint();
+        RenderedPage json = jsonCache.get(jsonKey);
+        if (json == null) {
+            long start = System.nanoTime();
+            json = RenderedPage.of(gson.toJson(weatherData.withCity(CityName.displayName(city))), weatherData.fingerprint() + '-' + Integer.toHexString(jsonKey.hashCode()));
+            JSON_LATENCY.recordSince(start);
+            jsonCache.put(jsonKey, json, System.currentTimeMillis() + RENDER_CACHE_TTL_MILLIS);
+        }
+        return writeBody(request, response, json, "application/json; charset=utf-8", vary, weatherService.getExpiresAt(weatherData.coordinates()));
     }
 
     /**
-     * Принимает на вход список значений температуры ко времени и находит ближайшее по времени значение
-     * @param temperatureList лист значений
-     * @return температуру на текущий час, String
+     * Выбирает представление по заголовку Accept: JSON, только если application/json
+     * имеет больший вес, чем text/html. При равных весах (например, браузер или клиент без Accept) отдается HTML
+     * @param accept значение заголовка Accept или null
+     */
+    static boolean prefersJson(String accept) {
+        if (accept == null) {
+            return false;
+        }
+        double json = 0;
+        double html = 0;
+        for (String range : accept.split(",")) {
+            String[] parts = range.split(";");
+            String type = parts[0].trim().toLowerCase(Locale.ROOT);
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (type.equals("application/json") || type.equals("application/*") || type.equals("*/*")) {
+                json = Math.max(json, quality);
+            }
+            if (type.equals("text/html") || type.equals("text/*") || type.equals("*/*")) {
+                html = Math.max(html, quality);
+            }
+        }
+        return json > html;
+    }
+
+    /**
+     * Отправляет готовый ответ с заголовками кэширования: ETag, Last-Modified и Cache-Control
+     * со сроком, оставшимся до обновления прогноза; прогноз с истекшим сроком помечается заголовком Warning: 110.
+     * Если клиент прислал совпадающий If-None-Match
+     * (или, без него, If-Modified-Since не раньше времени изменения), отвечает 304 без тела.
+     * Сжатое тело пишется напрямую в поток ответа, чтобы Spark не сжимал его повторно
+     * @param contentType тип содержимого
+     * @param vary заголовки запроса, от которых зависит ответ
+     * @param expiresAtMillis момент истечения срока кэширования прогноза (epoch millis)
+     * @return пустая строка (тело уже записано)
+     */
+    private String writeBody(Request request, Response response, RenderedPage page, String contentType, String vary,
+                             long expiresAtMillis) throws IOException {
+        boolean gzip = acceptsGzip(request.headers("Accept-Encoding"));
+        String etag = page.etag(gzip);
+        long maxAgeSeconds = Math.max(0, (expiresAtMillis - System.currentTimeMillis()) / 1000);
+        if (expiresAtMillis <= System.currentTimeMillis()) {
+            //Срок жизни прогноза истек: прогноз обновляется или API прогноза недоступно
+            response.header("Warning", "110 - \"Response is Stale\"");
+        }
+        response.header("ETag", etag);
+        response.header("Last-Modified", httpDate(page.lastModifiedMillis()));
+        response.header("Cache-Control", "public, max-age=" + maxAgeSeconds);
+        response.header("Vary", vary);
+        response.type(contentType);
+
+        String ifNoneMatch = request.headers("If-None-Match");
+        boolean notModified = ifNoneMatch != null
+                ? matchesEtag(ifNoneMatch, etag)
+                : notModifiedSince(request.headers("If-Modified-Since"), page.lastModifiedMillis());
+        if (notModified) {
+            response.status(304);
+            return "";
+        }
+
+        byte[] body = page.body(gzip);
+        if (gzip) {
+            response.header("Content-Encoding", "gzip");
+        }
+        HttpServletResponse raw = response.raw();
+        raw.setContentLength(body.length);
+        OutputStream out = raw.getOutputStream();
+        out.write(body);
+        out.flush();
+        return "";
+    }
+
+    /**
+     * Возвращает код ответа при ошибке загрузки прогноза: 503, если API Open-Meteo недоступно
+     * (в том числе выключатель разомкнут) и сохраненного прогноза нет, иначе 500
+     */
+    static int failureStatus(Exception e) {
+        Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+        return cause instanceof UpstreamException ? 503 : 500;
+    }
+
+    /**
+     * Завершает запрос с кодом ошибки и пустым телом.
+     * Если вернуть из маршрута null, Spark считает маршрут ненайденным и заменяет код на 404
+     * @param status код ответа
+     * @return пустое тело
+     */
+    private static String error(Response response, int status) {
+        response.status(status);
+        return "";
+    }
+
+    /**
+     * Проверяет, принимает ли клиент gzip (с учетом "*" и q=0)
+     * @param acceptEncoding значение заголовка Accept-Encoding или null
      */
-    private String getCurrentTemperature(List<Temperature> temperatureList) {
-        LocalTime timeNow = LocalDateTime.now().toLocalTime();
-        DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm");
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(parameter.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
 
-        double closestTemp = 0;
-        long minDiff = Long.MAX_VALUE;
-        for (Temperature temperature : temperatureList) {
-            // Парсим время из температуры
-            LocalTime tempTime = LocalTime.parse(temperature.time(), timeFormatter);
-            // Вычисляем разницу во минутах между текущим временем и временем в данных
-            long diff = Math.abs(ChronoUnit.MINUTES.between(timeNow, tempTime));
-            // Если нашли более близкое по времени значение
-            if (diff < minDiff) {
-                minDiff = diff;
-                closestTemp = temperature.value();
-                System.out.println(String.format("NOW - %s, TIME - %s, TEMP - %s", timeNow, tempTime, closestTemp));
+    /**
+     * Сравнивает ETag со списком из If-None-Match (слабое сравнение, как требует RFC 9110)
+     * @param ifNoneMatch значение заголовка If-None-Match
+     * @param etag ETag текущей версии в кавычках
+     */
+    static boolean matchesEtag(String ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
             }
         }
-        return String.format("%.1f", closestTemp);
+        return false;
+    }
+
+    private static boolean notModifiedSince(String ifModifiedSince, long lastModifiedMillis) {
+        if (ifModifiedSince == null) {
+            return false;
+        }
+        try {
+            return ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli() >= lastModifiedMillis;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private static String httpDate(long epochMillis) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(epochMillis).atZone(ZoneOffset.UTC));
+    }
+
+    /**
+     * Строит HTML-страницу с прогнозом или берет готовую из кэша.
+     * Страница сжимается один раз при построении, ETag строится из отпечатка прогноза
+     * и подставляемых в шаблон значений. Страница кэшируется по нормализованному названию города
+     * и показывает CityName.displayName, поэтому варианты написания одного города не вытесняют друг друга из кэша,
+     * а график - по местоположению, потому что зависит только от прогноза
+     * @param city название города из запроса
+     * @param weatherData данные о погоде
+     * @return готовая страница
+     */
+    RenderedPage renderPage(String city, WeatherData weatherData) {
+        //Страница зависит от города, версии прогноза и температуры на текущий час
+        String fingerprint = weatherData.fingerprint();
+        String currentTemperature = getCurrentTemperature(weatherData.temperature());
+        String pageKey = CityName.normalize(city) + ':' + fingerprint + ':' + currentTemperature;
+        RenderedPage cachedPage = pageCache.get(pageKey);
+        if (cachedPage != null) {
+            return cachedPage;
+        }
+
+        //Строим SVG график или берем готовый для этой версии прогноза
+        String chartKey = weatherData.coordinates().key() + ':' + fingerprint;
+        String svg = chartCache.get(chartKey);
+        if (svg == null) {
+            long start = System.nanoTime();
+            svg = generateTemperatureChartSVG(weatherData);
+            CHART_LATENCY.recordSince(start);
+            chartCache.put(chartKey, svg, System.currentTimeMillis() + RENDER_CACHE_TTL_MILLIS);
+        }
+
+        //Вставляем в шаблон название города и график. Название города пришло из запроса, поэтому экранируется
+        String displayName = CityName.displayName(city);
+        long start = System.nanoTime();
+        String html = pageTemplate.render(Map.of(
+                "city", HtmlTemplate.escape(displayName),
+                "temperature", currentTemperature,
+                "chart", svg));
+        TEMPLATE_LATENCY.recordSince(start);
+        start = System.nanoTime();
+        RenderedPage page = RenderedPage.of(html, fingerprint + '-' + Integer.toHexString((displayName + ':' + currentTemperature).hashCode()));
+        COMPRESS_LATENCY.recordSince(start);
+        pageCache.put(pageKey, page, System.currentTimeMillis() + RENDER_CACHE_TTL_MILLIS);
+        return page;
+    }
+
+    /**
+     * Находит значение температуры на текущий час: номер значения вычисляется по началу ряда и шагу
+     * @param forecast почасовая температура
+     * @return температуру на текущий час, String
+     */
+    static String getCurrentTemperature(HourlyForecast forecast) {
+        int index = forecast.indexAt(System.currentTimeMillis() / 1000);
+        return String.format("%.1f", index < 0 ? 0 : forecast.value(index));
     }
 
     /**
-     * Генерирует SVG-график температуры на основе данных о погоде
+     * Генерирует SVG-график температуры на основе данных о погоде.
+     * Буфер выделяется по количеству точек: график на сутки занимает около 4 КБ, на 16 суток - около 20 КБ
      * @param weatherData объект с данными о температуре
      * @return SVG-изображение графика в виде строки XML
      */
-    private String generateTemperatureChartSVG(WeatherData weatherData) {
-        // Создаем набор данных для графика
-        DefaultCategoryDataset dataset = new DefaultCategoryDataset();
-        // Заполняем данными о температуре
-        for (Temperature temperature : weatherData.temperature()) {
-            dataset.addValue(temperature.value(), "Temperature", temperature.time().substring(0,5));
-        }
-
-        // - Без заголовка
-        // - Ось X: "Hours" (Часы)
-        // - Ось Y: "Temperature (C)"
-        // - Ориентация: вертикальная
-        // - Без легенды, подсказок и URL
-        JFreeChart chart = ChartFactory.createLineChart(
-                null,
-                "Hours",
-                "Temperature (C)",
-                dataset,
-                PlotOrientation.VERTICAL,
-                false,
-                false,
-                false
-        );
-
-        //Применяем кастомный дизайн к графику
-        customizeChartDesign(chart);
-
-        //Рисуем график в SVG
-        SVGGraphics2D g2 = new SVGGraphics2D(950, 500);
-        chart.draw(g2, new Rectangle2D.Double(0, 0, 950, 500));
-        return g2.getSVGElement();
-    }
-
-    /**
-     * Настраивает дизайн графика
-     * @param chart объект графика для настройки
-     */
-    private void customizeChartDesign(JFreeChart chart) {
-
-        // Получаем область рисования графика
-        CategoryPlot plot = chart.getCategoryPlot();
-        LineAndShapeRenderer renderer = (LineAndShapeRenderer) plot.getRenderer();
-
-        // Устанавливаем зеленый цвет линии
-        renderer.setSeriesPaint(0, new Color(8, 113, 0));
-        // Толщина линии графика - 3 пикселя
-        renderer.setSeriesStroke(0, new BasicStroke(2f));
-        // Включаем отображение точек на графике
-        renderer.setSeriesShapesVisible(0, true);
-        // Форма точек - круги диаметром 6 пикселей
-        renderer.setSeriesShape(0, new Ellipse2D.Double(-3, -3, 6, 6));
-        // Белый фон области графика
-        plot.setBackgroundPaint(new Color(255, 255, 255));
-        // Цвет сетки по оси Y (полупрозрачный зеленый)
-        plot.setRangeGridlinePaint(new Color(0, 30, 1, 161));
-
-        // Настраиваем шрифт меток:
-        Font axisFont = new Font("Ubuntu", Font.BOLD, 10);
-        plot.getDomainAxis().setTickLabelFont(axisFont);
-    }
-}
\ No newline at end of file
+    String generateTemperatureChartSVG(WeatherData weatherData) {
+        HourlyForecast temperature = weatherData.temperature();
+        StringBuilder buffer = new StringBuilder(3 * 1024 + 48 * (temperature == null ? 0 : temperature.size()));
+        ForecastOptions.VariableLabel label = ForecastOptions.label(WeatherData.TEMPERATURE);
+        chartRenderer.render(temperature, label.name(), label.unit(), buffer);
+        return buffer.toString();
+    }
+
+    /**
+     * Массив значений прогноза в JSON: пропущенное значение (NaN) записывается как null. Адаптер только для записи ответов
+     */
+    private static final class ForecastValuesAdapter extends TypeAdapter<double[]> {
+        @Override
+        public void write(JsonWriter out, double[] values) throws IOException {
+            if (values == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginArray();
+            for (double value : values) {
+                if (Double.isFinite(value)) {
+                    out.value(value);
+                } else {
+                    out.nullValue();
+                }
+            }
+            out.endArray();
+        }
+
+        @Override
+        public double[] read(JsonReader in) {
+            throw new UnsupportedOperationException("Forecast values are only written to JSON responses");
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package data;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HourlyForecastTest {
+    private static final long MIDNIGHT = 1_700_006_400L;
+    private final HourlyForecast forecast = HourlyForecast.hourly(MIDNIGHT, 10.0, 11.0, 12.0);
+
+    @Test
+    public void indexAt_shouldReturnNearestHour_WhenTimeIsInsideForecast() {
+        //Arrange
+        //Act
+        int beforeHalfHour = forecast.indexAt(MIDNIGHT + 3600 + 29 * 60);
+        int afterHalfHour = forecast.indexAt(MIDNIGHT + 3600 + 31 * 60);
+        //Assert
+        assertEquals(1, beforeHalfHour);
+        assertEquals(2, afterHalfHour);
+        assertEquals(12.0, forecast.value(afterHalfHour));
+    }
+
+    @Test
+    public void indexAt_shouldClampToBounds_WhenTimeIsOutsideForecast() {
+        //Arrange
+        //Act
+        int before = forecast.indexAt(MIDNIGHT - 86_400);
+        int after = forecast.indexAt(MIDNIGHT + 86_400);
+        //Assert
+        assertEquals(0, before);
+        assertEquals(2, after);
+        assertEquals(-1, HourlyForecast.hourly(MIDNIGHT).indexAt(MIDNIGHT));
+    }
+
+    @Test
+    public void timeLabel_shouldFormatHourOfDay_InUtc() {
+        //Arrange
+        //Act
+        String label = forecast.timeLabel(2);
+        //Assert
+        assertEquals("02:00", label);
+    }
+
+    @Test
+    public void limitDays_shouldKeepWholeDays_AndReturnSameSeriesWhenShorter() {
+        //Arrange
+        HourlyForecast twoDays = HourlyForecast.hourly(MIDNIGHT, new double[48]);
+        //Act
+        HourlyForecast oneDay = twoDays.limitDays(1);
+        //Assert
+        assertEquals(2, twoDays.days());
+        assertEquals(24, oneDay.size());
+        assertEquals(1, oneDay.days());
+        assertSame(forecast, forecast.limitDays(1));
+        assertEquals(1, forecast.days());
+    }
+}
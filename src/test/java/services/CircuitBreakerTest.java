@@ -0,0 +1,98 @@
+package services;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void execute_shouldRejectWithoutCalling_AfterConsecutiveFailures() {
+        //Arrange
+        CircuitBreaker breaker = new CircuitBreaker("test-open", new BreakerSettings(3, 60_000, 8, 0));
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            breaker.execute(() -> failing(calls, new IOException("timeout")));
+        }
+        //Act
+        CompletableFuture<String> rejected = breaker.execute(() -> failing(calls, new IOException("timeout")));
+        //Assert
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(3, calls.get());
+        assertEquals(503, upstreamStatus(rejected));
+    }
+
+    @Test
+    public void execute_shouldLetOneProbeThrough_AndCloseOnSuccess() throws Exception {
+        //Arrange
+        CircuitBreaker breaker = new CircuitBreaker("test-probe", new BreakerSettings(1, 50, 8, 0));
+        breaker.execute(() -> failing(new AtomicInteger(), new UpstreamException("503", 503)));
+        Thread.sleep(80);
+        CompletableFuture<String> probeResponse = new CompletableFuture<>();
+        //Act
+        CompletableFuture<String> probe = breaker.execute(() -> probeResponse);
+        CompletableFuture<String> duringProbe = breaker.execute(() -> CompletableFuture.completedFuture("ok"));
+        CircuitBreaker.State stateDuringProbe = breaker.state();
+        probeResponse.complete("ok");
+        //Assert
+        assertEquals(CircuitBreaker.State.HALF_OPEN, stateDuringProbe);
+        assertEquals(503, upstreamStatus(duringProbe));
+        assertEquals("ok", probe.join());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    public void execute_shouldRejectCallsOverBulkheadLimit_AndIgnoreClientErrors() {
+        //Arrange
+        CircuitBreaker breaker = new CircuitBreaker("test-bulkhead", new BreakerSettings(1, 60_000, 1, 0));
+        CompletableFuture<String> slowResponse = new CompletableFuture<>();
+        CompletableFuture<String> slow = breaker.execute(() -> slowResponse);
+        //Act
+        CompletableFuture<String> overLimit = breaker.execute(() -> CompletableFuture.completedFuture("ok"));
+        slowResponse.completeExceptionally(new UpstreamException("400", 400));
+        CompletableFuture<String> afterRelease = breaker.execute(() -> CompletableFuture.completedFuture("ok"));
+        //Assert
+        assertTrue(slow.isCompletedExceptionally());
+        assertEquals(503, upstreamStatus(overLimit));
+        assertEquals("ok", afterRelease.join());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    public void execute_shouldIgnoreSlowSuccess_StartedBeforeBreakerOpened() throws Exception {
+        //Arrange
+        CircuitBreaker breaker = new CircuitBreaker("test-generation", new BreakerSettings(1, 50, 8, 0));
+        CompletableFuture<String> slowResponse = new CompletableFuture<>();
+        CompletableFuture<String> slow = breaker.execute(() -> slowResponse);
+        breaker.execute(() -> failing(new AtomicInteger(), new IOException("timeout")));
+        //Act
+        slowResponse.complete("late");
+        CircuitBreaker.State afterSlowSuccess = breaker.state();
+        Thread.sleep(80);
+        CompletableFuture<String> probeResponse = new CompletableFuture<>();
+        CompletableFuture<String> probe = breaker.execute(() -> probeResponse);
+        CompletableFuture<String> duringProbe = breaker.execute(() -> CompletableFuture.completedFuture("ok"));
+        probeResponse.complete("ok");
+        //Assert
+        assertEquals("late", slow.join());
+        assertEquals(CircuitBreaker.State.OPEN, afterSlowSuccess);
+        assertEquals(503, upstreamStatus(duringProbe));
+        assertEquals("ok", probe.join());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    private static CompletableFuture<String> failing(AtomicInteger calls, Exception error) {
+        calls.incrementAndGet();
+        return CompletableFuture.failedFuture(error);
+    }
+
+    private static int upstreamStatus(CompletableFuture<?> future) {
+        CompletionException exception = assertThrows(CompletionException.class, future::join);
+        return ((UpstreamException) exception.getCause()).getStatusCode();
+    }
+}
@@ -0,0 +1,50 @@
+package services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CityNameTest {
+
+    @Test
+    public void normalize_shouldTrimCollapseWhitespace_AndFoldCase() {
+        //Arrange
+        //Act
+        String normalized = CityName.normalize("  New\t  YORK ");
+        //Assert
+        assertEquals("new york", normalized);
+    }
+
+    @Test
+    public void normalize_shouldGiveSameKey_ForCompatibleUnicodeForms() {
+        //Arrange
+        String composed = "Zürich";
+        String decomposed = "Zu\u0308rich";
+        String fullWidth = "Ｍｏｓｃｏｗ";
+        //Act
+        //Assert
+        assertEquals("zürich", CityName.normalize(composed));
+        assertEquals(CityName.normalize(composed), CityName.normalize(decomposed));
+        assertEquals("moscow", CityName.normalize(fullWidth));
+        assertEquals("москва", CityName.normalize("МОСКВА"));
+        assertEquals(CityName.normalize("Straße"), CityName.normalize("STRASSE"));
+    }
+
+    @Test
+    public void normalize_shouldReturnEmptyString_ForBlankName() {
+        //Arrange
+        //Act
+        //Assert
+        assertEquals("", CityName.normalize(" \t "));
+    }
+
+    @Test
+    public void displayName_shouldCapitalizeWords_OfNormalizedName() {
+        //Arrange
+        //Act
+        //Assert
+        assertEquals("New York", CityName.displayName("  new   YORK "));
+        assertEquals("Санкт-Петербург", CityName.displayName("САНКТ-ПЕТЕРБУРГ"));
+        assertEquals(CityName.displayName("Moscow"), CityName.displayName(" mOSCOW"));
+    }
+}
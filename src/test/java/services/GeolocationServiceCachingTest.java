@@ -0,0 +1,112 @@
+package services;
+
+import data.Coordinates;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import stubs.FakeRedisServer;
+import stubs.OpenMeteoStub;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GeolocationServiceCachingTest {
+    private FakeRedisServer redisServer;
+    private OpenMeteoStub openMeteo;
+    private RedisService redisService;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        redisServer = new FakeRedisServer();
+        openMeteo = new OpenMeteoStub();
+        redisService = new RedisService(RedisSettings.of(redisServer.host(), redisServer.port()));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        redisService.close();
+        redisServer.close();
+        openMeteo.close();
+    }
+
+    @Test
+    public void getCoordinates_shouldUseRedis_WhenAnotherInstanceResolvedCity() {
+        //Arrange
+        GeolocationService first = new GeolocationService(openMeteo.geocodingUrl(), redisService);
+        GeolocationService second = new GeolocationService(openMeteo.geocodingUrl(), redisService);
+        Coordinates expected = first.getCoordinates("Moscow");
+        //Act
+        Coordinates coordinates = second.getCoordinates(" moscow");
+        second.getCoordinates("Moscow");
+        //Assert
+        assertEquals(expected, coordinates);
+        assertEquals(1, openMeteo.geocodingRequests());
+        assertEquals(new GeolocationService.CacheStats(1, 1, 0), second.getCacheStats());
+    }
+
+    @Test
+    public void getCoordinates_shouldCacheNegativeResult_WhenCityNotFound() {
+        //Arrange
+        GeolocationService service = new GeolocationService(openMeteo.geocodingUrl(), redisService);
+        //Act
+        Coordinates first = service.getCoordinates("Nowhereville");
+        Coordinates second = service.getCoordinates("Nowhereville");
+        //Assert
+        assertNull(first);
+        assertNull(second);
+        assertEquals(1, openMeteo.geocodingRequests());
+    }
+
+    @Test
+    public void getCoordinates_shouldEncodeNormalizedName_AndReuseItForOtherSpellings() {
+        //Arrange
+        GeolocationService service = new GeolocationService(openMeteo.geocodingUrl(), redisService);
+        Coordinates expected = service.getCoordinates("Saint  Louis & Co");
+        //Act
+        Coordinates coordinates = service.getCoordinates(" SAINT LOUIS & CO\t");
+        //Assert
+        assertNotNull(expected);
+        assertEquals(expected, coordinates);
+        assertEquals("saint louis & co", openMeteo.lastGeocodingName());
+        assertEquals(1, openMeteo.geocodingRequests());
+    }
+
+    @Test
+    public void getCoordinatesAsync_shouldSendOneRequest_ForConcurrentMisses() {
+        //Arrange
+        GeolocationService service = new GeolocationService(openMeteo.geocodingUrl(), redisService);
+        openMeteo.setLatencyMillis(100);
+        List<CompletableFuture<Coordinates>> futures = new ArrayList<>();
+        //Act
+        for (String city : List.of("Paris", "paris", " PARIS ", "Paris")) {
+            futures.add(service.getCoordinatesAsync(city));
+        }
+        //Assert
+        for (CompletableFuture<Coordinates> future : futures) {
+            assertEquals(new Coordinates("48.85341", "2.34880"), future.join());
+        }
+        assertEquals(1, openMeteo.geocodingRequests());
+    }
+
+    @Test
+    public void preload_shouldFillCache_FromSeedFile(@TempDir Path directory) throws Exception {
+        //Arrange
+        Path seedFile = directory.resolve("cities.csv");
+        Files.writeString(seedFile, "# city;latitude;longitude\nBerlin;52.52437;13.41053\nbroken line\n"
+                + "Nowhere;north;13.41053\nFaraway;95.0;13.41053\nOffmap;52.52437;-180.5\n");
+        GeolocationService service = new GeolocationService(openMeteo.geocodingUrl(), redisService);
+        //Act
+        int loaded = service.preload(seedFile);
+        Coordinates coordinates = service.getCoordinates("Berlin");
+        //Assert
+        assertEquals(1, loaded);
+        assertEquals(new Coordinates("52.52437", "13.41053"), coordinates);
+        assertEquals(0, openMeteo.geocodingRequests());
+    }
+}
@@ -0,0 +1,49 @@
+package services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HtmlTemplateTest {
+
+    @Test
+    public void render_shouldReplaceAllPlaceholders() {
+        //Arrange
+        HtmlTemplate template = HtmlTemplate.parse("<title>{{city}}</title><h1>{{city}}: {{ temperature }}°C</h1>{{chart}}");
+        //Act
+        String html = template.render(Map.of("city", "Moscow", "temperature", "15.5", "chart", "<svg/>"));
+        //Assert
+        assertEquals("<title>Moscow</title><h1>Moscow: 15.5°C</h1><svg/>", html);
+    }
+
+    @Test
+    public void render_shouldThrow_WhenValueMissing() {
+        //Arrange
+        HtmlTemplate template = HtmlTemplate.parse("<h1>{{city}}</h1>");
+        //Act
+        //Assert
+        assertThrows(IllegalArgumentException.class, () -> template.render(Map.of()));
+    }
+
+    @Test
+    public void fromClasspath_shouldLoadWeatherPage() {
+        //Arrange
+        HtmlTemplate template = HtmlTemplate.fromClasspath("/weather_page.html");
+        //Act
+        String html = template.render(Map.of("city", "Moscow", "temperature", "15.5", "chart", "<svg/>"));
+        //Assert
+        assertTrue(html.contains("The weather in Moscow"));
+        assertFalse(html.contains("{{"));
+    }
+
+    @Test
+    public void escape_shouldReplaceMarkupCharacters() {
+        //Act
+        String escaped = HtmlTemplate.escape("<script>alert('x' & \"y\")</script>");
+        //Assert
+        assertEquals("&lt;script&gt;alert(&#39;x&#39; &amp; &quot;y&quot;)&lt;/script&gt;", escaped);
+        assertEquals("Москва", HtmlTemplate.escape("Москва"));
+    }
+}
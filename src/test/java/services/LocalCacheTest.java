@@ -0,0 +1,51 @@
+package services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalCacheTest {
+
+    @Test
+    public void get_shouldReturnValue_WhenNotExpired() {
+        //Arrange
+        LocalCache<String> cache = new LocalCache<>(10);
+        cache.put("Moscow", "data", System.currentTimeMillis() + 60_000);
+        //Act
+        String value = cache.get("Moscow");
+        //Assert
+        assertEquals("data", value);
+        assertEquals(1, cache.stats().hits());
+    }
+
+    @Test
+    public void get_shouldReturnNull_WhenExpired() throws InterruptedException {
+        //Arrange
+        LocalCache<String> cache = new LocalCache<>(10);
+        cache.put("Moscow", "data", System.currentTimeMillis() + 50);
+        //Act
+        Thread.sleep(100);
+        String value = cache.get("Moscow");
+        //Assert
+        assertNull(value);
+        assertEquals(1, cache.stats().misses());
+        assertEquals(0, cache.stats().size());
+    }
+
+    @Test
+    public void put_shouldEvictLeastRecentlyUsed_WhenSizeExceeded() {
+        //Arrange
+        LocalCache<String> cache = new LocalCache<>(2);
+        long expiresAt = System.currentTimeMillis() + 60_000;
+        cache.put("Moscow", "1", expiresAt);
+        cache.put("Berlin", "2", expiresAt);
+        cache.get("Moscow");
+        //Act
+        cache.put("Paris", "3", expiresAt);
+        //Assert
+        assertNull(cache.get("Berlin"));
+        assertEquals("1", cache.get("Moscow"));
+        assertEquals("3", cache.get("Paris"));
+        assertEquals(1, cache.stats().evictions());
+    }
+}
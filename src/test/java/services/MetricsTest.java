@@ -0,0 +1,77 @@
+package services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsTest {
+
+    @Test
+    public void bucketIndex_shouldKeepValueBelowUpperBound_WithinOneEighthError() {
+        //Arrange
+        long[] values = {0, 1, 7, 8, 15, 16, 17, 999, 1_000, 123_456, 10_000_000};
+        for (long value : values) {
+            //Act
+            int index = Metrics.LatencyHistogram.bucketIndex(value);
+            long upperBound = Metrics.LatencyHistogram.upperBoundMicros(index);
+            long lowerBound = index == 0 ? 0 : Metrics.LatencyHistogram.upperBoundMicros(index - 1);
+            //Assert
+            assertTrue(lowerBound <= value && value < upperBound, "value " + value);
+            assertTrue(upperBound - lowerBound <= Math.max(1, value / 8), "value " + value);
+        }
+    }
+
+    @Test
+    public void percentileMicros_shouldReturnBucketUpperBound_ForRequestedRank() {
+        //Arrange
+        Metrics.LatencyHistogram histogram = new Metrics.LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.recordMicros(i * 1_000L);
+        }
+        //Act
+        long p50 = histogram.percentileMicros(0.5);
+        long p99 = histogram.percentileMicros(0.99);
+        //Assert
+        assertEquals(100, histogram.count());
+        assertEquals(5_050_000, histogram.sumMicros());
+        assertTrue(p50 > 50_000 && p50 <= 50_000 * 9 / 8, "p50 " + p50);
+        assertTrue(p99 > 99_000 && p99 <= 99_000 * 9 / 8, "p99 " + p99);
+        assertEquals(0, new Metrics.LatencyHistogram().percentileMicros(0.99));
+    }
+
+    @Test
+    public void scrape_shouldWritePrometheusTextFormat() {
+        //Arrange
+        Metrics metrics = new Metrics();
+        metrics.counter("requests_total", "Requests", "route", "/weather").add(3);
+        metrics.gauge("in_flight", "In flight", () -> 2);
+        Metrics.LatencyHistogram histogram = metrics.histogram("stage_seconds", "Stages", "stage", "parse");
+        histogram.recordMicros(300);
+        histogram.recordMicros(20_000);
+        //Act
+        String text = metrics.scrape();
+        //Assert
+        assertTrue(text.contains("# TYPE requests_total counter\nrequests_total{route=\"/weather\"} 3\n"));
+        assertTrue(text.contains("# TYPE in_flight gauge\nin_flight 2\n"));
+        assertTrue(text.contains("stage_seconds_bucket{stage=\"parse\",le=\"0.00025\"} 0\n"));
+        assertTrue(text.contains("stage_seconds_bucket{stage=\"parse\",le=\"0.0005\"} 1\n"));
+        assertTrue(text.contains("stage_seconds_bucket{stage=\"parse\",le=\"0.025\"} 2\n"));
+        assertTrue(text.contains("stage_seconds_bucket{stage=\"parse\",le=\"+Inf\"} 2\n"));
+        assertTrue(text.contains("stage_seconds_sum{stage=\"parse\"} 0.0203\n"));
+        assertTrue(text.contains("stage_seconds_count{stage=\"parse\"} 2\n"));
+        assertTrue(text.indexOf("in_flight") < text.indexOf("requests_total"));
+    }
+
+    @Test
+    public void counter_shouldReturnSameSeries_ForSameNameAndLabels() {
+        //Arrange
+        Metrics metrics = new Metrics();
+        //Act
+        metrics.counter("errors_total", "Errors", "api", "forecast").increment();
+        metrics.counter("errors_total", "Errors", "api", "forecast").increment();
+        metrics.counter("errors_total", "Errors", "api", "geocoding").increment();
+        //Assert
+        assertEquals(2, metrics.counter("errors_total", "Errors", "api", "forecast").sum());
+        assertThrows(IllegalArgumentException.class, () -> metrics.histogram("errors_total", "Errors"));
+    }
+}
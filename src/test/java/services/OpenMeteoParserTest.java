@@ -0,0 +1,94 @@
+package services;
+
+import data.CachedCoordinates;
+import data.Coordinates;
+import data.HourlyForecast;
+import data.WeatherData;
+import org.junit.jupiter.api.Test;
+import stubs.OpenMeteoStub;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OpenMeteoParserTest {
+    private final Coordinates moscow = new Coordinates("55.75222", "37.61556");
+
+    @Test
+    public void parseForecast_shouldReadOnlyTemperature_WhenResponseHasSeveralVariablesAndDays() throws IOException {
+        //Arrange
+        String json = OpenMeteoStub.forecast("55.75222", "37.61556", new String[]{"relative_humidity_2m", "temperature_2m"}, 16);
+        long midnight = LocalDate.now(ZoneOffset.UTC).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+        //Act
+        WeatherData weatherData = OpenMeteoParser.parseForecast("Moscow", moscow, List.of(WeatherData.TEMPERATURE), new StringReader(json));
+        //Assert
+        HourlyForecast forecast = weatherData.temperature();
+        assertEquals(List.of(WeatherData.TEMPERATURE), List.copyOf(weatherData.hourly().keySet()));
+        assertEquals(16 * 24, forecast.size());
+        assertEquals(midnight, forecast.startEpochSecond());
+        assertEquals(HourlyForecast.HOUR_SECONDS, forecast.stepSeconds());
+        assertEquals(Math.round(((55.75222 + 37.61556) % 20 + 3) * 10) / 10.0, forecast.value(0));
+    }
+
+    @Test
+    public void parseForecastBatch_shouldKeepRequestOrder_WhenResponseIsArray() throws IOException {
+        //Arrange
+        Coordinates paris = new Coordinates("48.85341", "2.3488");
+        String[] variables = {"temperature_2m"};
+        String json = "[" + OpenMeteoStub.forecast("55.75222", "37.61556", variables, 1) + ","
+                + OpenMeteoStub.forecast("48.85341", "2.3488", variables, 1) + "]";
+        //Act
+        List<WeatherData> weatherData = OpenMeteoParser.parseForecastBatch(List.of("Moscow", "Paris"), List.of(moscow, paris),
+                List.of(WeatherData.TEMPERATURE), new StringReader(json));
+        //Assert
+        assertEquals(2, weatherData.size());
+        assertEquals("Moscow", weatherData.get(0).city());
+        assertEquals(paris, weatherData.get(1).coordinates());
+        assertNotEquals(weatherData.get(0).temperature(), weatherData.get(1).temperature());
+    }
+
+    @Test
+    public void parseForecast_shouldApplyUtcOffsetAndMissingValues() throws IOException {
+        //Arrange
+        String json = "{\"utc_offset_seconds\":10800,\"hourly_units\":{\"time\":\"iso8601\"},"
+                + "\"hourly\":{\"time\":[\"2024-05-01T03:00\",\"2024-05-01T04:00\",\"2024-05-01T05:00\"],\"temperature_2m\":[1.5,null,2.5]}}";
+        //Act
+        WeatherData weatherData = OpenMeteoParser.parseForecast("Moscow", moscow, List.of(WeatherData.TEMPERATURE), new StringReader(json));
+        //Assert
+        HourlyForecast forecast = weatherData.temperature();
+        assertEquals(LocalDate.of(2024, 5, 1).atStartOfDay(ZoneOffset.UTC).toEpochSecond(), forecast.startEpochSecond());
+        assertEquals(3, forecast.size());
+        assertTrue(Double.isNaN(forecast.value(1)));
+    }
+
+    @Test
+    public void parseCoordinates_shouldKeepNumbersAsWritten_AndReturnNotFoundWithoutResults() throws IOException {
+        //Arrange
+        String found = "{\"results\":[{\"id\":1,\"name\":\"Moscow\",\"latitude\":55.75222,\"longitude\":37.61556,\"admin\":{\"a\":[1,2]}}],\"generationtime_ms\":0.5}";
+        String notFound = "{\"generationtime_ms\":0.5}";
+        //Act
+        CachedCoordinates coordinates = OpenMeteoParser.parseCoordinates(new StringReader(found));
+        CachedCoordinates missing = OpenMeteoParser.parseCoordinates(new StringReader(notFound));
+        //Assert
+        assertEquals(moscow, coordinates.coordinates());
+        assertSame(CachedCoordinates.NOT_FOUND, missing);
+    }
+
+    @Test
+    public void parseForecast_shouldReadEveryRequestedVariable_AndFailWhenOneIsMissing() throws IOException {
+        //Arrange
+        String json = OpenMeteoStub.forecast("55.75222", "37.61556", new String[]{"temperature_2m", "precipitation", "wind_speed_10m"}, 2);
+        //Act
+        WeatherData weatherData = OpenMeteoParser.parseForecast("Moscow", moscow, List.of("precipitation", "wind_speed_10m"), new StringReader(json));
+        //Assert
+        assertEquals(List.of("precipitation", "wind_speed_10m"), List.copyOf(weatherData.hourly().keySet()));
+        assertEquals(48, weatherData.hourly().get("precipitation").size());
+        assertNull(weatherData.temperature());
+        assertThrows(IOException.class, () -> OpenMeteoParser.parseForecast("Moscow", moscow,
+                List.of("snowfall"), new StringReader(json)));
+    }
+}
@@ -0,0 +1,108 @@
+package services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterTest {
+
+    @Test
+    public void tokenBucket_shouldAllowBurst_ThenRefillAtRate() {
+        //Arrange
+        long start = 1_000_000_000L;
+        RateLimiter.TokenBucket bucket = new RateLimiter.TokenBucket(10, 3, start);
+        //Act
+        long first = bucket.tryAcquire(1, start);
+        long second = bucket.tryAcquire(2, start);
+        long overBurst = bucket.tryAcquire(1, start);
+        long afterRefill = bucket.tryAcquire(1, start + TimeUnit.MILLISECONDS.toNanos(100));
+        //Assert
+        assertEquals(0, first);
+        assertEquals(0, second);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), overBurst);
+        assertEquals(0, afterRefill);
+        assertFalse(bucket.isFull(start + TimeUnit.MILLISECONDS.toNanos(100)));
+        assertTrue(bucket.isFull(start + TimeUnit.MILLISECONDS.toNanos(400)));
+    }
+
+    @Test
+    public void tryAcquireMisses_shouldUseSeparateStricterBudget() {
+        //Arrange
+        RateLimiter limiter = new RateLimiter(new RateLimitSettings(true, 1000, 100, 0.01, 2, List.of(), List.of(), 100));
+        String client = limiter.clientId("10.0.0.1", null);
+        //Act
+        long misses = limiter.tryAcquireMisses(client, 2);
+        long overMissBudget = limiter.tryAcquireMisses(client, 1);
+        long hit = limiter.tryAcquire(client);
+        //Assert
+        assertEquals(0, misses);
+        assertTrue(overMissBudget > 0);
+        assertEquals(0, hit);
+    }
+
+    @Test
+    public void clientId_shouldUseOnlyKnownApiKeys() {
+        //Arrange
+        RateLimiter limiter = new RateLimiter(new RateLimitSettings(true, 1, 1, 1, 1, List.of("partner"), List.of(), 100));
+        //Act
+        //Assert
+        assertEquals("key:partner", limiter.clientId("10.0.0.1", "partner"));
+        assertEquals("ip:10.0.0.1", limiter.clientId("10.0.0.1", "random"));
+        assertEquals("ip:10.0.0.1", limiter.clientId("10.0.0.1", null));
+    }
+
+    @Test
+    public void clientAddress_shouldTrustForwardedFor_OnlyFromTrustedProxies() {
+        //Arrange
+        RateLimiter limiter = new RateLimiter(new RateLimitSettings(true, 1, 1, 1, 1, List.of(),
+                List.of("10.0.0.0/8", "192.168.1.5"), 100));
+        //Act
+        //Assert
+        assertEquals("203.0.113.7", limiter.clientAddress("10.1.2.3", "203.0.113.7"));
+        assertEquals("203.0.113.7", limiter.clientAddress("10.1.2.3", "198.51.100.1, 203.0.113.7, 192.168.1.5"));
+        assertEquals("8.8.8.8", limiter.clientAddress("8.8.8.8", "203.0.113.7"));
+        assertEquals("192.168.1.6", limiter.clientAddress("192.168.1.6", "203.0.113.7"));
+        assertEquals("10.1.2.3", limiter.clientAddress("10.1.2.3", null));
+    }
+
+    @Test
+    public void constructor_shouldRejectInvalidTrustedProxy() {
+        //Arrange
+        RateLimitSettings settings = new RateLimitSettings(true, 1, 1, 1, 1, List.of(), List.of("proxy.local"), 100);
+        //Act
+        //Assert
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter(settings));
+    }
+
+    @Test
+    public void buckets_shouldStayWithinMaxClients_WhenManyAddressesAreBusy() {
+        //Arrange
+        RateLimiter limiter = new RateLimiter(new RateLimitSettings(true, 0.01, 1, 0.01, 1, List.of(), List.of(), 100));
+        //Act
+        for (int i = 0; i < 10_000; i++) {
+            limiter.tryAcquire(limiter.clientId("198.18." + i / 256 + "." + i % 256, null));
+        }
+        int busyClients = limiter.clientCount();
+        String last = limiter.clientId("198.18.39.15", null);
+        long lastAgain = limiter.tryAcquire(last);
+        //Assert
+        assertEquals(100, busyClients);
+        assertTrue(lastAgain > 0);
+    }
+
+    @Test
+    public void removeIdleClients_shouldDropOnlyClientsWithFullBuckets() {
+        //Arrange
+        RateLimiter limiter = new RateLimiter(new RateLimitSettings(true, 1_000_000, 1, 0.01, 1, List.of(), List.of(), 100));
+        limiter.tryAcquire(limiter.clientId("10.0.0.1", null));
+        limiter.tryAcquireMisses(limiter.clientId("10.0.0.2", null), 1);
+        //Act
+        limiter.removeIdleClients();
+        //Assert
+        assertEquals(1, limiter.clientCount());
+        assertTrue(limiter.tryAcquireMisses(limiter.clientId("10.0.0.2", null), 1) > 0);
+    }
+}
@@ -0,0 +1,82 @@
+package services;
+
+import data.Coordinates;
+import data.HourlyForecast;
+import data.WeatherData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import stubs.FakeRedisServer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RedisServiceConcurrencyTest {
+    private static final int THREADS = 32;
+    private static final int OPERATIONS_PER_THREAD = 200;
+    private static final int POOL_SIZE = 8;
+
+    private FakeRedisServer redisServer;
+    private RedisService redisService;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        redisServer = new FakeRedisServer();
+        redisService = new RedisService(new RedisSettings(redisServer.host(), redisServer.port(),
+                POOL_SIZE, POOL_SIZE, 0, 2000, 5000));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        redisService.close();
+        redisServer.close();
+    }
+
+    @Test
+    public void saveAndGet_shouldReturnOwnData_WhenCalledFromManyThreads() throws Exception {
+        //Arrange
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int threadId = t;
+            results.add(executor.submit(() -> {
+                start.await();
+                int mismatches = 0;
+                for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                    String city = "City-" + threadId + "-" + i;
+                    WeatherData data = new WeatherData(city, new Coordinates(String.valueOf(threadId), String.valueOf(i)),
+                            HourlyForecast.hourly(1_700_000_000L, threadId + i / 10.0));
+                    assertTrue(redisService.saveWeather(data, 60));
+                    if (!data.equals(redisService.getSavedWeather(data.coordinates()))) {
+                        mismatches++;
+                    }
+                }
+                return mismatches;
+            }));
+        }
+
+        //Act
+        start.countDown();
+        int mismatches = 0;
+        for (Future<Integer> result : results) {
+            mismatches += result.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        //Assert
+        assertEquals(0, mismatches);
+        assertEquals(THREADS * OPERATIONS_PER_THREAD, redisServer.commandCount("SETEX"));
+        RedisService.PoolStats stats = redisService.getPoolStats();
+        assertEquals(0, stats.active());
+        assertTrue(stats.idle() <= POOL_SIZE);
+        assertTrue(stats.maxWaitMillis() >= stats.meanWaitMillis());
+    }
+}
@@ -1,19 +1,17 @@
 package services;
 
 import data.Coordinates;
-import data.Temperature;
+import data.HourlyForecast;
 import data.WeatherData;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import java.util.ArrayList;
-import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class RedisServiceTest {
 
     private RedisService redisService;
-    private final List<Temperature> mockTemperature = List.of(new Temperature("12:00", 15.5), new Temperature("13:00", 16.0));
+    private final HourlyForecast mockTemperature = HourlyForecast.hourly(1_700_000_000L, 15.5, 16.0);
     private final WeatherData mockData = new WeatherData("Moscow", new Coordinates("55.75222", "37.61556"), mockTemperature);
 
     @BeforeEach
@@ -44,7 +42,7 @@ public class RedisServiceTest {
         //Arrange
         redisService.saveWeather(mockData, 2);
         //Act
-        WeatherData weatherData = redisService.getSavedWeather("Moscow");
+        WeatherData weatherData = redisService.getSavedWeather(mockData.coordinates());
         //Assert
         assertNotNull(weatherData);
         assertEquals(mockData.city(), weatherData.city());
@@ -57,7 +55,7 @@ public class RedisServiceTest {
         //Arrange
         redisService.saveWeather(mockData, 2);
         //Act
-        WeatherData weatherData = redisService.getSavedWeather("Berlin");
+        WeatherData weatherData = redisService.getSavedWeather(new Coordinates("52.52437", "13.41053"));
         //Assert
         assertNull(weatherData);
     }
@@ -65,13 +63,13 @@ public class RedisServiceTest {
     @Test
     public void savedData_shouldReturnNull_WhenTimePassed() throws InterruptedException {
         // Arrange
-        List<Temperature> mockTemperature = List.of(new Temperature("12:00", 15.5), new Temperature("13:00", 16.0));
+        HourlyForecast mockTemperature = HourlyForecast.hourly(1_700_000_000L, 15.5, 16.0);
         WeatherData mockData = new WeatherData("London", new Coordinates("55.75222", "37.61556"), mockTemperature);
         redisService.saveWeather(mockData, 1);
         // Act
         Thread.sleep(1500);
         // Assert
-        assertNull(redisService.getSavedWeather("London"));
+        assertNull(redisService.getSavedWeather(mockData.coordinates()));
     }
 
 
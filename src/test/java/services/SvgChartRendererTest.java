@@ -0,0 +1,90 @@
+package services;
+
+import data.HourlyForecast;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SvgChartRendererTest {
+    private static final long MIDNIGHT = 1_700_006_400L;
+
+    @Test
+    public void render_shouldWriteWellFormedSvg_WithPointPerHour() throws Exception {
+        //Arrange
+        double[] values = new double[24];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 15 + 5 * Math.sin(i * Math.PI / 12);
+        }
+        StringBuilder out = new StringBuilder();
+        //Act
+        new SvgChartRenderer().render(HourlyForecast.hourly(MIDNIGHT, values), "Temperature", "C", out);
+        Document svg = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(out.toString().getBytes(StandardCharsets.UTF_8)));
+        //Assert
+        assertEquals("svg", svg.getDocumentElement().getTagName());
+        assertEquals(24, svg.getElementsByTagName("circle").getLength());
+        String path = svg.getElementsByTagName("path").item(0).getAttributes().getNamedItem("d").getNodeValue();
+        assertEquals(23, path.chars().filter(c -> c == 'L').count());
+        assertTrue(out.indexOf(">00:00<") > 0);
+        assertTrue(out.indexOf(">23:00<") > 0);
+        assertTrue(out.indexOf(">Temperature (C)<") > 0);
+    }
+
+    @Test
+    public void render_shouldBreakLine_WhenValueIsMissing() {
+        //Arrange
+        StringBuilder out = new StringBuilder();
+        //Act
+        new SvgChartRenderer().render(HourlyForecast.hourly(MIDNIGHT, 1, 2, Double.NaN, 4, 5), "Temperature", "C", out);
+        //Assert
+        String path = out.substring(out.indexOf(" d=\"") + 4, out.indexOf("\"/>", out.indexOf(" d=\"")));
+        assertEquals(2, path.chars().filter(c -> c == 'M').count());
+        assertEquals(4, out.toString().split("<circle").length - 1);
+    }
+
+    @Test
+    public void render_shouldLabelMidnightWithDate_WhenForecastCoversSeveralDays() {
+        //Arrange
+        double[] values = new double[16 * 24];
+        StringBuilder out = new StringBuilder();
+        //Act
+        new SvgChartRenderer().render(HourlyForecast.hourly(MIDNIGHT, values), "Temperature", "C", out);
+        //Assert
+        assertEquals(24, SvgChartRenderer.labelStep(values.length));
+        assertTrue(out.indexOf(">15.11<") > 0);
+        assertTrue(out.indexOf(">30.11<") > 0);
+        assertEquals(-1, out.indexOf(">00:00<"));
+    }
+
+    @Test
+    public void niceStep_shouldRoundToOneTwoOrFive() {
+        //Assert
+        assertEquals(1, SvgChartRenderer.niceStep(0.8), 1e-9);
+        assertEquals(2, SvgChartRenderer.niceStep(1.3), 1e-9);
+        assertEquals(5, SvgChartRenderer.niceStep(3.1), 1e-9);
+        assertEquals(10, SvgChartRenderer.niceStep(7), 1e-9);
+        assertEquals(0.1, SvgChartRenderer.niceStep(0.01), 1e-9);
+        assertEquals(1, SvgChartRenderer.labelStep(24));
+        assertEquals(3, SvgChartRenderer.labelStep(72));
+    }
+
+    @Test
+    public void render_shouldTitleValueAxis_WithVariableLabelAndUnit() {
+        //Arrange
+        StringBuilder precipitation = new StringBuilder();
+        StringBuilder humidity = new StringBuilder();
+        ForecastOptions.VariableLabel label = ForecastOptions.label("precipitation");
+        //Act
+        new SvgChartRenderer().render(HourlyForecast.hourly(MIDNIGHT, 0, 0.4, 1.2), label.name(), label.unit(), precipitation);
+        new SvgChartRenderer().render(HourlyForecast.hourly(MIDNIGHT, 60, 70), "Humidity <2 m>", "", humidity);
+        //Assert
+        assertTrue(precipitation.indexOf(">Precipitation (mm)<") > 0);
+        assertEquals(-1, precipitation.indexOf("Temperature"));
+        assertTrue(humidity.indexOf(">Humidity &lt;2 m&gt;<") > 0);
+    }
+}
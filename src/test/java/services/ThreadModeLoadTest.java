@@ -0,0 +1,130 @@
+package services;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import spark.Spark;
+import stubs.FakeRedisServer;
+import stubs.OpenMeteoStub;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Нагрузочный тест: сравнивает пропускную способность и p99 задержки /weather
+ * при обработке запросов пулом обычных потоков и виртуальными потоками.
+ * Внешние API и Redis заменены локальными заглушками. Запуск: ./gradlew loadTest
+ */
+@Tag("load")
+public class ThreadModeLoadTest {
+    private static final int PLATFORM_THREADS = 32;
+    private static final int REQUESTS = 600;
+    private static final int CONCURRENCY = 150;
+    private static final long UPSTREAM_LATENCY_MILLIS = 50;
+
+    private static FakeRedisServer redisServer;
+    private static OpenMeteoStub openMeteo;
+
+    @BeforeAll
+    public static void startStubs() throws Exception {
+        redisServer = new FakeRedisServer();
+        openMeteo = new OpenMeteoStub();
+        openMeteo.setLatencyMillis(UPSTREAM_LATENCY_MILLIS);
+    }
+
+    @AfterAll
+    public static void stopStubs() throws Exception {
+        redisServer.close();
+        openMeteo.close();
+    }
+
+    @Test
+    public void compareThreadModes() throws Exception {
+        LoadResult platform = runLoad(ThreadMode.PLATFORM);
+        System.out.println(platform);
+        assertEquals(0, platform.errors());
+
+        assumeTrue(ThreadMode.virtualThreadsSupported(), "Virtual threads require Java 21+");
+        LoadResult virtual = runLoad(ThreadMode.VIRTUAL);
+        System.out.println(virtual);
+        assertEquals(0, virtual.errors());
+    }
+
+    private LoadResult runLoad(ThreadMode mode) throws Exception {
+        RedisService redis = new RedisService(new RedisSettings(redisServer.host(), redisServer.port(), 64, 64, 0, 2000, 10_000));
+        UpstreamClient upstream = new UpstreamClient(new HttpSettings(1000, 5000, 10000, 0, 0, 1024, 1024, 64, 60),
+                mode.newExecutor("upstream-"));
+        WeatherService weatherService = new WeatherService(new GeolocationService(openMeteo.geocodingUrl(), redis, upstream),
+                redis, openMeteo.forecastUrl(), RefreshSettings.disabled(), upstream);
+
+        mode.configureServer(PLATFORM_THREADS);
+        Spark.port(0);
+        new WeatherViewer(weatherService, ChartRenderer.fromConfig(), RateLimitSettings.disabled()).setupRoutes();
+        Spark.awaitInitialization();
+        try {
+            return drive(mode, Spark.port());
+        } finally {
+            Spark.stop();
+            Spark.awaitStop();
+            weatherService.close();
+            redis.close();
+        }
+    }
+
+    /**
+     * Отправляет REQUESTS запросов, не больше CONCURRENCY одновременно. Каждый город запрашивается один раз,
+     * поэтому каждый запрос проходит путь промаха кэша с обращением к внешнему API
+     */
+    private LoadResult drive(ThreadMode mode, int port) throws Exception {
+        HttpClient client = HttpClient.newBuilder().build();
+        Semaphore permits = new Semaphore(CONCURRENCY);
+        AtomicInteger errors = new AtomicInteger();
+        long[] latencies = new long[REQUESTS];
+        List<CompletableFuture<?>> responses = new ArrayList<>();
+
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            permits.acquire();
+            int index = i;
+            long requestStartedAt = System.nanoTime();
+            HttpRequest request = HttpRequest.newBuilder(
+                    URI.create("http://localhost:" + port + "/weather?city=" + mode + "City" + i)).build();
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        latencies[index] = System.nanoTime() - requestStartedAt;
+                        if (error != null || response.statusCode() != 200) {
+                            errors.incrementAndGet();
+                        }
+                        permits.release();
+                    }));
+        }
+        CompletableFuture.allOf(responses.toArray(new CompletableFuture[0])).exceptionally(e -> null).join();
+        long elapsedNanos = System.nanoTime() - startedAt;
+
+        Arrays.sort(latencies);
+        double throughput = REQUESTS / (elapsedNanos / 1e9);
+        double p50 = latencies[REQUESTS / 2] / 1e6;
+        double p99 = latencies[(int) (REQUESTS * 0.99) - 1] / 1e6;
+        return new LoadResult(mode, throughput, p50, p99, errors.get());
+    }
+
+    private record LoadResult(ThreadMode mode, double throughput, double p50Millis, double p99Millis, int errors) {
+        @Override
+        public String toString() {
+            return String.format("%-8s throughput %.1f req/s, p50 %.1f ms, p99 %.1f ms, errors %d",
+                    mode, throughput, p50Millis, p99Millis, errors);
+        }
+    }
+}
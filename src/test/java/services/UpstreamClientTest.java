@@ -0,0 +1,63 @@
+package services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import stubs.OpenMeteoStub;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UpstreamClientTest {
+    private OpenMeteoStub openMeteo;
+    private UpstreamClient upstream;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        openMeteo = new OpenMeteoStub();
+        upstream = new UpstreamClient(new HttpSettings(1000, 1000, 5000, 2, 10, 16, 4, 4, 60));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        openMeteo.close();
+    }
+
+    @Test
+    public void getAsync_shouldNotBlockCaller_WhenUpstreamIsSlow() {
+        //Arrange
+        openMeteo.setLatencyMillis(300);
+        //Act
+        long startedAt = System.nanoTime();
+        CompletableFuture<String> result = upstream.getAsync(openMeteo.geocodingUrl() + "?name=Moscow", body -> body.string());
+        long elapsedMillis = (System.nanoTime() - startedAt) / 1_000_000;
+        //Assert
+        assertTrue(elapsedMillis < 100);
+        assertTrue(result.join().contains("Moscow"));
+    }
+
+    @Test
+    public void getAsync_shouldRetry_WhenUpstreamFailsTemporarily() {
+        //Arrange
+        openMeteo.failNext(2);
+        //Act
+        String body = upstream.getAsync(openMeteo.geocodingUrl() + "?name=Moscow", responseBody -> responseBody.string()).join();
+        //Assert
+        assertTrue(body.contains("Moscow"));
+        assertEquals(3, openMeteo.geocodingRequests());
+    }
+
+    @Test
+    public void getAsync_shouldFail_WhenRetriesExhausted() {
+        //Arrange
+        openMeteo.failNext(3);
+        //Act
+        CompletionException exception = assertThrows(CompletionException.class,
+                () -> upstream.getAsync(openMeteo.geocodingUrl() + "?name=Moscow", body -> body.string()).join());
+        //Assert
+        assertInstanceOf(UpstreamException.class, exception.getCause());
+        assertEquals(503, ((UpstreamException) exception.getCause()).getStatusCode());
+    }
+}
@@ -0,0 +1,56 @@
+package services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VirtualThreadPoolTest {
+
+    @Test
+    public void join_shouldReturn_WhenPoolIsStopped() throws Exception {
+        //Arrange
+        // Пул задач подменяется обычным: проверяется жизненный цикл, а не виртуальные потоки
+        VirtualThreadPool pool = new VirtualThreadPool(Executors::newCachedThreadPool);
+        pool.start();
+        CountDownLatch ran = new CountDownLatch(1);
+        pool.execute(ran::countDown);
+        CompletableFuture<Void> joined = CompletableFuture.runAsync(() -> {
+            try {
+                pool.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        //Act
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        boolean joinedWhileRunning = joined.isDone();
+        pool.stop();
+        //Assert
+        assertFalse(joinedWhileRunning);
+        joined.get(5, TimeUnit.SECONDS);
+        assertTrue(pool.isStopped());
+        assertThrows(RejectedExecutionException.class, () -> pool.execute(() -> { }));
+    }
+
+    @Test
+    public void start_shouldAcceptTasksAgain_AfterRestart() throws Exception {
+        //Arrange
+        VirtualThreadPool pool = new VirtualThreadPool(Executors::newCachedThreadPool);
+        pool.start();
+        pool.stop();
+        CountDownLatch ran = new CountDownLatch(1);
+        //Act
+        pool.start();
+        pool.execute(ran::countDown);
+        //Assert
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        pool.stop();
+    }
+}
@@ -0,0 +1,64 @@
+package services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import stubs.FakeRedisServer;
+import stubs.OpenMeteoStub;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WarmUpTest {
+    private FakeRedisServer redisServer;
+    private OpenMeteoStub openMeteo;
+    private RedisService redisService;
+    private WeatherService weatherService;
+    private WeatherViewer weatherViewer;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        redisServer = new FakeRedisServer();
+        openMeteo = new OpenMeteoStub();
+        redisService = new RedisService(RedisSettings.of(redisServer.host(), redisServer.port()));
+        weatherService = new WeatherService(new GeolocationService(openMeteo.geocodingUrl()), redisService,
+                openMeteo.forecastUrl(), RefreshSettings.disabled());
+        weatherViewer = new WeatherViewer(weatherService);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        weatherService.close();
+        redisService.close();
+        redisServer.close();
+        openMeteo.close();
+    }
+
+    @Test
+    public void start_shouldLoadCitiesAndRenderPages_BeforeBecomingDone() throws Exception {
+        //Arrange
+        openMeteo.setLatencyMillis(100);
+        WarmUp warmUp = new WarmUp(weatherService, weatherViewer, List.of("Moscow", "Paris", "Nowhereville", "Berlin"), 2);
+        //Act
+        CompletableFuture<Integer> done = warmUp.start();
+        boolean doneBeforeLoads = warmUp.isDone();
+        int loaded = done.get(10, TimeUnit.SECONDS);
+        weatherViewer.renderPage("Paris", weatherService.getWeather("Paris"));
+        //Assert
+        assertFalse(doneBeforeLoads);
+        assertTrue(warmUp.isDone());
+        assertEquals(3, loaded);
+        assertEquals(3, openMeteo.forecastRequests());
+        assertEquals(1, weatherService.getLocalCacheStats().hits());
+        assertEquals(1, weatherViewer.getPageCacheStats().hits());
+    }
+
+    @Test
+    public void constructor_shouldRejectNonPositiveParallelism() {
+        //Assert
+        assertThrows(IllegalArgumentException.class, () -> new WarmUp(weatherService, weatherViewer, List.of("Moscow"), 0));
+    }
+}
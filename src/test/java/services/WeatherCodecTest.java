@@ -0,0 +1,68 @@
+package services;
+
+import data.Coordinates;
+import data.HourlyForecast;
+import data.WeatherData;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WeatherCodecTest {
+    private final Coordinates coordinates = new Coordinates("55.75222", "37.61556");
+
+    @Test
+    public void decode_shouldRestoreWeatherData_WhenEncodedAsBinary() {
+        //Arrange
+        double[] temperature = new double[24];
+        for (int hour = 0; hour < 24; hour++) {
+            temperature[hour] = Math.round((-12.5 + hour * 1.3) * 10) / 10.0;
+        }
+        WeatherData weatherData = new WeatherData("Москва", coordinates, HourlyForecast.hourly(1_700_006_400L, temperature));
+        //Act
+        byte[] value = WeatherCodec.encode(weatherData);
+        WeatherData decoded = WeatherCodec.decode(value);
+        //Assert
+        assertEquals(weatherData, decoded);
+        assertEquals(WeatherCodec.VERSION, value[0]);
+        assertTrue(value.length < 120);
+    }
+
+    @Test
+    public void decode_shouldKeepExactValuesAndTimes_WhenTheyDoNotFitPackedForm() {
+        //Arrange
+        WeatherData weatherData = new WeatherData("Moscow", coordinates,
+                new HourlyForecast(1_700_001_800L, 900, new double[]{15.25, 16.0}));
+        //Act
+        WeatherData decoded = WeatherCodec.decode(WeatherCodec.encode(weatherData));
+        //Assert
+        assertEquals(weatherData, decoded);
+    }
+
+    @Test
+    public void decode_shouldRestoreEveryVariable_OrOnlyTheEncodedOne() {
+        //Arrange
+        WeatherData weatherData = new WeatherData("Moscow", coordinates, Map.of(
+                WeatherData.TEMPERATURE, HourlyForecast.hourly(1_700_006_400L, 15.5, 16.0),
+                "precipitation", HourlyForecast.hourly(1_700_006_400L, 0.0, 1.2)));
+        //Act
+        WeatherData decoded = WeatherCodec.decode(WeatherCodec.encode(weatherData));
+        WeatherData precipitation = WeatherCodec.decode(WeatherCodec.encode(weatherData, "precipitation"));
+        //Assert
+        assertEquals(weatherData, decoded);
+        assertEquals(weatherData.select(List.of("precipitation"), 1), precipitation);
+    }
+
+    @Test
+    public void decode_shouldRejectValue_WhenFormatVersionIsUnknown() {
+        //Arrange
+        byte[] json = "{\"city\":\"Moscow\"}".getBytes(StandardCharsets.UTF_8);
+        //Act
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> WeatherCodec.decode(json));
+        //Assert
+        assertTrue(error.getMessage().contains("version"));
+    }
+}
@@ -0,0 +1,222 @@
+package services;
+
+import spark.Spark;
+import stubs.FakeRedisServer;
+import stubs.OpenMeteoStub;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Нагрузочный прогон /weather без сети: сервис запускается в этом процессе с локальными заглушками Open-Meteo
+ * (задержка и доля ошибок настраиваются) и Redis, затем получает заданное количество запросов заданной смеси.
+ * В конце печатает пропускную способность, коды ответов и процентили задержки по видам запросов.
+ * Запуск: ./gradlew loadHarness -Pload.requests=20000 -Pload.mix=hot:90,cold:10 -Pload.upstream.latency.ms=100
+ * <p>
+ * Настройки (системные свойства или переменные окружения, см. AppConfig):
+ * load.requests, load.warmup-requests, load.concurrency, load.mix, load.hot-cities, load.seed,
+ * load.upstream.latency.ms, load.upstream.error-rate; а также настройки самого сервиса (server.*, cache.*, refresh.*, breaker.*)
+ */
+public class WeatherLoadHarness {
+
+    /**
+     * Вид запроса в смеси
+     */
+    enum RequestKind {
+        /** Страница одного из load.hot-cities популярных городов: после первого запроса - из локального кэша */
+        HOT,
+        /** Страница города, который еще не запрашивался: геокодинг, Redis и API прогноза */
+        COLD,
+        /** JSON с несколькими переменными на трое суток по популярному городу */
+        JSON,
+        /** Несуществующий город: ответ 404 после геокодинга */
+        UNKNOWN
+    }
+
+    private final int requests;
+    private final int warmupRequests;
+    private final int concurrency;
+    private final int hotCities;
+    private final Map<RequestKind, Integer> mix;
+    private final Random random;
+    private final AtomicLong coldCities = new AtomicLong();
+
+    WeatherLoadHarness(int requests, int warmupRequests, int concurrency, int hotCities, Map<RequestKind, Integer> mix, long seed) {
+        if (requests < 1 || concurrency < 1 || hotCities < 1 || mix.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("Load requests, concurrency, hot cities and mix weights must be positive");
+        }
+        this.requests = requests;
+        this.warmupRequests = warmupRequests;
+        this.concurrency = concurrency;
+        this.hotCities = hotCities;
+        this.mix = mix;
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws Exception {
+        WeatherLoadHarness harness = new WeatherLoadHarness(
+                AppConfig.getInt("load.requests", 5000),
+                AppConfig.getInt("load.warmup-requests", 500),
+                AppConfig.getInt("load.concurrency", 64),
+                AppConfig.getInt("load.hot-cities", 20),
+                parseMix(AppConfig.getList("load.mix", List.of("hot:80", "cold:10", "json:5", "unknown:5"))),
+                AppConfig.getLong("load.seed", 42));
+
+        try (FakeRedisServer redisServer = new FakeRedisServer(); OpenMeteoStub openMeteo = new OpenMeteoStub()) {
+            openMeteo.setLatencyMillis(AppConfig.getLong("load.upstream.latency.ms", 50));
+            openMeteo.setErrorRate(Double.parseDouble(AppConfig.getString("load.upstream.error-rate", "0")));
+
+            ThreadMode mode = ThreadMode.fromConfig();
+            RedisService redis = new RedisService(new RedisSettings(redisServer.host(), redisServer.port(), 64, 64, 0, 2000, 10_000));
+            UpstreamClient upstream = new UpstreamClient(HttpSettings.fromConfig(), mode.newExecutor("upstream-"));
+            WeatherService weatherService = new WeatherService(
+                    new GeolocationService(openMeteo.geocodingUrl(), redis, upstream, BreakerSettings.fromConfig()),
+                    redis, openMeteo.forecastUrl(), RefreshSettings.fromConfig(), upstream, BreakerSettings.fromConfig());
+
+            // Все запросы приходят с одного адреса, поэтому ограничение частоты запросов выключено
+            mode.configureServer(AppConfig.getInt("server.threads.max", 200));
+            Spark.port(0);
+            new WeatherViewer(weatherService, ChartRenderer.fromConfig(), RateLimitSettings.disabled()).setupRoutes();
+            Spark.awaitInitialization();
+            try {
+                String baseUrl = "http://localhost:" + Spark.port();
+                harness.drive(baseUrl, harness.warmupRequests);
+                Report report = harness.drive(baseUrl, harness.requests);
+                System.out.printf("Thread mode %s, upstream latency %d ms, error rate %s%n", mode,
+                        AppConfig.getLong("load.upstream.latency.ms", 50), AppConfig.getString("load.upstream.error-rate", "0"));
+                System.out.print(report);
+                System.out.printf("Upstream requests: geocoding %d, forecast %d; local forecast cache hit ratio %.3f%n",
+                        openMeteo.geocodingRequests(), openMeteo.forecastRequests(), weatherService.getLocalCacheStats().hitRatio());
+            } finally {
+                Spark.stop();
+                Spark.awaitStop();
+                weatherService.close();
+                redis.close();
+            }
+        }
+    }
+
+    /**
+     * Разбирает смесь запросов вида "hot:80,cold:10,json:5,unknown:5" (веса, не обязательно в сумме 100)
+     */
+    static Map<RequestKind, Integer> parseMix(List<String> items) {
+        Map<RequestKind, Integer> mix = new EnumMap<>(RequestKind.class);
+        for (String item : items) {
+            String[] parts = item.split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Load mix item must look like \"hot:80\", got \"" + item + "\"");
+            }
+            mix.put(RequestKind.valueOf(parts[0].trim().toUpperCase(Locale.ROOT)), Integer.parseInt(parts[1].trim()));
+        }
+        return mix;
+    }
+
+    /**
+     * Отправляет запросы смеси, не больше concurrency одновременно, и замеряет время каждого ответа
+     */
+    private Report drive(String baseUrl, int count) throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder().build();
+        Semaphore permits = new Semaphore(concurrency);
+        Report report = new Report();
+        List<CompletableFuture<?>> responses = new ArrayList<>(count);
+
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            permits.acquire();
+            RequestKind kind = nextKind();
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path(kind))).build();
+            long requestStartedAt = System.nanoTime();
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        report.record(kind, error == null ? response.statusCode() : -1, requestStartedAt);
+                        permits.release();
+                    }));
+        }
+        CompletableFuture.allOf(responses.toArray(new CompletableFuture[0])).exceptionally(e -> null).join();
+        report.elapsedNanos = System.nanoTime() - startedAt;
+        return report;
+    }
+
+    private RequestKind nextKind() {
+        int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+        int point = random.nextInt(total);
+        for (Map.Entry<RequestKind, Integer> weight : mix.entrySet()) {
+            point -= weight.getValue();
+            if (point < 0) {
+                return weight.getKey();
+            }
+        }
+        throw new IllegalStateException("Load mix weights changed");
+    }
+
+    private String path(RequestKind kind) {
+        return switch (kind) {
+            case HOT -> "/weather?city=HotCity" + random.nextInt(hotCities);
+            case COLD -> "/weather?city=ColdCity" + coldCities.incrementAndGet();
+            case JSON -> "/api/weather?city=HotCity" + random.nextInt(hotCities) + "&variables=temperature_2m,precipitation&days=3";
+            case UNKNOWN -> "/weather?city=Nowhere" + random.nextInt(hotCities);
+        };
+    }
+
+    /**
+     * Результаты прогона: задержки по видам запросов и количество ответов по кодам (-1 - ошибка соединения)
+     */
+    private static final class Report {
+        private final Map<RequestKind, Metrics.LatencyHistogram> latencies = new EnumMap<>(RequestKind.class);
+        private final Metrics.LatencyHistogram total = new Metrics.LatencyHistogram();
+        private final Map<Integer, AtomicLong> statuses = new ConcurrentHashMap<>();
+        private long elapsedNanos;
+
+        private Report() {
+            for (RequestKind kind : RequestKind.values()) {
+                latencies.put(kind, new Metrics.LatencyHistogram());
+            }
+        }
+
+        private void record(RequestKind kind, int status, long startNanos) {
+            long micros = (System.nanoTime() - startNanos) / 1_000;
+            latencies.get(kind).recordMicros(micros);
+            total.recordMicros(micros);
+            statuses.computeIfAbsent(status, key -> new AtomicLong()).incrementAndGet();
+        }
+
+        /**
+         * Процентили - верхние границы бакетов LatencyHistogram (погрешность до 12.5%)
+         */
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append(String.format("Requests %d in %.2f s: throughput %.1f req/s%n",
+                    total.count(), elapsedNanos / 1e9, total.count() / (elapsedNanos / 1e9)));
+            text.append("Statuses ").append(new TreeMap<>(statuses)).append(System.lineSeparator());
+            text.append(String.format("%-8s %8s %10s %10s %10s %10s%n", "kind", "count", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms"));
+            for (Map.Entry<RequestKind, Metrics.LatencyHistogram> kind : latencies.entrySet()) {
+                appendRow(text, kind.getKey().name().toLowerCase(Locale.ROOT), kind.getValue());
+            }
+            appendRow(text, "all", total);
+            return text.toString();
+        }
+
+        private static void appendRow(StringBuilder text, String name, Metrics.LatencyHistogram histogram) {
+            if (histogram.count() == 0) {
+                return;
+            }
+            text.append(String.format("%-8s %8d %10.2f %10.2f %10.2f %10.2f%n", name, histogram.count(),
+                    histogram.percentileMicros(0.5) / 1e3, histogram.percentileMicros(0.9) / 1e3,
+                    histogram.percentileMicros(0.99) / 1e3, histogram.percentileMicros(0.999) / 1e3));
+        }
+    }
+}
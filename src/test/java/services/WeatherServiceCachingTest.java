@@ -0,0 +1,235 @@
+package services;
+
+import data.Coordinates;
+import data.HourlyForecast;
+import data.WeatherData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import stubs.FakeRedisServer;
+import stubs.OpenMeteoStub;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WeatherServiceCachingTest {
+    private final WeatherData mockData = new WeatherData("Moscow", new Coordinates("55.75222", "37.61556"),
+            HourlyForecast.hourly(1_700_000_000L / 3600 * 3600, 15.5, 16.0));
+
+    private FakeRedisServer redisServer;
+    private OpenMeteoStub openMeteo;
+    private RedisService redisService;
+    private WeatherService weatherService;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        redisServer = new FakeRedisServer();
+        openMeteo = new OpenMeteoStub();
+        redisService = new RedisService(RedisSettings.of(redisServer.host(), redisServer.port()));
+        weatherService = new WeatherService(new GeolocationService(openMeteo.geocodingUrl()), redisService, openMeteo.forecastUrl());
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        weatherService.close();
+        redisService.close();
+        redisServer.close();
+        openMeteo.close();
+    }
+
+    @Test
+    public void getWeather_shouldNotQueryRedis_WhenLocalCacheIsWarm() {
+        //Arrange
+        redisService.saveWeather(mockData, 60);
+        weatherService.getWeather("Moscow");
+        long redisReads = redisServer.commandCount("GET");
+        //Act
+        WeatherData weatherData = weatherService.getWeather("Moscow");
+        //Assert
+        assertEquals(mockData, weatherData);
+        assertEquals(redisReads, redisServer.commandCount("GET"));
+        assertEquals(1, weatherService.getLocalCacheStats().hits());
+    }
+
+    @Test
+    public void getWeather_shouldCallUpstreamOnce_WhenManyCallersMissConcurrently() throws Exception {
+        //Arrange
+        int callers = 16;
+        openMeteo.setLatencyMillis(200);
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<WeatherData>> results = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return weatherService.getWeather("Paris");
+            }));
+        }
+        //Act
+        start.countDown();
+        List<WeatherData> weather = new ArrayList<>();
+        for (Future<WeatherData> result : results) {
+            weather.add(result.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        //Assert
+        assertEquals(1, openMeteo.geocodingRequests());
+        assertEquals(1, openMeteo.forecastRequests());
+        assertNotNull(weather.get(0));
+        for (WeatherData data : weather) {
+            assertEquals(weather.get(0), data);
+        }
+    }
+
+    @Test
+    public void getWeather_shouldServeStaleData_WhileRefreshingInBackground() throws Exception {
+        //Arrange
+        weatherService.close();
+        weatherService = new WeatherService(new GeolocationService(openMeteo.geocodingUrl()), redisService,
+                openMeteo.forecastUrl(), new RefreshSettings(true, 100, 60_000, 0, 60_000, 2));
+        redisService.saveWeather(mockData, 1);
+        weatherService.getWeather("Moscow");
+        Thread.sleep(1100);
+        openMeteo.setLatencyMillis(300);
+        //Act
+        long startedAt = System.nanoTime();
+        WeatherData staleData = weatherService.getWeather("Moscow");
+        long elapsedMillis = (System.nanoTime() - startedAt) / 1_000_000;
+        Thread.sleep(1000);
+        WeatherData freshData = weatherService.getWeather("Moscow");
+        //Assert
+        assertEquals(mockData, staleData);
+        assertTrue(elapsedMillis < 300);
+        assertEquals(1, openMeteo.forecastRequests());
+        assertNotEquals(mockData.temperature(), freshData.temperature());
+        assertEquals(1, weatherService.getLocalCacheStats().staleHits());
+    }
+
+    @Test
+    public void getWeather_shouldRefreshHotCityAhead_BeforeTtlExpires() throws Exception {
+        //Arrange
+        weatherService.close();
+        weatherService = new WeatherService(new GeolocationService(openMeteo.geocodingUrl()), redisService,
+                openMeteo.forecastUrl(), new RefreshSettings(true, 3, 100, 10_000, 0, 2));
+        redisService.saveWeather(mockData, 5);
+        //Act
+        for (int i = 0; i < 3; i++) {
+            weatherService.getWeather("Moscow");
+        }
+        Thread.sleep(1000);
+        WeatherData weatherData = weatherService.getWeather("Moscow");
+        //Assert
+        assertEquals(1, openMeteo.forecastRequests());
+        assertNotEquals(mockData.temperature(), weatherData.temperature());
+    }
+
+    @Test
+    public void getWeatherBatch_shouldUseOneRoundTripPerStage_WhenSomeCitiesAreMissing() {
+        //Arrange
+        redisService.saveWeather(mockData, 60);
+        //Act
+        Map<String, WeatherData> weather = weatherService.getWeatherBatch(List.of("Moscow", "Paris", "Berlin", "Nowhereville"));
+        //Assert
+        assertEquals(List.of("Moscow", "Paris", "Berlin", "Nowhereville"), List.copyOf(weather.keySet()));
+        assertEquals(mockData, weather.get("Moscow"));
+        assertEquals("Paris", weather.get("Paris").city());
+        assertEquals("Berlin", weather.get("Berlin").city());
+        assertNotEquals(weather.get("Paris").temperature(), weather.get("Berlin").temperature());
+        assertNull(weather.get("Nowhereville"));
+        assertEquals(1, redisServer.commandCount("MGET"));
+        assertEquals(1, openMeteo.forecastRequests());
+        assertEquals(weather.get("Paris"), weatherService.getWeather("Paris"));
+    }
+
+    @Test
+    public void getWeather_shouldShareOneForecast_ForEquivalentCityNames() {
+        //Arrange
+        WeatherData expected = weatherService.getWeather("Moscow");
+        //Act
+        WeatherData lowerCase = weatherService.getWeather(" moscow ");
+        WeatherData upperCase = weatherService.getWeather("MOSCOW");
+        WeatherData alias = weatherService.getWeather("Москва");
+        //Assert
+        assertEquals(1, openMeteo.forecastRequests());
+        assertEquals(2, openMeteo.geocodingRequests());
+        assertEquals(expected.temperature(), alias.temperature());
+        assertEquals(expected.coordinates(), upperCase.coordinates());
+        assertEquals(" moscow ", lowerCase.city());
+        assertEquals("Москва", alias.city());
+        assertEquals(3, weatherService.getLocalCacheStats().hits());
+    }
+
+    @Test
+    public void getWeatherBatch_shouldRequestLocationOnce_ForCitiesWithSameCoordinates() {
+        //Arrange
+        //Act
+        Map<String, WeatherData> weather = weatherService.getWeatherBatch(List.of("Moscow", "Москва", "Paris"));
+        //Assert
+        assertEquals(List.of("Moscow", "Москва", "Paris"), List.copyOf(weather.keySet()));
+        assertEquals("Москва", weather.get("Москва").city());
+        assertEquals(weather.get("Moscow").temperature(), weather.get("Москва").temperature());
+        assertEquals("55.75222,48.85341", openMeteo.lastForecastParams().get("latitude"));
+        assertEquals(1, openMeteo.forecastRequests());
+    }
+
+    @Test
+    public void getWeather_shouldFetchOnlyMissingVariables_AndMergeThemIntoCachedForecast() {
+        //Arrange
+        weatherService.getWeather("Moscow");
+        ForecastOptions withPrecipitation = ForecastOptions.parse("temperature_2m,precipitation", "1");
+        //Act
+        WeatherData weatherData = weatherService.getWeather("Moscow", withPrecipitation);
+        String requestedVariables = openMeteo.lastForecastParams().get("hourly");
+        long redisReads = redisServer.commandCount("GET");
+        WeatherData temperatureOnly = weatherService.getWeather("Moscow");
+        //Assert
+        assertEquals("precipitation", requestedVariables);
+        assertEquals(2, openMeteo.forecastRequests());
+        assertEquals(List.of("precipitation", "temperature_2m"), List.copyOf(weatherData.hourly().keySet()));
+        assertEquals(weatherData.temperature(), temperatureOnly.temperature());
+        assertEquals(List.of("temperature_2m"), List.copyOf(temperatureOnly.hourly().keySet()));
+        assertEquals(redisReads, redisServer.commandCount("GET"));
+        assertNotNull(redisService.getSavedWeatherWithTtl(weatherData.coordinates(), List.of("precipitation")));
+    }
+
+    @Test
+    public void getWeather_shouldRefetchVariable_WhenCachedForecastCoversFewerDays() {
+        //Arrange
+        weatherService.getWeather("Paris");
+        //Act
+        WeatherData weatherData = weatherService.getWeather("Paris", ForecastOptions.parse(null, "16"));
+        WeatherData oneDay = weatherService.getWeather("Paris");
+        //Assert
+        assertEquals("16", openMeteo.lastForecastParams().get("forecast_days"));
+        assertEquals(16 * 24, weatherData.temperature().size());
+        assertEquals(24, oneDay.temperature().size());
+        assertEquals(2, openMeteo.forecastRequests());
+    }
+
+    @Test
+    public void getWeather_shouldRecordStageLatencies_WhenForecastIsFetched() {
+        //Arrange
+        Metrics.LatencyHistogram fetch = Metrics.registry().histogram("weather_stage_seconds", "", "stage", "forecast_fetch");
+        Metrics.LatencyHistogram parse = Metrics.registry().histogram("weather_stage_seconds", "", "stage", "forecast_parse");
+        long fetches = fetch.count();
+        long parses = parse.count();
+        //Act
+        weatherService.getWeather("Berlin");
+        weatherService.getWeather("Berlin");
+        String metrics = Metrics.registry().scrape();
+        //Assert
+        assertEquals(fetches + 1, fetch.count());
+        assertEquals(parses + 1, parse.count());
+        assertTrue(metrics.contains("weather_stage_seconds_count{stage=\"forecast_fetch\"}"));
+        assertTrue(metrics.contains("upstream_requests_total{api=\"forecast\",outcome=\"success\"}"));
+        assertTrue(metrics.contains("weather_loads_in_flight 0"));
+    }
+}
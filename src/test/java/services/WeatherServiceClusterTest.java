@@ -0,0 +1,124 @@
+package services;
+
+import data.WeatherData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import stubs.FakeRedisServer;
+import stubs.OpenMeteoStub;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Два экземпляра сервиса в одном процессе с общими заглушками Redis и Open-Meteo
+ */
+public class WeatherServiceClusterTest {
+    private static final ForecastOptions TEMPERATURE_AND_PRECIPITATION = ForecastOptions.parse("temperature_2m,precipitation", "1");
+
+    private FakeRedisServer redisServer;
+    private OpenMeteoStub openMeteo;
+    private RedisService firstRedis;
+    private RedisService secondRedis;
+    private WeatherService first;
+    private WeatherService second;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        redisServer = new FakeRedisServer();
+        openMeteo = new OpenMeteoStub();
+        firstRedis = new RedisService(RedisSettings.of(redisServer.host(), redisServer.port()));
+        secondRedis = new RedisService(RedisSettings.of(redisServer.host(), redisServer.port()));
+        first = createInstance(firstRedis);
+        second = createInstance(secondRedis);
+        // Сообщения доставляются только подписанным экземплярам
+        awaitTrue(() -> redisServer.subscriberCount(RedisService.EVENTS_CHANNEL) == 2);
+    }
+
+    private WeatherService createInstance(RedisService redis) {
+        GeolocationService geolocation = new GeolocationService(openMeteo.geocodingUrl(), redis, UpstreamClient.shared(),
+                BreakerSettings.fromConfig());
+        return new WeatherService(geolocation, redis, openMeteo.forecastUrl(), RefreshSettings.disabled(),
+                UpstreamClient.shared(), BreakerSettings.fromConfig(), new ClusterSettings(true, 5000));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        first.close();
+        second.close();
+        firstRedis.close();
+        secondRedis.close();
+        redisServer.close();
+        openMeteo.close();
+    }
+
+    @Test
+    public void getWeather_shouldLoadLocationOnce_WhenInstancesMissConcurrently() {
+        //Arrange
+        openMeteo.setLatencyMillis(300);
+        //Act
+        CompletableFuture<WeatherData> firstLoad = first.getWeatherAsync("Berlin");
+        CompletableFuture<WeatherData> secondLoad = second.getWeatherAsync("Berlin");
+        WeatherData firstData = firstLoad.join();
+        WeatherData secondData = secondLoad.join();
+        //Assert
+        assertEquals(1, openMeteo.forecastRequests());
+        assertEquals(firstData.temperature(), secondData.temperature());
+        assertEquals(1, redisServer.commandCount("EVAL"));
+    }
+
+    @Test
+    public void update_shouldReachOtherInstanceLocalCache() throws Exception {
+        //Arrange
+        first.getWeather("Paris");
+        second.getWeather("Paris");
+        //Act
+        first.getWeather("Paris", TEMPERATURE_AND_PRECIPITATION);
+        awaitTrue(() -> second.isCachedLocally("Paris", TEMPERATURE_AND_PRECIPITATION));
+        long forecastRequests = openMeteo.forecastRequests();
+        WeatherData secondData = second.getWeather("Paris", TEMPERATURE_AND_PRECIPITATION);
+        //Assert
+        assertEquals(2, forecastRequests);
+        assertEquals(forecastRequests, openMeteo.forecastRequests());
+        assertNotNull(secondData.hourly().get("precipitation"));
+    }
+
+    @Test
+    public void invalidate_shouldRemoveForecastFromAllInstances() throws Exception {
+        //Arrange
+        WeatherData data = first.getWeather("Paris");
+        second.getWeather("Paris");
+        //Act
+        first.invalidate(data.coordinates());
+        awaitTrue(() -> !second.isCachedLocally("Paris", ForecastOptions.DEFAULT));
+        second.getWeather("Paris");
+        //Assert
+        assertFalse(first.isCachedLocally("Paris", ForecastOptions.DEFAULT));
+        assertEquals(2, openMeteo.forecastRequests());
+    }
+
+    @Test
+    public void getWeather_shouldLoadWithoutWaiting_WhenLockCommandFails() {
+        //Arrange
+        redisServer.failCommand("SET");
+        long start = System.nanoTime();
+        //Act
+        WeatherData data = first.getWeather("Berlin");
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        //Assert
+        assertNotNull(data);
+        assertEquals(1, openMeteo.forecastRequests());
+        assertTrue(elapsedMillis < 2500, "Load waited for the lock lease: " + elapsedMillis + " ms");
+        assertEquals(0, redisServer.commandCount("EVAL"));
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Condition was not met in 5 seconds");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package services;
+
+import data.CachedCoordinates;
+import data.Coordinates;
+import data.HourlyForecast;
+import data.WeatherData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import stubs.FakeRedisServer;
+import stubs.OpenMeteoStub;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WeatherServiceFaultToleranceTest {
+    private final WeatherData mockData = new WeatherData("Moscow", new Coordinates("55.75222", "37.61556"),
+            HourlyForecast.hourly(1_700_000_000L / 3600 * 3600, 15.5, 16.0));
+
+    private FakeRedisServer redisServer;
+    private OpenMeteoStub openMeteo;
+    private RedisService redisService;
+    private GeolocationService geolocation;
+    private WeatherService weatherService;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        redisServer = new FakeRedisServer();
+        openMeteo = new OpenMeteoStub();
+        redisService = new RedisService(RedisSettings.of(redisServer.host(), redisServer.port()));
+        // Без повторов: каждая ошибка заглушки сразу видна выключателю
+        UpstreamClient upstream = new UpstreamClient(new HttpSettings(1000, 1000, 2000, 0, 0, 16, 16, 4, 30));
+        BreakerSettings breakerSettings = new BreakerSettings(2, 60_000, 8, 3_600_000);
+        geolocation = new GeolocationService(openMeteo.geocodingUrl(), null, upstream, breakerSettings);
+        weatherService = new WeatherService(geolocation, redisService, openMeteo.forecastUrl(), RefreshSettings.disabled(), upstream, breakerSettings);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        weatherService.close();
+        redisService.close();
+        redisServer.close();
+        openMeteo.close();
+    }
+
+    @Test
+    public void getWeather_shouldServeExpiredForecast_AndFailFast_WhenForecastApiIsDown() throws Exception {
+        //Arrange
+        redisService.saveWeather(mockData, 1);
+        weatherService.getWeather("Moscow");
+        weatherService.getWeather("Paris");
+        Thread.sleep(1100);
+        openMeteo.setErrorRate(1);
+        //Act
+        WeatherData first = weatherService.getWeather("Moscow");
+        WeatherData second = weatherService.getWeather(" moscow");
+        long requestsWhenOpen = openMeteo.forecastRequests();
+        WeatherData third = weatherService.getWeather("Moscow");
+        //Assert
+        assertEquals(mockData.temperature(), first.temperature());
+        assertEquals(mockData.temperature(), second.temperature());
+        assertEquals(mockData.temperature(), third.temperature());
+        assertEquals(CircuitBreaker.State.OPEN, weatherService.getBreakerState());
+        assertEquals(requestsWhenOpen, openMeteo.forecastRequests());
+        assertTrue(weatherService.getExpiresAt(first.coordinates()) <= System.currentTimeMillis());
+        assertTrue(Metrics.registry().scrape().contains("upstream_circuit_state{api=\"forecast\"} 2"));
+    }
+
+    @Test
+    public void getWeather_shouldThrowUpstreamException_WhenNoForecastIsKnown() {
+        //Arrange
+        geolocation.getCoordinates("Berlin");
+        openMeteo.setErrorRate(1);
+        //Act
+        CompletionException exception = assertThrows(CompletionException.class, () -> weatherService.getWeather("Berlin"));
+        //Assert
+        assertInstanceOf(UpstreamException.class, exception.getCause());
+        assertEquals(503, WeatherViewer.failureStatus(exception));
+        assertEquals(1, openMeteo.forecastRequests());
+    }
+
+    @Test
+    public void getWeather_shouldThrowUpstreamException_WhenGeocodingApiIsDown() {
+        //Arrange
+        openMeteo.setErrorRate(1);
+        //Act
+        CompletionException exception = assertThrows(CompletionException.class, () -> weatherService.getWeather("Berlin"));
+        //Assert
+        assertInstanceOf(UpstreamException.class, exception.getCause());
+        assertEquals(0, openMeteo.forecastRequests());
+    }
+
+    @Test
+    public void getWeather_shouldReturnFreshForecast_WhenRedisConnectionFailsOnWrite() {
+        //Arrange
+        Metrics.Counter staleResponses = Metrics.registry().counter("weather_stale_responses_total",
+                "Forecasts served past their TTL because the forecast API is unavailable");
+        long staleBefore = staleResponses.sum();
+        redisServer.dropConnectionOn("SETEX");
+        //Act
+        WeatherData data = weatherService.getWeather("Berlin");
+        //Assert
+        assertNotNull(data);
+        assertEquals(1, openMeteo.forecastRequests());
+        assertEquals(staleBefore, staleResponses.sum());
+    }
+
+    @Test
+    public void getWeather_shouldLoadFromForecastApi_WhenRedisIsDown() throws Exception {
+        //Arrange
+        redisServer.close();
+        //Act
+        WeatherData data = weatherService.getWeather("Berlin");
+        Map<String, WeatherData> batch = weatherService.getWeatherBatch(List.of("Paris", "Rome"));
+        //Assert
+        assertNotNull(data);
+        assertEquals(2, batch.size());
+        assertEquals(2, openMeteo.forecastRequests());
+    }
+
+    @Test
+    public void redisWrites_shouldReturnFalse_WhenRedisIsDown() throws Exception {
+        //Arrange
+        redisServer.close();
+        //Act
+        boolean coordinatesSaved = redisService.saveCoordinates("moscow", new CachedCoordinates(mockData.coordinates()), 60);
+        boolean weatherDeleted = redisService.deleteWeather(mockData.coordinates(), List.of(WeatherData.TEMPERATURE));
+        //Assert
+        assertFalse(coordinatesSaved);
+        assertFalse(weatherDeleted);
+    }
+}
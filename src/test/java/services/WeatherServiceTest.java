@@ -1,13 +1,11 @@
 package services;
 
 import data.Coordinates;
-import data.Temperature;
+import data.HourlyForecast;
 import data.WeatherData;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
-import java.util.ArrayList;
-import java.util.List;
 
 public class WeatherServiceTest {
     private final GeolocationService mockGeolocationService = new GeolocationService();
@@ -22,7 +20,7 @@ public class WeatherServiceTest {
     @Test
     public void getWeather_ShouldReturnWeather_WhenDataNotYetExists() {
         //Arrange
-        WeatherData mockData = new WeatherData("Paris", new Coordinates("48.85341","2.3488"), new ArrayList<Temperature>());
+        WeatherData mockData = new WeatherData("Paris", new Coordinates("48.85341","2.3488"), HourlyForecast.hourly(0));
         //Act
         WeatherData weatherData = weatherService.getWeather("Paris");
         //Assert
@@ -34,7 +32,7 @@ public class WeatherServiceTest {
     @Test
     public void getWeather_ShouldReturnWeatherFromCash_WhenDataExists() {
         //Arrange
-        List<Temperature> mockTemperature = List.of(new Temperature("12:00", 15.5), new Temperature("13:00", 16.0));
+        HourlyForecast mockTemperature = HourlyForecast.hourly(1_700_000_000L, 15.5, 16.0);
         WeatherData mockData = new WeatherData("Moscow", new Coordinates("55.75222", "37.61556"), mockTemperature);
         mockRedisService.saveWeather(mockData,2);
         //Act
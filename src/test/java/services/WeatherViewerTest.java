@@ -0,0 +1,339 @@
+package services;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import data.Coordinates;
+import data.HourlyForecast;
+import data.WeatherData;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import spark.Spark;
+import stubs.FakeRedisServer;
+import stubs.OpenMeteoStub;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WeatherViewerTest {
+    private static FakeRedisServer redisServer;
+    private static OpenMeteoStub openMeteo;
+    private static RedisService redisService;
+    private static WeatherService weatherService;
+    private static WeatherViewer viewer;
+    private static HttpClient client;
+    private static String baseUrl;
+    private static final AtomicBoolean ready = new AtomicBoolean(true);
+    private static final String RATE_TEST_KEY = "rate-test-key";
+    // Каждый запрос приходит через "балансировщик" от своего клиента, чтобы тесты не делили бюджет промахов кэша
+    private static final AtomicInteger clients = new AtomicInteger();
+
+    @BeforeAll
+    public static void startServer() throws Exception {
+        redisServer = new FakeRedisServer();
+        openMeteo = new OpenMeteoStub();
+        redisService = new RedisService(RedisSettings.of(redisServer.host(), redisServer.port()));
+        weatherService = new WeatherService(new GeolocationService(openMeteo.geocodingUrl()), redisService,
+                openMeteo.forecastUrl(), RefreshSettings.disabled());
+        Spark.port(0);
+        // Бюджет промахов почти не пополняется, чтобы его исчерпание было видно в тесте
+        viewer = new WeatherViewer(weatherService, new SvgChartRenderer(),
+                new RateLimitSettings(true, 1000, 1000, 0.01, 10, List.of(RATE_TEST_KEY), List.of("127.0.0.1", "::1"), 1000));
+        viewer.setupRoutes(ready::get);
+        Spark.awaitInitialization();
+        baseUrl = "http://localhost:" + Spark.port();
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterAll
+    public static void stopServer() throws Exception {
+        Spark.stop();
+        Spark.awaitStop();
+        weatherService.close();
+        redisService.close();
+        redisServer.close();
+        openMeteo.close();
+    }
+
+    @Test
+    public void getWeather_shouldSendGzipPage_WithCacheHeaders() throws Exception {
+        //Act
+        HttpResponse<byte[]> response = send(HttpRequest.newBuilder(URI.create(baseUrl + "/weather?city=Moscow"))
+                .header("Accept-Encoding", "br, gzip;q=0.8"));
+        String html = new String(new GZIPInputStream(new ByteArrayInputStream(response.body())).readAllBytes(), StandardCharsets.UTF_8);
+        long maxAge = Long.parseLong(response.headers().firstValue("Cache-Control").orElseThrow().replaceAll("\\D", ""));
+        //Assert
+        assertEquals(200, response.statusCode());
+        assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElse(null));
+        assertTrue(html.contains("Moscow"));
+        assertTrue(html.contains(">Temperature (C)<"));
+        assertTrue(response.body().length < html.length() / 2);
+        assertTrue(response.headers().firstValue("ETag").orElseThrow().endsWith("-gzip\""));
+        assertTrue(maxAge > 800 && maxAge <= 900, "max-age " + maxAge);
+        assertEquals("Accept, Accept-Encoding", response.headers().firstValue("Vary").orElse(null));
+        assertTrue(response.headers().firstValue("Last-Modified").isPresent());
+    }
+
+    @Test
+    public void getWeather_shouldReturn304_WhenEtagMatches() throws Exception {
+        //Arrange
+        HttpResponse<byte[]> first = send(HttpRequest.newBuilder(URI.create(baseUrl + "/weather?city=Paris")));
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+        long forecastRequests = openMeteo.forecastRequests();
+        //Act
+        HttpResponse<byte[]> conditional = send(HttpRequest.newBuilder(URI.create(baseUrl + "/weather?city=Paris"))
+                .header("If-None-Match", "\"other\", W/" + etag));
+        HttpResponse<byte[]> gzipVariant = send(HttpRequest.newBuilder(URI.create(baseUrl + "/weather?city=Paris"))
+                .header("Accept-Encoding", "gzip")
+                .header("If-None-Match", etag));
+        //Assert
+        assertEquals(200, first.statusCode());
+        assertFalse(first.headers().firstValue("Content-Encoding").isPresent());
+        assertTrue(new String(first.body(), StandardCharsets.UTF_8).contains("Paris"));
+        assertEquals(304, conditional.statusCode());
+        assertEquals(0, conditional.body().length);
+        assertEquals(etag, conditional.headers().firstValue("ETag").orElse(null));
+        assertEquals(200, gzipVariant.statusCode());
+        assertEquals(forecastRequests, openMeteo.forecastRequests());
+    }
+
+    @Test
+    public void getWeatherJson_shouldServeForecastWithoutRenderingChart() throws Exception {
+        //Arrange
+        long charts = viewer.getChartCacheStats().misses();
+        //Act
+        HttpResponse<byte[]> api = send(HttpRequest.newBuilder(
+                URI.create(baseUrl + "/api/weather?city=Berlin&variables=temperature_2m,precipitation&days=2")));
+        HttpResponse<byte[]> negotiated = send(HttpRequest.newBuilder(URI.create(baseUrl + "/weather?city=Berlin"))
+                .header("Accept", "application/json, text/html;q=0.5"));
+        String json = new String(api.body(), StandardCharsets.UTF_8);
+        //Assert
+        assertEquals(200, api.statusCode());
+        assertTrue(api.headers().firstValue("Content-Type").orElseThrow().startsWith("application/json"));
+        assertTrue(json.contains("\"precipitation\"") && json.contains("\"temperature_2m\""));
+        assertEquals(200, negotiated.statusCode());
+        assertTrue(negotiated.headers().firstValue("Content-Type").orElseThrow().startsWith("application/json"));
+        assertEquals("Accept, Accept-Encoding", negotiated.headers().firstValue("Vary").orElse(null));
+        assertFalse(new String(negotiated.body(), StandardCharsets.UTF_8).contains("precipitation"));
+        assertEquals(charts, viewer.getChartCacheStats().misses());
+    }
+
+    @Test
+    public void getWeatherJson_shouldWriteNull_WhenHourlyValueIsMissing() throws Exception {
+        //Arrange
+        openMeteo.setMissingHour(3);
+        HttpResponse<byte[]> api;
+        HttpResponse<byte[]> negotiated;
+        HttpResponse<byte[]> batch;
+        try {
+            //Act
+            api = send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/weather?city=Gapville")));
+            negotiated = send(HttpRequest.newBuilder(URI.create(baseUrl + "/weather?city=Gapville"))
+                    .header("Accept", "application/json"));
+            batch = send(HttpRequest.newBuilder(URI.create(baseUrl + "/weather/batch?cities=Gapville,Gaptown")));
+        } finally {
+            openMeteo.setMissingHour(-1);
+        }
+        //Assert
+        assertEquals(200, api.statusCode());
+        assertTrue(new String(api.body(), StandardCharsets.UTF_8).contains(",null,"));
+        assertEquals(200, negotiated.statusCode());
+        assertTrue(new String(negotiated.body(), StandardCharsets.UTF_8).contains(",null,"));
+        assertEquals(200, batch.statusCode());
+        assertTrue(new String(batch.body(), StandardCharsets.UTF_8).contains(",null,"));
+    }
+
+    @Test
+    public void getWeather_shouldEscapeCityName_InCachedPage() throws Exception {
+        //Act
+        HttpResponse<byte[]> response = send(HttpRequest.newBuilder(
+                URI.create(baseUrl + "/weather?city=%3Cscript%3Ealert(1)%3C/script%3E")));
+        String html = new String(response.body(), StandardCharsets.UTF_8);
+        //Assert
+        assertEquals(200, response.statusCode());
+        assertFalse(html.contains("<script>alert(1)"));
+        assertTrue(html.contains("The weather in &lt;script&gt;alert(1)&lt;/script&gt;"));
+    }
+
+    @Test
+    public void renderCaches_shouldShareEntries_ForSpellingsOfOneCity() throws Exception {
+        //Arrange
+        LocalCache.Stats charts = viewer.getChartCacheStats();
+        LocalCache.Stats pages = viewer.getPageCacheStats();
+        LocalCache.Stats json = viewer.getJsonCacheStats();
+        //Act
+        HttpResponse<byte[]> first = send(HttpRequest.newBuilder(URI.create(baseUrl + "/weather?city=Oslo")));
+        HttpResponse<byte[]> spaced = send(HttpRequest.newBuilder(URI.create(baseUrl + "/weather?city=%20%20oslo%20")));
+        HttpResponse<byte[]> upper = send(HttpRequest.newBuilder(URI.create(baseUrl + "/weather?city=OSLO")));
+        HttpResponse<byte[]> firstJson = send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/weather?city=oslo")));
+        HttpResponse<byte[]> upperJson = send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/weather?city=OSLO")));
+        //Assert
+        assertEquals(charts.misses() + 1, viewer.getChartCacheStats().misses());
+        assertEquals(pages.misses() + 1, viewer.getPageCacheStats().misses());
+        assertEquals(pages.hits() + 2, viewer.getPageCacheStats().hits());
+        assertEquals(json.misses() + 1, viewer.getJsonCacheStats().misses());
+        assertEquals(first.headers().firstValue("ETag"), upper.headers().firstValue("ETag"));
+        assertArrayEquals(first.body(), spaced.body());
+        assertTrue(new String(first.body(), StandardCharsets.UTF_8).contains("The weather in Oslo"));
+        assertArrayEquals(firstJson.body(), upperJson.body());
+        assertTrue(new String(upperJson.body(), StandardCharsets.UTF_8).contains("\"city\":\"Oslo\""));
+    }
+
+    @Test
+    public void renderPage_shouldRebuildChartAndPage_WhenForecastVersionChanges() {
+        //Arrange
+        Coordinates bergen = new Coordinates("60.39299", "5.32415");
+        long hour = System.currentTimeMillis() / 1000 / 3600 * 3600;
+        WeatherData first = new WeatherData("Bergen", bergen, HourlyForecast.hourly(hour, 10.5, 11.0));
+        WeatherData updated = new WeatherData("Bergen", bergen, HourlyForecast.hourly(hour, 10.5, 12.0));
+        LocalCache.Stats charts = viewer.getChartCacheStats();
+        //Act
+        RenderedPage firstPage = viewer.renderPage("Bergen", first);
+        RenderedPage cachedPage = viewer.renderPage("bergen", first);
+        RenderedPage updatedPage = viewer.renderPage("Bergen", updated);
+        String metrics = Metrics.registry().scrape();
+        //Assert
+        assertSame(firstPage, cachedPage);
+        assertNotEquals(firstPage.etag(false), updatedPage.etag(false));
+        assertEquals(charts.misses() + 2, viewer.getChartCacheStats().misses());
+        assertTrue(metrics.contains("cache_hit_ratio{cache=\"chart\"}"));
+        assertTrue(metrics.contains("cache_hit_ratio{cache=\"page\"}"));
+    }
+
+    @Test
+    public void getWeatherBatch_shouldFetchUncachedCities_WithOneForecastRequest() throws Exception {
+        //Arrange
+        HttpResponse<byte[]> warm = send(HttpRequest.newBuilder(
+                URI.create(baseUrl + "/api/weather?city=Batchburg&variables=temperature_2m,precipitation&days=2")));
+        assertEquals(200, warm.statusCode());
+        long forecastRequests = openMeteo.forecastRequests();
+        //Act
+        HttpResponse<byte[]> batch = send(HttpRequest.newBuilder(URI.create(baseUrl
+                + "/weather/batch?cities=Batchburg,%20Batchford%20,,Batchton,Nowhereburg&variables=precipitation&days=2")));
+        JsonObject json = JsonParser.parseString(new String(batch.body(), StandardCharsets.UTF_8)).getAsJsonObject();
+        //Assert
+        assertEquals(200, batch.statusCode());
+        assertTrue(batch.headers().firstValue("Content-Type").orElseThrow().startsWith("application/json"));
+        assertEquals(List.of("Batchburg", "Batchford", "Batchton", "Nowhereburg"), List.copyOf(json.keySet()));
+        assertEquals(forecastRequests + 1, openMeteo.forecastRequests());
+        assertEquals(2, openMeteo.lastForecastParams().get("latitude").split(",").length);
+        assertEquals("2", openMeteo.lastForecastParams().get("forecast_days"));
+        for (String city : List.of("Batchburg", "Batchford", "Batchton")) {
+            JsonObject hourly = json.getAsJsonObject(city).getAsJsonObject("hourly");
+            assertEquals(city, json.getAsJsonObject(city).get("city").getAsString());
+            assertTrue(hourly.has("precipitation"));
+            assertFalse(hourly.has("temperature_2m"));
+        }
+        assertTrue(json.get("Nowhereburg").isJsonNull());
+    }
+
+    @Test
+    public void getWeatherBatch_shouldReturn400_WhenParametersAreInvalid() throws Exception {
+        //Arrange
+        StringBuilder tooMany = new StringBuilder();
+        for (int i = 0; i <= WeatherViewer.BATCH_MAX_CITIES; i++) {
+            tooMany.append(i == 0 ? "" : ",").append("Overflow").append(i);
+        }
+        long geocodingRequests = openMeteo.geocodingRequests();
+        long forecastRequests = openMeteo.forecastRequests();
+        //Act
+        HttpResponse<byte[]> missing = send(HttpRequest.newBuilder(URI.create(baseUrl + "/weather/batch")));
+        HttpResponse<byte[]> blank = send(HttpRequest.newBuilder(URI.create(baseUrl + "/weather/batch?cities=,%20,")));
+        HttpResponse<byte[]> overLimit = send(HttpRequest.newBuilder(URI.create(baseUrl + "/weather/batch?cities=" + tooMany)));
+        HttpResponse<byte[]> badDays = send(HttpRequest.newBuilder(URI.create(baseUrl + "/weather/batch?cities=Berlin&days=100")));
+        HttpResponse<byte[]> badVariable = send(HttpRequest.newBuilder(
+                URI.create(baseUrl + "/weather/batch?cities=Berlin&variables=snowfall_depth")));
+        //Assert
+        assertEquals(400, missing.statusCode());
+        assertEquals(400, blank.statusCode());
+        assertEquals(400, overLimit.statusCode());
+        assertEquals(400, badDays.statusCode());
+        assertEquals(400, badVariable.statusCode());
+        assertEquals(geocodingRequests, openMeteo.geocodingRequests());
+        assertEquals(forecastRequests, openMeteo.forecastRequests());
+    }
+
+    @Test
+    public void getWeather_shouldReturn404_WhenCityIsNotFound() throws Exception {
+        //Act
+        HttpResponse<byte[]> html = send(HttpRequest.newBuilder(URI.create(baseUrl + "/weather?city=Nowhereville")));
+        HttpResponse<byte[]> json = send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/weather?city=Nowhereville")));
+        HttpResponse<byte[]> badDays = send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/weather?city=Berlin&days=100")));
+        //Assert
+        assertEquals(404, html.statusCode());
+        assertEquals(404, json.statusCode());
+        assertEquals(400, badDays.statusCode());
+        assertTrue(Metrics.registry().scrape().contains("http_responses_total{route=\"/api/weather\",status=\"4xx\"}"));
+    }
+
+    @Test
+    public void weather_shouldReturn429_WhenClientExceedsCacheMissBudget() throws Exception {
+        //Arrange
+        for (int i = 1; i <= 10; i++) {
+            HttpResponse<byte[]> miss = send(HttpRequest.newBuilder(URI.create(baseUrl + "/weather?city=Limited" + i))
+                    .header("X-Api-Key", RATE_TEST_KEY));
+            assertEquals(200, miss.statusCode());
+        }
+        long forecastRequests = openMeteo.forecastRequests();
+        //Act
+        HttpResponse<byte[]> limited = send(HttpRequest.newBuilder(URI.create(baseUrl + "/weather?city=Limited11"))
+                .header("X-Api-Key", RATE_TEST_KEY));
+        HttpResponse<byte[]> cached = send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/weather?city=Limited1"))
+                .header("X-Api-Key", RATE_TEST_KEY));
+        //Assert
+        assertEquals(429, limited.statusCode());
+        assertTrue(Long.parseLong(limited.headers().firstValue("Retry-After").orElseThrow()) >= 1);
+        assertEquals(forecastRequests, openMeteo.forecastRequests());
+        assertEquals(200, cached.statusCode());
+    }
+
+    @Test
+    public void ready_shouldReturn503_UntilWarmUpIsDone() throws Exception {
+        //Arrange
+        ready.set(false);
+        //Act
+        HttpResponse<byte[]> warmingUp = send(HttpRequest.newBuilder(URI.create(baseUrl + "/ready")));
+        ready.set(true);
+        HttpResponse<byte[]> done = send(HttpRequest.newBuilder(URI.create(baseUrl + "/ready")));
+        //Assert
+        assertEquals(503, warmingUp.statusCode());
+        assertEquals(200, done.statusCode());
+        assertEquals("ready", new String(done.body(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void prefersJson_shouldCompareQualityOfJsonAndHtml() {
+        //Assert
+        assertTrue(WeatherViewer.prefersJson("application/json"));
+        assertTrue(WeatherViewer.prefersJson("text/html;q=0.1, application/*"));
+        assertFalse(WeatherViewer.prefersJson("text/html,application/xhtml+xml,*/*;q=0.8"));
+        assertFalse(WeatherViewer.prefersJson("*/*"));
+        assertFalse(WeatherViewer.prefersJson(null));
+    }
+
+    @Test
+    public void acceptsGzip_shouldRespectQualityValues() {
+        //Assert
+        assertTrue(WeatherViewer.acceptsGzip("gzip, deflate, br"));
+        assertTrue(WeatherViewer.acceptsGzip("*"));
+        assertFalse(WeatherViewer.acceptsGzip("gzip;q=0"));
+        assertFalse(WeatherViewer.acceptsGzip("identity"));
+        assertFalse(WeatherViewer.acceptsGzip(null));
+    }
+
+    private static HttpResponse<byte[]> send(HttpRequest.Builder request) throws Exception {
+        int clientNumber = clients.incrementAndGet();
+        request.header("X-Forwarded-For", "198.18." + clientNumber / 256 + "." + clientNumber % 256);
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
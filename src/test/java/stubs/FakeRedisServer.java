@@ -0,0 +1,414 @@
+package stubs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Упрощенная замена Redis для тестов: принимает соединения по протоколу RESP2
+ * и хранит значения в памяти. Поддерживает команды, которые использует RedisService,
+ * в том числе SUBSCRIBE/PUBLISH и EVAL скрипта снятия блокировки
+ */
+public class FakeRedisServer implements AutoCloseable {
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "fake-redis");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, Value> storage = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> commandCounts = new ConcurrentHashMap<>();
+    private final Map<String, Set<OutputStream>> subscribers = new ConcurrentHashMap<>();
+    private final Set<String> failingCommands = ConcurrentHashMap.newKeySet();
+    private final Set<String> droppingCommands = ConcurrentHashMap.newKeySet();
+    private final List<Socket> sockets = new ArrayList<>();
+
+    public FakeRedisServer() throws IOException {
+        this.serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+        connections.submit(this::acceptLoop);
+    }
+
+    public String host() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Возвращает количество выполненных команд указанного типа (например: "GET")
+     */
+    public long commandCount(String command) {
+        AtomicLong counter = commandCounts.get(command.toUpperCase(Locale.ROOT));
+        return counter == null ? 0 : counter.get();
+    }
+
+    /**
+     * Возвращает количество соединений, подписанных на канал
+     */
+    public int subscriberCount(String channel) {
+        return subscribers.getOrDefault(channel, Set.of()).size();
+    }
+
+    /**
+     * Задает команду (например: "SET"), на которую сервер будет отвечать ошибкой
+     */
+    public void failCommand(String command) {
+        failingCommands.add(command.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Задает команду (например: "SETEX"), получив которую сервер закрывает соединение без ответа
+     */
+    public void dropConnectionOn(String command) {
+        droppingCommands.add(command.toUpperCase(Locale.ROOT));
+    }
+
+    public void flushAll() {
+        storage.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        synchronized (sockets) {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+        connections.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                synchronized (sockets) {
+                    sockets.add(socket);
+                }
+                connections.submit(() -> serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        Set<String> channels = new LinkedHashSet<>();
+        OutputStream subscriberOut = null;
+        try (socket;
+             InputStream in = new BufferedInputStream(socket.getInputStream());
+             OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+            subscriberOut = out;
+            while (true) {
+                List<byte[]> command = readCommand(in);
+                if (command == null) {
+                    return;
+                }
+                String name = text(command.get(0)).toUpperCase(Locale.ROOT);
+                commandCounts.computeIfAbsent(name, k -> new AtomicLong()).incrementAndGet();
+                if (droppingCommands.contains(name)) {
+                    return;
+                }
+                // В поток подписчика также пишут потоки, выполняющие PUBLISH
+                synchronized (out) {
+                    execute(name, command, out, channels);
+                    // Как и Redis, отвечаем на всю пачку конвейерных команд одной записью в сокет
+                    if (in.available() == 0) {
+                        out.flush();
+                    }
+                }
+                if (name.equals("QUIT")) {
+                    return;
+                }
+            }
+        } catch (IOException ignored) {
+            // Клиент закрыл соединение
+        } finally {
+            for (String channel : channels) {
+                subscribers.getOrDefault(channel, Set.of()).remove(subscriberOut);
+            }
+        }
+    }
+
+    private void execute(String name, List<byte[]> args, OutputStream out, Set<String> channels) throws IOException {
+        if (failingCommands.contains(name)) {
+            writeError(out, "ERR injected failure");
+            return;
+        }
+        switch (name) {
+            case "PING" -> writeSimple(out, "PONG");
+            case "QUIT", "SELECT", "CLIENT", "AUTH" -> writeSimple(out, "OK");
+            case "ECHO" -> writeBulk(out, args.get(1));
+            case "FLUSHALL", "FLUSHDB" -> {
+                storage.clear();
+                writeSimple(out, "OK");
+            }
+            case "GET" -> writeBulk(out, read(text(args.get(1))));
+            case "MGET" -> {
+                writeArrayHeader(out, args.size() - 1);
+                for (int i = 1; i < args.size(); i++) {
+                    writeBulk(out, read(text(args.get(i))));
+                }
+            }
+            case "SET" -> set(args, out);
+            case "SETEX", "PSETEX" -> {
+                long ttl = Long.parseLong(text(args.get(2)));
+                if (ttl <= 0) {
+                    writeError(out, "ERR invalid expire time in '" + name.toLowerCase(Locale.ROOT) + "' command");
+                    return;
+                }
+                long ttlMillis = name.equals("SETEX") ? ttl * 1000 : ttl;
+                storage.put(text(args.get(1)), new Value(args.get(3), System.currentTimeMillis() + ttlMillis));
+                writeSimple(out, "OK");
+            }
+            case "DEL" -> {
+                long removed = 0;
+                for (int i = 1; i < args.size(); i++) {
+                    if (read(text(args.get(i))) != null && storage.remove(text(args.get(i))) != null) {
+                        removed++;
+                    }
+                }
+                writeInteger(out, removed);
+            }
+            case "EXISTS" -> writeInteger(out, read(text(args.get(1))) == null ? 0 : 1);
+            case "EXPIRE" -> {
+                String key = text(args.get(1));
+                byte[] value = read(key);
+                if (value == null) {
+                    writeInteger(out, 0);
+                    return;
+                }
+                storage.put(key, new Value(value, System.currentTimeMillis() + Long.parseLong(text(args.get(2))) * 1000));
+                writeInteger(out, 1);
+            }
+            case "TTL", "PTTL" -> {
+                String key = text(args.get(1));
+                Value value = storage.get(key);
+                if (read(key) == null) {
+                    writeInteger(out, -2);
+                } else if (value.expiresAt == Long.MAX_VALUE) {
+                    writeInteger(out, -1);
+                } else {
+                    long millis = value.expiresAt - System.currentTimeMillis();
+                    writeInteger(out, name.equals("TTL") ? (millis + 999) / 1000 : millis);
+                }
+            }
+            case "SUBSCRIBE" -> {
+                for (int i = 1; i < args.size(); i++) {
+                    String channel = text(args.get(i));
+                    channels.add(channel);
+                    subscribers.computeIfAbsent(channel, k -> ConcurrentHashMap.newKeySet()).add(out);
+                    writeArrayHeader(out, 3);
+                    writeBulk(out, "subscribe".getBytes(StandardCharsets.UTF_8));
+                    writeBulk(out, args.get(i));
+                    writeInteger(out, channels.size());
+                }
+            }
+            case "UNSUBSCRIBE" -> {
+                List<String> removed = new ArrayList<>();
+                for (int i = 1; i < args.size(); i++) {
+                    removed.add(text(args.get(i)));
+                }
+                if (removed.isEmpty()) {
+                    removed.addAll(channels);
+                }
+                if (removed.isEmpty()) {
+                    writeArrayHeader(out, 3);
+                    writeBulk(out, "unsubscribe".getBytes(StandardCharsets.UTF_8));
+                    writeBulk(out, null);
+                    writeInteger(out, 0);
+                }
+                for (String channel : removed) {
+                    channels.remove(channel);
+                    subscribers.getOrDefault(channel, Set.of()).remove(out);
+                    writeArrayHeader(out, 3);
+                    writeBulk(out, "unsubscribe".getBytes(StandardCharsets.UTF_8));
+                    writeBulk(out, channel.getBytes(StandardCharsets.ISO_8859_1));
+                    writeInteger(out, channels.size());
+                }
+            }
+            case "PUBLISH" -> writeInteger(out, publish(args.get(1), args.get(2)));
+            case "EVAL" -> eval(args, out);
+            default -> writeError(out, "ERR unknown command '" + name.toLowerCase(Locale.ROOT) + "'");
+        }
+    }
+
+    /**
+     * Отправляет сообщение всем подписчикам канала
+     * @return количество подписчиков, получивших сообщение
+     */
+    private long publish(byte[] channel, byte[] message) {
+        long received = 0;
+        for (OutputStream subscriber : subscribers.getOrDefault(text(channel), Set.of())) {
+            try {
+                synchronized (subscriber) {
+                    writeArrayHeader(subscriber, 3);
+                    writeBulk(subscriber, "message".getBytes(StandardCharsets.UTF_8));
+                    writeBulk(subscriber, channel);
+                    writeBulk(subscriber, message);
+                    subscriber.flush();
+                }
+                received++;
+            } catch (IOException e) {
+                subscribers.get(text(channel)).remove(subscriber);
+            }
+        }
+        return received;
+    }
+
+    /**
+     * Lua в заглушке не исполняется: поддерживается только скрипт, удаляющий ключ,
+     * если его значение совпадает с ARGV[1] (снятие блокировки)
+     */
+    private void eval(List<byte[]> args, OutputStream out) throws IOException {
+        String script = text(args.get(1));
+        if (!script.contains("== ARGV[1]") || !script.contains("'del'") || !text(args.get(2)).equals("1")) {
+            writeError(out, "ERR script is not supported by FakeRedisServer");
+            return;
+        }
+        String key = text(args.get(3));
+        synchronized (storage) {
+            byte[] value = read(key);
+            if (value == null || !Arrays.equals(value, args.get(4))) {
+                writeInteger(out, 0);
+                return;
+            }
+            storage.remove(key);
+        }
+        writeInteger(out, 1);
+    }
+
+    private void set(List<byte[]> args, OutputStream out) throws IOException {
+        String key = text(args.get(1));
+        long expiresAt = Long.MAX_VALUE;
+        boolean onlyIfAbsent = false;
+        for (int i = 3; i < args.size(); i++) {
+            String option = text(args.get(i)).toUpperCase(Locale.ROOT);
+            switch (option) {
+                case "EX" -> expiresAt = System.currentTimeMillis() + Long.parseLong(text(args.get(++i))) * 1000;
+                case "PX" -> expiresAt = System.currentTimeMillis() + Long.parseLong(text(args.get(++i)));
+                case "NX" -> onlyIfAbsent = true;
+                default -> {
+                    writeError(out, "ERR syntax error");
+                    return;
+                }
+            }
+        }
+        Value value = new Value(args.get(2), expiresAt);
+        if (onlyIfAbsent) {
+            synchronized (storage) {
+                if (read(key) != null) {
+                    writeBulk(out, null);
+                    return;
+                }
+                storage.put(key, value);
+            }
+        } else {
+            storage.put(key, value);
+        }
+        writeSimple(out, "OK");
+    }
+
+    private byte[] read(String key) {
+        Value value = storage.get(key);
+        if (value == null) {
+            return null;
+        }
+        if (value.expiresAt <= System.currentTimeMillis()) {
+            storage.remove(key, value);
+            return null;
+        }
+        return value.data;
+    }
+
+    private static List<byte[]> readCommand(InputStream in) throws IOException {
+        int marker = in.read();
+        if (marker == -1) {
+            return null;
+        }
+        if (marker != '*') {
+            throw new IOException("Unsupported RESP marker: " + (char) marker);
+        }
+        int count = Integer.parseInt(readLine(in));
+        List<byte[]> args = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (in.read() != '$') {
+                throw new IOException("Bulk string expected");
+            }
+            int length = Integer.parseInt(readLine(in));
+            byte[] data = in.readNBytes(length);
+            in.skipNBytes(2);
+            args.add(data);
+        }
+        return args;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c == -1) {
+                throw new IOException("Unexpected end of stream");
+            }
+            line.append((char) c);
+        }
+        in.read();
+        return line.toString();
+    }
+
+    /**
+     * Ключи хранятся как строки ISO-8859-1, чтобы бинарные ключи переводились в строку без потерь
+     */
+    private static String text(byte[] data) {
+        return new String(data, StandardCharsets.ISO_8859_1);
+    }
+
+    private static void writeSimple(OutputStream out, String value) throws IOException {
+        out.write(('+' + value + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeError(OutputStream out, String message) throws IOException {
+        out.write(('-' + message + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeInteger(OutputStream out, long value) throws IOException {
+        out.write((":" + value + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeArrayHeader(OutputStream out, int size) throws IOException {
+        out.write(("*" + size + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeBulk(OutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.write("$-1\r\n".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        out.write(("$" + value.length + "\r\n").getBytes(StandardCharsets.UTF_8));
+        out.write(value);
+        out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private record Value(byte[] data, long expiresAt) {
+    }
+}
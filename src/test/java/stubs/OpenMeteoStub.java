@@ -0,0 +1,272 @@
+package stubs;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Локальная замена API Open-Meteo (геокодинг и прогноз) для тестов.
+ * Отвечает детерминированными данными, позволяет задать задержку ответа и долю ошибок.
+ * Города, название которых начинается с "Nowhere", не находятся
+ */
+public class OpenMeteoStub implements AutoCloseable {
+    private static final Map<String, double[]> KNOWN_CITIES = Map.of(
+            "moscow", new double[]{55.75222, 37.61556},
+            "москва", new double[]{55.75222, 37.61556},
+            "paris", new double[]{48.85341, 2.3488},
+            "berlin", new double[]{52.52437, 13.41053},
+            "london", new double[]{51.50853, -0.12574}
+    );
+
+    static {
+        // Заголовки и тело ответа записываются отдельно, без TCP_NODELAY второй пакет ждет подтверждения первого (~40 мс)
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final AtomicLong geocodingRequests = new AtomicLong();
+    private final AtomicLong forecastRequests = new AtomicLong();
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private volatile Map<String, String> lastForecastParams = Map.of();
+    private volatile String lastGeocodingName;
+    private volatile long latencyMillis;
+    private volatile double errorRate;
+    private volatile int missingHour = -1;
+
+    public OpenMeteoStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/v1/search", this::handleGeocoding);
+        server.createContext("/v1/forecast", this::handleForecast);
+        server.setExecutor(Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "open-meteo-stub");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+    }
+
+    public String geocodingUrl() {
+        return baseUrl() + "/v1/search";
+    }
+
+    public String forecastUrl() {
+        return baseUrl() + "/v1/forecast";
+    }
+
+    public long geocodingRequests() {
+        return geocodingRequests.get();
+    }
+
+    public long forecastRequests() {
+        return forecastRequests.get();
+    }
+
+    /**
+     * Возвращает параметры последнего запроса прогноза (например, "hourly" и "forecast_days")
+     */
+    public Map<String, String> lastForecastParams() {
+        return lastForecastParams;
+    }
+
+    /**
+     * Возвращает декодированный параметр "name" последнего запроса геокодинга
+     */
+    public String lastGeocodingName() {
+        return lastGeocodingName;
+    }
+
+    /**
+     * Задает задержку перед каждым ответом
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Задает долю запросов (от 0 до 1), на которые возвращается ошибка 503
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Задает час, значения которого в ответах прогноза будут null (пропуск данных в Open-Meteo); -1 - без пропусков
+     */
+    public void setMissingHour(int missingHour) {
+        this.missingHour = missingHour;
+    }
+
+    /**
+     * Задает количество следующих запросов, на которые будет возвращена ошибка 503
+     */
+    public void failNext(int requests) {
+        failuresLeft.set(requests);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private String baseUrl() {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort();
+    }
+
+    private void handleGeocoding(HttpExchange exchange) throws IOException {
+        geocodingRequests.incrementAndGet();
+        if (delayOrFail(exchange)) {
+            return;
+        }
+        lastGeocodingName = queryParams(exchange).get("name");
+        String name = lastGeocodingName == null ? "" : lastGeocodingName.trim();
+        if (name.isEmpty() || name.toLowerCase(Locale.ROOT).startsWith("nowhere")) {
+            respond(exchange, 200, "{\"generationtime_ms\":0.5}");
+            return;
+        }
+        double[] coordinates = coordinatesOf(name);
+        String body = String.format(Locale.ROOT,
+                "{\"results\":[{\"id\":%d,\"name\":\"%s\",\"latitude\":%.5f,\"longitude\":%.5f,\"country_code\":\"XX\"}],\"generationtime_ms\":0.5}",
+                Math.abs(name.toLowerCase(Locale.ROOT).hashCode()), name.replace("\"", ""), coordinates[0], coordinates[1]);
+        respond(exchange, 200, body);
+    }
+
+    private void handleForecast(HttpExchange exchange) throws IOException {
+        forecastRequests.incrementAndGet();
+        if (delayOrFail(exchange)) {
+            return;
+        }
+        Map<String, String> params = queryParams(exchange);
+        lastForecastParams = params;
+        String[] latitudes = params.getOrDefault("latitude", "0").split(",");
+        String[] longitudes = params.getOrDefault("longitude", "0").split(",");
+        String[] variables = params.getOrDefault("hourly", "temperature_2m").split(",");
+        int days = Integer.parseInt(params.getOrDefault("forecast_days", "1"));
+
+        if (latitudes.length == 1) {
+            respond(exchange, 200, forecast(latitudes[0], longitudes[0], variables, days, missingHour));
+            return;
+        }
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < latitudes.length; i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append(forecast(latitudes[i], longitudes[i], variables, days, missingHour));
+        }
+        respond(exchange, 200, body.append(']').toString());
+    }
+
+    /**
+     * Строит ответ прогноза в формате Open-Meteo: почасовые значения с полуночи текущих суток (GMT)
+     */
+    public static String forecast(String latitude, String longitude, String[] variables, int days) {
+        return forecast(latitude, longitude, variables, days, -1);
+    }
+
+    /**
+     * Строит ответ прогноза, в котором значения указанного часа равны null
+     */
+    public static String forecast(String latitude, String longitude, String[] variables, int days, int missingHour) {
+        LocalDateTime start = LocalDate.now(ZoneOffset.UTC).atStartOfDay();
+        int hours = days * 24;
+        double seed = Double.parseDouble(latitude) + Double.parseDouble(longitude);
+        StringBuilder body = new StringBuilder();
+        body.append("{\"latitude\":").append(latitude).append(",\"longitude\":").append(longitude)
+                .append(",\"generationtime_ms\":0.05,\"utc_offset_seconds\":0,\"timezone\":\"GMT\",\"timezone_abbreviation\":\"GMT\",\"elevation\":150.0,")
+                .append("\"hourly_units\":{\"time\":\"iso8601\"");
+        for (String variable : variables) {
+            body.append(",\"").append(variable).append("\":\"°C\"");
+        }
+        body.append("},\"hourly\":{\"time\":[");
+        for (int i = 0; i < hours; i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append('"').append(start.plusHours(i)).append('"');
+        }
+        body.append(']');
+        for (int v = 0; v < variables.length; v++) {
+            body.append(",\"").append(variables[v]).append("\":[");
+            for (int i = 0; i < hours; i++) {
+                if (i > 0) {
+                    body.append(',');
+                }
+                if (i == missingHour) {
+                    body.append("null");
+                    continue;
+                }
+                double value = Math.round((seed % 20 + v * 3 + 5 * Math.sin(i * Math.PI / 12)) * 10) / 10.0;
+                body.append(value);
+            }
+            body.append(']');
+        }
+        return body.append("}}").toString();
+    }
+
+    private boolean delayOrFail(HttpExchange exchange) throws IOException {
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        boolean forcedFailure = failuresLeft.getAndUpdate(left -> Math.max(0, left - 1)) > 0;
+        if (forcedFailure || errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            respond(exchange, 503, "{\"error\":true,\"reason\":\"Injected failure\"}");
+            return true;
+        }
+        return false;
+    }
+
+    private static double[] coordinatesOf(String name) {
+        double[] known = KNOWN_CITIES.get(name.toLowerCase(Locale.ROOT));
+        if (known != null) {
+            return known;
+        }
+        int hash = name.toLowerCase(Locale.ROOT).hashCode();
+        return new double[]{Math.floorMod(hash, 18000) / 100.0 - 90, Math.floorMod(hash / 7, 36000) / 100.0 - 180};
+    }
+
+    private static Map<String, String> queryParams(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}